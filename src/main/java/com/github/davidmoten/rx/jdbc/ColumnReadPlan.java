@@ -0,0 +1,231 @@
+package com.github.davidmoten.rx.jdbc;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.github.davidmoten.rx.jdbc.exceptions.SQLRuntimeException;
+
+/**
+ * Describes how to read each column of a {@link ResultSet}. A plan is created
+ * once per query execution from the {@link ResultSetMetaData} so that reading
+ * a row does not call {@link ResultSet#getMetaData()} or read a column twice
+ * to test for null.
+ *
+ * <p>
+ * A plan is used by one query execution at a time and is not thread-safe.
+ */
+public final class ColumnReadPlan {
+
+    private static final int OTHER = 0;
+    private static final int DATE = 1;
+    private static final int TIME = 2;
+    private static final int TIMESTAMP = 3;
+    private static final int CLOB = 4;
+    private static final int BLOB = 5;
+    private static final int INTEGER = 6;
+    private static final int BIGINT = 7;
+    private static final int DECIMAL = 8;
+    private static final int DOUBLE = 9;
+    private static final int CHARACTER = 10;
+
+    /**
+     * Reader kind per column (0-based).
+     */
+    private final int[] kinds;
+
+    /**
+     * Upper case column names to 1-based column indexes.
+     */
+    private final Map<String, Integer> colIndexes;
+
+    /**
+     * Reused for all date, time and timestamp reads of this execution.
+     */
+    private final Calendar calendar = Calendar.getInstance();
+
+    private ColumnReadPlan(int[] kinds, Map<String, Integer> colIndexes) {
+        this.kinds = kinds;
+        this.colIndexes = colIndexes;
+    }
+
+    /**
+     * Returns the plan for the given {@link ResultSet} based on its metadata.
+     *
+     * @param rs
+     *            result set
+     * @return plan
+     * @throws SQLException
+     */
+    static ColumnReadPlan create(ResultSet rs) throws SQLException {
+        ResultSetMetaData metadata = rs.getMetaData();
+        int n = metadata.getColumnCount();
+        int[] kinds = new int[n];
+        Map<String, Integer> colIndexes = new HashMap<String, Integer>();
+        for (int i = 1; i <= n; i++) {
+            kinds[i - 1] = kind(metadata.getColumnType(i));
+            colIndexes.put(metadata.getColumnName(i).toUpperCase(), i);
+        }
+        return new ColumnReadPlan(kinds, Collections.unmodifiableMap(colIndexes));
+    }
+
+    private static int kind(int type) {
+        switch (type) {
+        case Types.DATE:
+            return DATE;
+        case Types.TIME:
+            return TIME;
+        case Types.TIMESTAMP:
+            return TIMESTAMP;
+        case Types.CLOB:
+            return CLOB;
+        case Types.BLOB:
+            return BLOB;
+        case Types.TINYINT:
+        case Types.SMALLINT:
+        case Types.INTEGER:
+            return INTEGER;
+        case Types.BIGINT:
+            return BIGINT;
+        case Types.DECIMAL:
+        case Types.NUMERIC:
+            return DECIMAL;
+        case Types.FLOAT:
+        case Types.DOUBLE:
+            return DOUBLE;
+        case Types.CHAR:
+        case Types.VARCHAR:
+        case Types.LONGVARCHAR:
+        case Types.NCHAR:
+        case Types.NVARCHAR:
+        case Types.LONGNVARCHAR:
+            return CHARACTER;
+        default:
+            return OTHER;
+        }
+    }
+
+    /**
+     * Returns the number of columns.
+     *
+     * @return number of columns
+     */
+    public int columnCount() {
+        return kinds.length;
+    }
+
+    /**
+     * Returns the map of upper case column names to 1-based column indexes.
+     *
+     * @return column indexes by upper case name
+     */
+    Map<String, Integer> colIndexes() {
+        return colIndexes;
+    }
+
+    /**
+     * Returns the value of the column of the current row automapped to the
+     * given class. Equivalent to {@link Util#mapObject(ResultSet, Class, int)}
+     * but using the column types of this plan.
+     *
+     * @param rs
+     *            result set positioned on a row
+     * @param cls
+     *            the target class
+     * @param i
+     *            1-based column index
+     * @return automapped value
+     */
+    public Object mapObject(ResultSet rs, Class<?> cls, int i) {
+        return Util.autoMap(getObject(rs, cls, i), cls);
+    }
+
+    Object getObject(ResultSet rs, Class<?> cls, int i) {
+        try {
+            switch (kinds[i - 1]) {
+            case DATE:
+                return rs.getDate(i, calendar);
+            case TIME:
+                return rs.getTime(i, calendar);
+            case TIMESTAMP:
+                return rs.getTimestamp(i, calendar);
+            case CLOB:
+                return getClob(rs, cls, i);
+            case BLOB:
+                return getBlob(rs, cls, i);
+            case INTEGER:
+            case BIGINT:
+            case DECIMAL:
+            case DOUBLE:
+                return getNumber(rs, kinds[i - 1], cls, i);
+            case CHARACTER:
+                if (cls == String.class)
+                    return rs.getString(i);
+                else
+                    return rs.getObject(i);
+            default:
+                return rs.getObject(i);
+            }
+        } catch (SQLException e) {
+            throw new SQLRuntimeException(e);
+        }
+    }
+
+    /**
+     * Reads a numeric column with a typed getter where that gives the same
+     * value as converting the column object (as
+     * {@link Util#autoMap(Object, Class)} does), otherwise reads the object so
+     * that for example a fractional or out of range DECIMAL is truncated to an
+     * Integer as before rather than rounded or rejected by the driver.
+     */
+    private static Object getNumber(ResultSet rs, int kind, Class<?> cls, int i)
+            throws SQLException {
+        if ((cls == Long.class || cls == long.class) && (kind == INTEGER || kind == BIGINT)) {
+            long v = rs.getLong(i);
+            return rs.wasNull() ? null : Long.valueOf(v);
+        } else if ((cls == Integer.class || cls == int.class) && kind == INTEGER) {
+            int v = rs.getInt(i);
+            return rs.wasNull() ? null : Integer.valueOf(v);
+        } else if ((cls == Double.class || cls == double.class)
+                && (kind == DOUBLE || kind == INTEGER)) {
+            double v = rs.getDouble(i);
+            return rs.wasNull() ? null : Double.valueOf(v);
+        } else if (cls == BigDecimal.class && kind == DECIMAL)
+            return rs.getBigDecimal(i);
+        else
+            return rs.getObject(i);
+    }
+
+    private static Object getClob(ResultSet rs, Class<?> cls, int i) throws SQLException {
+        if (cls.equals(String.class)) {
+            Clob c = rs.getClob(i);
+            return c == null ? null : Util.toString(c);
+        } else if (Reader.class.isAssignableFrom(cls)) {
+            Clob c = rs.getClob(i);
+            return c == null ? null : Util.createFreeOnCloseReader(c, c.getCharacterStream());
+        } else
+            return rs.getObject(i);
+    }
+
+    private static Object getBlob(ResultSet rs, Class<?> cls, int i) throws SQLException {
+        if (cls.equals(byte[].class)) {
+            Blob b = rs.getBlob(i);
+            return b == null ? null : Util.toBytes(b);
+        } else if (InputStream.class.isAssignableFrom(cls)) {
+            Blob b = rs.getBlob(i);
+            return b == null ? null : Util.createFreeOnCloseInputStream(b, b.getBinaryStream());
+        } else
+            return rs.getObject(i);
+    }
+
+}
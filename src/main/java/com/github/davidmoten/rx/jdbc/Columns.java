@@ -0,0 +1,112 @@
+package com.github.davidmoten.rx.jdbc;
+
+import java.util.Arrays;
+
+/**
+ * Parameter values for many executions of a query held by column. Each column
+ * is an array with one element per row and is one of <code>long[]</code>,
+ * <code>int[]</code>, <code>double[]</code>, <code>boolean[]</code> or an
+ * object array such as <code>String[]</code>. Primitive columns are bound
+ * using the matching primitive setter of {@link java.sql.PreparedStatement}
+ * so no boxing occurs.
+ *
+ * <p>
+ * The arrays are not copied so should not be modified while in use.
+ */
+public final class Columns {
+
+    static final int OBJECTS = 0;
+    static final int LONGS = 1;
+    static final int INTS = 2;
+    static final int DOUBLES = 3;
+    static final int BOOLEANS = 4;
+
+    private final Object[] columns;
+    private final int[] kinds;
+    private final int rows;
+
+    private Columns(Object[] columns, int[] kinds, int rows) {
+        this.columns = columns;
+        this.kinds = kinds;
+        this.rows = rows;
+    }
+
+    /**
+     * Returns the columns in parameter order. All columns must have the same
+     * length.
+     *
+     * @param columns
+     *            arrays of parameter values, one array per parameter
+     * @return columns
+     * @throws IllegalArgumentException
+     *             if a column is not an array of a supported type or columns
+     *             differ in length
+     */
+    public static Columns of(Object... columns) {
+        Conditions.checkNotNull(columns);
+        Conditions.checkArgument(columns.length > 0, "at least one column must be given");
+        int[] kinds = new int[columns.length];
+        int rows = -1;
+        for (int i = 0; i < columns.length; i++) {
+            Object column = columns[i];
+            Conditions.checkNotNull(column);
+            int length;
+            if (column instanceof long[]) {
+                kinds[i] = LONGS;
+                length = ((long[]) column).length;
+            } else if (column instanceof int[]) {
+                kinds[i] = INTS;
+                length = ((int[]) column).length;
+            } else if (column instanceof double[]) {
+                kinds[i] = DOUBLES;
+                length = ((double[]) column).length;
+            } else if (column instanceof boolean[]) {
+                kinds[i] = BOOLEANS;
+                length = ((boolean[]) column).length;
+            } else if (column instanceof Object[]) {
+                kinds[i] = OBJECTS;
+                length = ((Object[]) column).length;
+            } else
+                throw new IllegalArgumentException("unsupported column type "
+                        + column.getClass().getSimpleName() + " at index " + i);
+            if (rows == -1)
+                rows = length;
+            else
+                Conditions.checkArgument(rows == length,
+                        "all columns must have the same length");
+        }
+        return new Columns(Arrays.copyOf(columns, columns.length), kinds, rows);
+    }
+
+    /**
+     * Returns the number of rows.
+     *
+     * @return number of rows
+     */
+    public int rows() {
+        return rows;
+    }
+
+    /**
+     * Returns the number of columns.
+     *
+     * @return number of columns
+     */
+    public int size() {
+        return columns.length;
+    }
+
+    Object column(int index) {
+        return columns[index];
+    }
+
+    int kind(int index) {
+        return kinds[index];
+    }
+
+    @Override
+    public String toString() {
+        return "Columns [size=" + columns.length + ", rows=" + rows + "]";
+    }
+
+}
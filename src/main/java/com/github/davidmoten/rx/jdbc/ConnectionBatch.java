@@ -321,6 +321,16 @@ class ConnectionBatch implements Connection {
         return con.getNetworkTimeout();
     }
 
+    /**
+     * Returns the wrapped connection, for statements that manage their own
+     * batching.
+     * 
+     * @return the wrapped connection
+     */
+    Connection connection() {
+        return con;
+    }
+
     public int executeBatchRemaining() {
         PreparedStatementBatch p = null;
         synchronized(this) {
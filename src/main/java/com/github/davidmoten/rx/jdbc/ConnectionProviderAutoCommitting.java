@@ -6,7 +6,11 @@ import java.sql.SQLException;
 import com.github.davidmoten.rx.jdbc.exceptions.SQLRuntimeException;
 
 /**
- * Provides {@link Connection}s with autoCommit set to true.
+ * Provides {@link Connection}s with autoCommit set to true. Connections are
+ * wrapped in a {@link ConnectionAutoCommitTracking} (unless they already track
+ * their state like those from {@link ConnectionProviderFromUrlPooled}) so the
+ * call only reaches the database if the connection is not already in auto
+ * commit mode.
  */
 final class ConnectionProviderAutoCommitting implements ConnectionProvider {
 
@@ -27,7 +31,7 @@ final class ConnectionProviderAutoCommitting implements ConnectionProvider {
 
     @Override
     public Connection get() {
-        Connection con = cp.get();
+        Connection con = ConnectionAutoCommitTracking.wrap(cp.get());
         try {
             con.setAutoCommit(true);
         } catch (SQLException e) {
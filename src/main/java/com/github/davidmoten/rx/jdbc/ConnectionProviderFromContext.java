@@ -2,48 +2,169 @@ package com.github.davidmoten.rx.jdbc;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
 
 import javax.naming.Context;
 import javax.naming.InitialContext;
 import javax.naming.NamingException;
 import javax.sql.DataSource;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.github.davidmoten.rx.jdbc.exceptions.SQLRuntimeException;
 
+import rx.Scheduler.Worker;
+import rx.functions.Action0;
+import rx.functions.Func0;
+import rx.schedulers.Schedulers;
+
 /**
- * Provides database connections via a JNDI lookup.
+ * Provides database connections via a JNDI lookup. The {@link DataSource} is
+ * looked up on first use and cached, so obtaining a connection is a single
+ * volatile read before {@link DataSource#getConnection()}. If obtaining a
+ * connection from the cached DataSource fails it is looked up again (for
+ * example after a redeployment of the resource) and the connection retried
+ * once if the lookup returns a different DataSource. Optionally the DataSource
+ * is also looked up again periodically in the background.
  */
 public final class ConnectionProviderFromContext implements ConnectionProvider {
 
-    private final String jndiResource;
+    private static final Logger log = LoggerFactory.getLogger(ConnectionProviderFromContext.class);
+
+    /**
+     * Looks up the DataSource.
+     */
+    private final Func0<DataSource> lookup;
+
+    /**
+     * The cached DataSource, null until first used.
+     */
+    private volatile DataSource dataSource;
+
+    /**
+     * Runs the background refresh or null if there is none.
+     */
+    private final Worker worker;
 
     /**
      * Constructor.
-     * 
+     *
      * @param jndiResource
      *            the name to lookup
      */
     public ConnectionProviderFromContext(String jndiResource) {
-        this.jndiResource = jndiResource;
+        this(lookup(jndiResource), 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Constructor that also looks up the DataSource again every
+     * <code>refreshInterval</code> in the background until {@link #close()}
+     * is called.
+     *
+     * @param jndiResource
+     *            the name to lookup
+     * @param refreshInterval
+     *            interval between background lookups, 0 for none
+     * @param unit
+     *            unit of refreshInterval
+     */
+    public ConnectionProviderFromContext(String jndiResource, long refreshInterval,
+            TimeUnit unit) {
+        this(lookup(jndiResource), refreshInterval, unit);
+    }
+
+    // Visible for testing
+    ConnectionProviderFromContext(Func0<DataSource> lookup, long refreshInterval,
+            TimeUnit unit) {
+        Conditions.checkArgument(refreshInterval >= 0, "refreshInterval must be >= 0");
+        this.lookup = lookup;
+        if (refreshInterval > 0) {
+            worker = Schedulers.io().createWorker();
+            worker.schedulePeriodically(new Action0() {
+                @Override
+                public void call() {
+                    refresh();
+                }
+            }, refreshInterval, refreshInterval, unit);
+        } else
+            worker = null;
+    }
+
+    private static Func0<DataSource> lookup(final String jndiResource) {
+        return new Func0<DataSource>() {
+            @Override
+            public DataSource call() {
+                try {
+                    Context ctx = new InitialContext();
+                    return (DataSource) ctx.lookup(jndiResource);
+                } catch (NamingException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
     }
 
     @Override
     public Connection get() {
+        DataSource ds = dataSource;
+        if (ds == null)
+            ds = dataSource(null);
         try {
-            Context ctx = new InitialContext();
-            DataSource ds = (DataSource) ctx.lookup(jndiResource);
-            Connection conn = ds.getConnection();
-            return conn;
+            return ds.getConnection();
         } catch (SQLException e) {
-            throw new SQLRuntimeException(e);
-        } catch (NamingException e) {
-            throw new RuntimeException(e);
+            // the resource may have been replaced so look it up again
+            DataSource latest;
+            try {
+                latest = dataSource(ds);
+            } catch (RuntimeException e2) {
+                log.debug("lookup after failed connection failed", e2);
+                throw new SQLRuntimeException(e);
+            }
+            if (latest == ds)
+                throw new SQLRuntimeException(e);
+            try {
+                return latest.getConnection();
+            } catch (SQLException e2) {
+                throw new SQLRuntimeException(e2);
+            }
+        }
+    }
+
+    /**
+     * Returns the cached DataSource, looking it up if none is cached or the
+     * cached one is <code>stale</code>. Only one thread looks up at a time.
+     *
+     * @param stale
+     *            the DataSource that failed or null
+     * @return DataSource
+     */
+    private synchronized DataSource dataSource(DataSource stale) {
+        DataSource ds = dataSource;
+        if (ds == null || ds == stale) {
+            ds = lookup.call();
+            dataSource = ds;
+        }
+        return ds;
+    }
+
+    private void refresh() {
+        try {
+            DataSource ds = lookup.call();
+            if (ds != null)
+                dataSource = ds;
+        } catch (RuntimeException e) {
+            log.warn("background lookup of DataSource failed, keeping cached DataSource", e);
         }
     }
 
+    /**
+     * Stops the background refresh if any.
+     */
     @Override
     public void close() {
-        // do nothing
+        if (worker != null)
+            worker.unsubscribe();
     }
 
 }
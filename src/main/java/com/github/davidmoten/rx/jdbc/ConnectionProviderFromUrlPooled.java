@@ -0,0 +1,415 @@
+package com.github.davidmoten.rx.jdbc;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.davidmoten.rx.jdbc.exceptions.SQLRuntimeException;
+
+/**
+ * Provides pooled {@link Connection}s from a url (using
+ * DriverManager.getConnection()) without any dependency on a pooling library.
+ * Closing a provided connection returns it to the pool with auto commit on
+ * (rolling back anything uncommitted). Used by {@link Database#from(String)}.
+ *
+ * <p>
+ * Borrowing and returning a connection does not lock unless all connections
+ * are in use: a thread first tries the connection it returned last, then the
+ * most recently returned idle connection. A connection is only validated
+ * (using {@link Connection#isValid(int)}) when it has been idle for at least a
+ * second, so connections in steady use are never pinged. Connections are
+ * opened on demand and stay open until the pool is closed.
+ *
+ * <p>
+ * When all connections are in use a caller waits up to 30 seconds for one to
+ * be returned, except that a caller whose own thread holds every connection
+ * fails immediately because nothing could return one while it waits (for
+ * example more than the maximum pool size of unconsumed selects started on a
+ * synchronous {@link Database}).
+ *
+ * <p>
+ * The auto commit, transaction isolation and read only state of each
+ * connection is tracked so that calls that would not change it are skipped
+ * (see {@link #roundTripsAvoided()}) and a returned connection is only reset
+ * when it has actually left its initial state.
+ */
+public final class ConnectionProviderFromUrlPooled implements ConnectionProvider {
+
+    private static final Logger log = LoggerFactory.getLogger(ConnectionProviderFromUrlPooled.class);
+
+    static final int DEFAULT_MAX_POOL_SIZE = 10;
+    private static final long DEFAULT_CONNECTION_TIMEOUT_MS = 30000;
+    private static final long DEFAULT_VALIDATION_IDLE_MS = 1000;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+
+    /**
+     * Opens the connections.
+     */
+    private final ConnectionProvider cp;
+
+    private final int maxPoolSize;
+
+    private final long connectionTimeoutMs;
+
+    private final long validationIdleNanos;
+
+    /**
+     * One permit per connection that may be borrowed.
+     */
+    private final Semaphore permits;
+
+    /**
+     * Idle connections, most recently returned first.
+     */
+    private final ConcurrentLinkedDeque<Entry> idle = new ConcurrentLinkedDeque<Entry>();
+
+    /**
+     * The connection last returned by the current thread (may since have been
+     * borrowed by another thread).
+     */
+    private final ThreadLocal<Entry> lastReturned = new ThreadLocal<Entry>();
+
+    /**
+     * The number of connections borrowed by the current thread and not yet
+     * returned (returns may happen on any thread).
+     */
+    private final ThreadLocal<AtomicInteger> borrowed = new ThreadLocal<AtomicInteger>() {
+        @Override
+        protected AtomicInteger initialValue() {
+            return new AtomicInteger();
+        }
+    };
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final AtomicLong validations = new AtomicLong();
+
+    private final AtomicLong roundTripsAvoided = new AtomicLong();
+
+    private volatile boolean closed;
+
+    /**
+     * Constructor. The pool has at most 10 connections.
+     *
+     * @param url
+     *            jdbc url
+     */
+    public ConnectionProviderFromUrlPooled(String url) {
+        this(url, null, null);
+    }
+
+    /**
+     * Constructor. The pool has at most 10 connections.
+     *
+     * @param url
+     *            jdbc url
+     * @param username
+     *            login username
+     * @param password
+     *            login password
+     */
+    public ConnectionProviderFromUrlPooled(String url, String username, String password) {
+        this(url, username, password, DEFAULT_MAX_POOL_SIZE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param url
+     *            jdbc url
+     * @param username
+     *            login username
+     * @param password
+     *            login password
+     * @param maxPoolSize
+     *            maximum number of open connections
+     */
+    public ConnectionProviderFromUrlPooled(String url, String username, String password,
+            int maxPoolSize) {
+        this(new ConnectionProviderFromUrl(url, username, password), maxPoolSize,
+                DEFAULT_CONNECTION_TIMEOUT_MS, DEFAULT_VALIDATION_IDLE_MS);
+    }
+
+    // Visible for testing
+    ConnectionProviderFromUrlPooled(ConnectionProvider cp, int maxPoolSize,
+            long connectionTimeoutMs, long validationIdleMs) {
+        Conditions.checkNotNull(cp);
+        Conditions.checkArgument(maxPoolSize > 0, "maxPoolSize must be > 0");
+        this.cp = cp;
+        this.maxPoolSize = maxPoolSize;
+        this.connectionTimeoutMs = connectionTimeoutMs;
+        this.validationIdleNanos = TimeUnit.MILLISECONDS.toNanos(validationIdleMs);
+        this.permits = new Semaphore(maxPoolSize);
+    }
+
+    @Override
+    public Connection get() {
+        if (closed)
+            throw new SQLRuntimeException("connection pool is closed");
+        AtomicInteger count = borrowed.get();
+        if (!permits.tryAcquire())
+            awaitPermit(count);
+        Entry entry;
+        try {
+            entry = borrow();
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+        count.incrementAndGet();
+        entry.borrower = count;
+        return new ConnectionPooled(this, entry);
+    }
+
+    /**
+     * Waits for a connection to be returned unless the current thread holds
+     * all of them.
+     *
+     * @param count
+     *            number of connections borrowed by the current thread
+     */
+    private void awaitPermit(AtomicInteger count) {
+        if (count.get() >= maxPoolSize)
+            throw new SQLRuntimeException("all " + maxPoolSize
+                    + " pooled connections are held by the current thread so waiting for one"
+                    + " would never end (consume or unsubscribe from earlier queries first)");
+        try {
+            if (!permits.tryAcquire(connectionTimeoutMs, TimeUnit.MILLISECONDS))
+                throw new SQLRuntimeException("timed out after " + connectionTimeoutMs
+                        + "ms waiting for one of " + maxPoolSize + " pooled connections");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLRuntimeException("interrupted waiting for a pooled connection");
+        }
+    }
+
+    /**
+     * Returns an idle connection or opens a new one. Must hold a permit so that
+     * if no connection is idle there is room to open one.
+     */
+    private Entry borrow() {
+        Entry entry = lastReturned.get();
+        if (entry != null) {
+            lastReturned.remove();
+            if (entry.claim()) {
+                idle.removeFirstOccurrence(entry);
+                if (usable(entry))
+                    return entry;
+            }
+        }
+        while ((entry = idle.pollFirst()) != null) {
+            if (entry.claim() && usable(entry))
+                return entry;
+        }
+        size.incrementAndGet();
+        try {
+            return new Entry(cp.get());
+        } catch (RuntimeException e) {
+            size.decrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns true if the claimed connection is usable, otherwise discards it.
+     * Only connections idle for longer than the validation interval are
+     * checked with the database.
+     */
+    private boolean usable(Entry entry) {
+        if (System.nanoTime() - entry.returnedAt < validationIdleNanos)
+            return true;
+        validations.incrementAndGet();
+        boolean valid;
+        try {
+            valid = entry.con.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            log.debug("validation failed", e);
+            valid = false;
+        }
+        if (!valid) {
+            log.debug("discarding invalid pooled connection");
+            discard(entry);
+        }
+        return valid;
+    }
+
+    /**
+     * Returns a borrowed connection to the pool, called once per borrow by
+     * {@link ConnectionPooled#close()}.
+     *
+     * @param entry
+     *            borrowed connection
+     */
+    void release(Entry entry) {
+        try {
+            if (closed || entry.broken || !reset(entry))
+                discard(entry);
+            else {
+                entry.returnedAt = System.nanoTime();
+                entry.state.set(Entry.IDLE);
+                idle.offerFirst(entry);
+                lastReturned.set(entry);
+            }
+        } finally {
+            entry.borrower.decrementAndGet();
+            permits.release();
+        }
+        if (closed)
+            closeIdle();
+    }
+
+    /**
+     * Returns the connection to auto commit mode if it has left it, rolling
+     * back anything uncommitted, and restores the transaction isolation and
+     * read only state if they were changed. Nothing is sent to the database
+     * for state that was not changed.
+     *
+     * @return false if the connection could not be reset
+     */
+    private boolean reset(Entry entry) {
+        try {
+            if (!entry.autoCommit) {
+                entry.con.rollback();
+                entry.con.setAutoCommit(true);
+                entry.autoCommit = true;
+            }
+            if (entry.readOnly != null && entry.initialReadOnly != null
+                    && !entry.readOnly.equals(entry.initialReadOnly)) {
+                entry.con.setReadOnly(entry.initialReadOnly);
+                entry.readOnly = entry.initialReadOnly;
+            }
+            if (entry.initialIsolation != Entry.UNKNOWN
+                    && entry.isolation != entry.initialIsolation) {
+                entry.con.setTransactionIsolation(entry.initialIsolation);
+                entry.isolation = entry.initialIsolation;
+            }
+            return true;
+        } catch (SQLException e) {
+            log.debug("could not reset pooled connection", e);
+            return false;
+        }
+    }
+
+    private void discard(Entry entry) {
+        entry.state.set(Entry.REMOVED);
+        size.decrementAndGet();
+        Util.closeQuietly(entry.con);
+    }
+
+    private void closeIdle() {
+        Entry entry;
+        while ((entry = idle.pollFirst()) != null) {
+            if (entry.claim())
+                discard(entry);
+        }
+    }
+
+    /**
+     * Returns the maximum number of open connections.
+     *
+     * @return maximum pool size
+     */
+    int maxPoolSize() {
+        return maxPoolSize;
+    }
+
+    /**
+     * Returns the number of open connections.
+     *
+     * @return pool size
+     */
+    int size() {
+        return size.get();
+    }
+
+    /**
+     * Returns the number of times an idle connection has been validated.
+     *
+     * @return validations
+     */
+    long validations() {
+        return validations.get();
+    }
+
+    /**
+     * Records a call that was not sent to the database because it would not
+     * have changed the state of the connection.
+     */
+    void roundTripAvoided() {
+        roundTripsAvoided.incrementAndGet();
+    }
+
+    /**
+     * Returns the number of calls to set the auto commit, transaction
+     * isolation or read only state of a connection that were not sent to the
+     * database because the connection was already in that state.
+     *
+     * @return round trips avoided
+     */
+    public long roundTripsAvoided() {
+        return roundTripsAvoided.get();
+    }
+
+    /**
+     * Closes the idle connections and closes connections in use when they are
+     * returned. Idempotent.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        closeIdle();
+    }
+
+    /**
+     * A pooled connection and its state.
+     */
+    static final class Entry {
+
+        static final int IDLE = 0;
+        static final int IN_USE = 1;
+        static final int REMOVED = 2;
+
+        /**
+         * Transaction isolation not yet known.
+         */
+        static final int UNKNOWN = -1;
+
+        final Connection con;
+        final AtomicInteger state = new AtomicInteger(IN_USE);
+
+        // the following are only accessed by the borrowing thread and
+        // published by the state and the idle deque
+
+        // new connections are in auto commit mode (JDBC spec), the read only
+        // and isolation state is read from the driver when first needed and
+        // the initial values kept so they can be restored on release
+
+        boolean autoCommit = true;
+        Boolean readOnly;
+        Boolean initialReadOnly;
+        int isolation = UNKNOWN;
+        int initialIsolation = UNKNOWN;
+        boolean broken;
+        long returnedAt;
+        /**
+         * Borrowed count of the thread that borrowed the connection.
+         */
+        AtomicInteger borrower;
+
+        Entry(Connection con) {
+            this.con = con;
+        }
+
+        boolean claim() {
+            return state.compareAndSet(IDLE, IN_USE);
+        }
+    }
+
+}
@@ -84,6 +84,15 @@ public final class ConnectionProviderPooled implements ConnectionProvider {
         return ds;
     }
 
+    /**
+     * Returns the maximum number of connections in the pool.
+     * 
+     * @return maximum pool size
+     */
+    int maxPoolSize() {
+        return pool.getMaximumPoolSize();
+    }
+
     @Override
     public Connection get() {
         try {
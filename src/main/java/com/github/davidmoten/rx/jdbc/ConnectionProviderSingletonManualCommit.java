@@ -8,7 +8,10 @@ import com.github.davidmoten.rx.jdbc.exceptions.SQLRuntimeException;
 
 /**
  * Provides a singleton {@link Connection} sourced from a
- * {@link ConnectionProvider} that has autoCommit set to false.
+ * {@link ConnectionProvider} that has autoCommit set to false. As with
+ * {@link ConnectionProviderAutoCommitting} the connection is wrapped in a
+ * {@link ConnectionAutoCommitTracking} so the call is skipped if it is already
+ * in that mode.
  */
 final class ConnectionProviderSingletonManualCommit implements ConnectionProvider {
 
@@ -40,7 +43,7 @@ final class ConnectionProviderSingletonManualCommit implements ConnectionProvide
     @Override
     public Connection get() {
         if (connectionSet.compareAndSet(false, true)) {
-            con = cp.get();
+            con = ConnectionAutoCommitTracking.wrap(cp.get());
             try {
                 con.setAutoCommit(false);
             } catch (SQLException e) {
@@ -0,0 +1,148 @@
+package com.github.davidmoten.rx.jdbc;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.github.davidmoten.rx.jdbc.QuerySelect.Builder;
+
+/**
+ * Maps each row of a {@link ResultSet} to an instance of <code>T</code> using
+ * the constructor of <code>T</code> that has as many parameters as the
+ * ResultSet has columns. See {@link Builder#autoMap(Class)}.
+ *
+ * <p>
+ * The constructor is searched for once per (class, column count) and is
+ * invoked through a {@link MethodHandle} so that mapping a row does not
+ * involve reflective lookups or intermediate lists.
+ *
+ * @param <T>
+ *            the mapped type
+ */
+final class ConstructorAutoMapper<T> extends PlannedResultSetMapper<T> {
+
+    /**
+     * Shared across all mappers so that the constructor search happens once
+     * per (class, column count). The bindings are held by the mapped class
+     * itself so they do not keep its class loader alive (for example after a
+     * redeployment).
+     */
+    private static final ClassValue<ConcurrentMap<Integer, Binding>> bindings = new ClassValue<ConcurrentMap<Integer, Binding>>() {
+        @Override
+        protected ConcurrentMap<Integer, Binding> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<Integer, Binding>();
+        }
+    };
+
+    private final Class<T> cls;
+
+    /**
+     * The binding for the last {@link ColumnReadPlan} seen by this mapper.
+     */
+    private volatile Resolved resolved;
+
+    ConstructorAutoMapper(Class<T> cls) {
+        this.cls = cls;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public T call(ResultSet rs, ColumnReadPlan plan) throws SQLException {
+        Resolved r = resolved;
+        if (r == null || r.plan != plan) {
+            r = new Resolved(plan, binding(cls, plan.columnCount()));
+            resolved = r;
+        }
+        Binding b = r.binding;
+        Class<?>[] types = b.types;
+        Object[] args = new Object[types.length];
+        for (int i = 0; i < types.length; i++) {
+            args[i] = plan.mapObject(rs, types[i], i + 1);
+        }
+        try {
+            return (T) b.newInstance(args);
+        } catch (RuntimeException e) {
+            throw new RuntimeException("problem with parameters="
+                    + Util.getTypeInfo(Arrays.asList(args)) + ", rs types=" + Util.getRowInfo(rs)
+                    + ". Be sure not to use primitives in a constructor when calling autoMap().",
+                    e);
+        }
+    }
+
+    private static Binding binding(Class<?> cls, int numColumns) {
+        ConcurrentMap<Integer, Binding> map = bindings.get(cls);
+        Binding b = map.get(numColumns);
+        if (b == null) {
+            b = createBinding(cls, numColumns);
+            Binding existing = map.putIfAbsent(numColumns, b);
+            if (existing != null)
+                b = existing;
+        }
+        return b;
+    }
+
+    private static Binding createBinding(Class<?> cls, int numColumns) {
+        for (Constructor<?> c : cls.getDeclaredConstructors()) {
+            if (numColumns == c.getParameterTypes().length) {
+                return new Binding(c);
+            }
+        }
+        throw new RuntimeException(
+                "constructor with number of parameters=" + numColumns + "  not found in " + cls);
+    }
+
+    /**
+     * A constructor with its parameter types and a {@link MethodHandle} that
+     * accepts the constructor arguments as an Object[].
+     */
+    private static final class Binding {
+
+        final Class<?>[] types;
+        private final MethodHandle handle;
+
+        Binding(Constructor<?> c) {
+            this.types = c.getParameterTypes();
+            try {
+                c.setAccessible(true);
+            } catch (RuntimeException e) {
+                // fall back to normal access checks
+            }
+            try {
+                this.handle = MethodHandles.lookup().unreflectConstructor(c)
+                        .asType(MethodType.genericMethodType(types.length))
+                        .asSpreader(Object[].class, types.length);
+            } catch (IllegalAccessException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        Object newInstance(Object[] args) {
+            try {
+                return (Object) handle.invokeExact(args);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private static final class Resolved {
+        final ColumnReadPlan plan;
+        final Binding binding;
+
+        Resolved(ColumnReadPlan plan, Binding binding) {
+            this.plan = plan;
+            this.binding = binding;
+        }
+    }
+
+}
@@ -9,6 +9,7 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.Types;
+import java.util.concurrent.TimeUnit;
 
 import javax.naming.Context;
 import javax.sql.DataSource;
@@ -25,6 +26,8 @@ import com.github.davidmoten.rx.jdbc.exceptions.TransactionAlreadyOpenException;
 import rx.Observable;
 import rx.Observable.Operator;
 import rx.Scheduler;
+import rx.functions.Action0;
+import rx.functions.Action1;
 import rx.functions.Func0;
 import rx.functions.Func1;
 import rx.functions.Func2;
@@ -61,10 +64,6 @@ final public class Database {
 
     private final ThreadLocal<Boolean> isTransactionOpen = new ThreadLocal<Boolean>();
 
-    static final ThreadLocal<ResultSetCache> rsCache = new ThreadLocal<ResultSetCache>();
-
-    static final ThreadLocal<AutoMapCache> autoMapCache = new ThreadLocal<AutoMapCache>();
-
     /**
      * Records the result of the last finished transaction (committed =
      * <code>true</code> or rolled back = <code>false</code>).
@@ -87,6 +86,37 @@ final public class Database {
      */
     private final Func1<ResultSet, ? extends ResultSet> resultSetTransform;
 
+    /**
+     * Caches prepared statements per connection (disabled if max size is 0).
+     */
+    private final StatementCache statementCache;
+
+    /**
+     * Fetch size hint for select queries (0 for the driver default).
+     */
+    private final int fetchSize;
+
+    /**
+     * Caches the rows of select queries.
+     */
+    private final ResultCache resultCache;
+
+    /**
+     * Shares identical select executions that are in flight.
+     */
+    private final QuerySelectCoalescer coalescer;
+
+    /**
+     * Receives the timings of query executions.
+     */
+    private final QueryListener listener;
+
+    /**
+     * The transaction this database is bound to or null if transactions are
+     * tracked per thread.
+     */
+    private final TransactionContext transaction;
+
     /**
      * Constructor.
      * 
@@ -100,7 +130,7 @@ final public class Database {
         this(cp, nonTransactionalSchedulerFactory, IDENTITY_TRANSFORM);
     }
 
-    private static Func1<ResultSet, ? extends ResultSet> IDENTITY_TRANSFORM = Functions.identity();
+    static Func1<ResultSet, ? extends ResultSet> IDENTITY_TRANSFORM = Functions.identity();
 
     /**
      * Constructor.
@@ -114,15 +144,57 @@ final public class Database {
      */
     public Database(final ConnectionProvider cp, Func0<Scheduler> nonTransactionalSchedulerFactory,
             Func1<ResultSet, ? extends ResultSet> resultSetTransform) {
+        this(cp, nonTransactionalSchedulerFactory, resultSetTransform, new StatementCache(0), 0,
+                new ResultCache(0, 0), new QuerySelectCoalescer(), QueryListener.NONE, null);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param cp
+     *            provides connections
+     * @param nonTransactionalSchedulerFactory
+     *            schedules non transactional queries
+     * @param resultSetTransform
+     *            transforms ResultSets at start of select query
+     * @param statementCache
+     *            caches prepared statements
+     * @param fetchSize
+     *            fetch size hint for select queries, 0 for the driver default
+     * @param resultCache
+     *            caches the rows of select queries
+     * @param coalescer
+     *            shares identical select executions that are in flight
+     * @param listener
+     *            receives the timings of query executions
+     * @param transaction
+     *            the transaction all queries run in or null to track
+     *            transactions per thread
+     */
+    private Database(final ConnectionProvider cp,
+            Func0<Scheduler> nonTransactionalSchedulerFactory,
+            Func1<ResultSet, ? extends ResultSet> resultSetTransform,
+            StatementCache statementCache, int fetchSize, ResultCache resultCache,
+            QuerySelectCoalescer coalescer, QueryListener listener,
+            TransactionContext transaction) {
         Conditions.checkNotNull(cp);
+        Conditions.checkNotNull(statementCache);
+        Conditions.checkNotNull(resultCache);
+        Conditions.checkNotNull(listener);
         this.cp = cp;
         this.currentConnectionProvider.set(cp);
         if (nonTransactionalSchedulerFactory != null)
             this.nonTransactionalSchedulerFactory = nonTransactionalSchedulerFactory;
         else
             this.nonTransactionalSchedulerFactory = CURRENT_THREAD_SCHEDULER_FACTORY;
+        this.fetchSize = fetchSize;
         this.context = new QueryContext(this);
         this.resultSetTransform = resultSetTransform;
+        this.statementCache = statementCache;
+        this.resultCache = resultCache;
+        this.coalescer = coalescer;
+        this.listener = listener;
+        this.transaction = transaction;
     }
 
     /**
@@ -135,6 +207,52 @@ final public class Database {
         return resultSetTransform;
     }
 
+    /**
+     * Returns the {@link StatementCache} which reports cache hits and misses.
+     * Caching is enabled using {@link Builder#statementCacheSize(int)}.
+     * 
+     * @return the statement cache
+     */
+    public StatementCache statementCache() {
+        return statementCache;
+    }
+
+    /**
+     * Returns the {@link ResultCache} which reports cache hits, misses and
+     * size. Caching is enabled using
+     * {@link Builder#resultCache(long, long, TimeUnit)} and
+     * {@link QuerySelect.Builder#cache()}.
+     * 
+     * @return the result cache
+     */
+    public ResultCache resultCache() {
+        return resultCache;
+    }
+
+    QuerySelectCoalescer coalescer() {
+        return coalescer;
+    }
+
+    /**
+     * Returns the listener that receives the timings of query executions
+     * ({@link QueryListener#NONE} if not set).
+     * 
+     * @return query listener
+     */
+    public QueryListener queryListener() {
+        return listener;
+    }
+
+    /**
+     * Returns the fetch size hint given to the driver for select queries (0
+     * for the driver default). Set using {@link Builder#fetchSize(int)}.
+     * 
+     * @return the fetch size
+     */
+    public int fetchSize() {
+        return fetchSize;
+    }
+
     /**
      * Returns the {@link ConnectionProvider}.
      * 
@@ -198,18 +316,24 @@ final public class Database {
     }
 
     /**
-     * Returns a {@link Database} based on a jdbc connection string.
+     * Returns a {@link Database} based on a jdbc connection string. Up to 10
+     * connections are pooled by a {@link ConnectionProviderFromUrlPooled}
+     * until {@link #close()} is called. A query fails immediately rather
+     * than waiting for a connection if its thread holds all of them.
      * 
      * @param url
      *            jdbc connection url
      * @return
      */
     public static Database from(String url) {
-        return new Database(url, null, null);
+        return from(url, null, null);
     }
 
     /**
-     * Returns a {@link Database} based on a jdbc connection string.
+     * Returns a {@link Database} based on a jdbc connection string. Up to 10
+     * connections are pooled by a {@link ConnectionProviderFromUrlPooled}
+     * until {@link #close()} is called. A query fails immediately rather
+     * than waiting for a connection if its thread holds all of them.
      * 
      * @param url
      *            jdbc url
@@ -220,7 +344,7 @@ final public class Database {
      * @return the database object
      */
     public static Database from(String url, String username, String password) {
-        return new Database(url, username, password);
+        return new Database(new ConnectionProviderFromUrlPooled(url, username, password));
     }
 
     /**
@@ -291,6 +415,14 @@ final public class Database {
         private String username;
         private String password;
         private Func1<ResultSet, ? extends ResultSet> resultSetTransform = IDENTITY_TRANSFORM;
+        private int statementCacheSize = 0;
+        private int fetchSize = 0;
+        private long resultCacheMaxBytes = 0;
+        private long resultCacheTtlMs = 0;
+        private QueryListener listener = QueryListener.NONE;
+        private int virtualThreadConcurrency = -1;
+
+        private static final int DEFAULT_VIRTUAL_THREAD_CONCURRENCY = 10;
 
         private static class Pool {
             int minSize;
@@ -389,6 +521,45 @@ final public class Database {
             return this;
         }
 
+        /**
+         * Requests that the non transactional queries are each run on a
+         * virtual thread (Java 21+) with at most as many queries running at
+         * once as the maximum size of the connection pool (set by
+         * {@link #pool(int, int)}, {@link #pooled(String)}, a
+         * {@link ConnectionProviderPooled} or a
+         * {@link ConnectionProviderFromUrlPooled}), or 10 if there is no pool. Other
+         * queries wait in a queue without holding a thread. On older JVMs the
+         * queries run on a pool of that many platform threads instead.
+         * 
+         * @return this
+         */
+        public Builder nonTransactionalSchedulerOnVirtualThreads() {
+            return nonTransactionalSchedulerOnVirtualThreads(0);
+        }
+
+        /**
+         * Requests that the non transactional queries are each run on a
+         * virtual thread (Java 21+) with at most <code>maxConcurrency</code>
+         * queries running at once. Other queries wait in a queue without
+         * holding a thread. On older JVMs the queries run on a pool of at most
+         * <code>maxConcurrency</code> platform threads instead.
+         * 
+         * <p>
+         * JDBC drivers that block inside <code>synchronized</code> blocks pin
+         * the carrier thread of a virtual thread on JVMs before Java 24, which
+         * the concurrency limit keeps to a bounded number of carriers.
+         * 
+         * @param maxConcurrency
+         *            maximum number of queries running at once, 0 for the
+         *            maximum pool size
+         * @return this
+         */
+        public Builder nonTransactionalSchedulerOnVirtualThreads(int maxConcurrency) {
+            Conditions.checkArgument(maxConcurrency >= 0, "maxConcurrency must be >= 0");
+            virtualThreadConcurrency = maxConcurrency;
+            return this;
+        }
+
         /**
          * When a ResultSet is obtained by {@link Database#select()} Observable
          * then before being used it is transformed by the {@code transform}
@@ -404,6 +575,92 @@ final public class Database {
             return this;
         }
 
+        /**
+         * Sets the maximum number of {@link PreparedStatement}s cached per
+         * connection. Statements are reused when the same sql is run again on
+         * the same connection. Defaults to 0 (no caching).
+         * 
+         * @param size
+         *            maximum number of cached statements per connection
+         * @return this
+         */
+        public Builder statementCacheSize(int size) {
+            Conditions.checkArgument(size >= 0, "statementCacheSize must be >= 0");
+            this.statementCacheSize = size;
+            return this;
+        }
+
+        /**
+         * Sets the number of rows the driver is asked to fetch from the
+         * database at a time for select queries (see
+         * {@link java.sql.Statement#setFetchSize(int)}). Defaults to 0 (the
+         * driver default). Some drivers (for example PostgreSQL) only stream
+         * rows with a fetch size outside of auto commit mode.
+         * 
+         * @param fetchSize
+         *            rows per fetch
+         * @return this
+         */
+        public Builder fetchSize(int fetchSize) {
+            Conditions.checkArgument(fetchSize >= 0, "fetchSize must be >= 0");
+            this.fetchSize = fetchSize;
+            return this;
+        }
+
+        /**
+         * Enables caching of the rows of select queries that call
+         * {@link QuerySelect.Builder#cache()}. Entries are evicted in least
+         * recently used order when the estimated size of the cached rows
+         * exceeds <code>maxBytes</code>, expire <code>ttl</code> after they
+         * are stored and are removed when an update run by the Database
+         * changes a table they read from. Defaults to no caching.
+         * 
+         * @param maxBytes
+         *            maximum estimated size of the cached rows
+         * @param ttl
+         *            time an entry stays in the cache, 0 for no expiry
+         * @param unit
+         *            unit of ttl
+         * @return this
+         */
+        public Builder resultCache(long maxBytes, long ttl, TimeUnit unit) {
+            Conditions.checkArgument(maxBytes > 0, "maxBytes must be > 0");
+            Conditions.checkArgument(ttl >= 0, "ttl must be >= 0");
+            this.resultCacheMaxBytes = maxBytes;
+            // round a small non-zero ttl up so it still expires entries
+            this.resultCacheTtlMs = ttl == 0 ? 0 : Math.max(1, unit.toMillis(ttl));
+            return this;
+        }
+
+        /**
+         * Adds a listener that receives the timings of the stages of query
+         * executions (see {@link QueryEvent}). Listeners are called in the
+         * order they are added. Without a listener queries are not timed. Use
+         * {@link QueryMetrics} to aggregate the timings and
+         * {@link QuerySampler} to find slow queries and slow subscribers.
+         * 
+         * @param listener
+         *            receives timings
+         * @return this
+         */
+        public Builder queryListener(final QueryListener listener) {
+            Conditions.checkNotNull(listener);
+            if (this.listener == QueryListener.NONE)
+                this.listener = listener;
+            else {
+                final QueryListener previous = this.listener;
+                this.listener = new QueryListener() {
+                    @Override
+                    public void onEvent(QueryEvent event, String fingerprint,
+                            long durationNanos, long rows, int batchSize) {
+                        previous.onEvent(event, fingerprint, durationNanos, rows, batchSize);
+                        listener.onEvent(event, fingerprint, durationNanos, rows, batchSize);
+                    }
+                };
+            }
+            return this;
+        }
+
         /**
          * Returns a {@link Database}.
          * 
@@ -415,7 +672,31 @@ final public class Database {
                         pool.maxSize);
             else if (url != null)
                 cp = new ConnectionProviderFromUrl(url, username, password);
-            return new Database(cp, nonTransactionalSchedulerFactory, resultSetTransform);
+            if (virtualThreadConcurrency >= 0)
+                nonTransactionalSchedulerFactory = virtualThreadSchedulerFactory();
+            return new Database(cp, nonTransactionalSchedulerFactory, resultSetTransform,
+                    new StatementCache(statementCacheSize), fetchSize,
+                    new ResultCache(resultCacheMaxBytes, resultCacheTtlMs),
+                    new QuerySelectCoalescer(), listener, null);
+        }
+
+        private Func0<Scheduler> virtualThreadSchedulerFactory() {
+            int maxConcurrency = virtualThreadConcurrency;
+            if (maxConcurrency == 0) {
+                if (cp instanceof ConnectionProviderPooled)
+                    maxConcurrency = ((ConnectionProviderPooled) cp).maxPoolSize();
+                else if (cp instanceof ConnectionProviderFromUrlPooled)
+                    maxConcurrency = ((ConnectionProviderFromUrlPooled) cp).maxPoolSize();
+                else
+                    maxConcurrency = DEFAULT_VIRTUAL_THREAD_CONCURRENCY;
+            }
+            final Scheduler scheduler = VirtualThreads.scheduler(maxConcurrency);
+            return new Func0<Scheduler>() {
+                @Override
+                public Scheduler call() {
+                    return scheduler;
+                }
+            };
         }
     }
 
@@ -599,6 +880,72 @@ final public class Database {
             return o;
     }
 
+    /**
+     * Runs the queries created by <code>work</code> in a transaction that is
+     * committed when the returned Observable completes and rolled back when
+     * it errors or is unsubscribed. Each subscription runs a new transaction.
+     * 
+     * <p>
+     * The {@link Database} passed to <code>work</code> holds the transaction
+     * itself rather than in thread locals like {@link #beginTransaction()}, so
+     * its queries may be subscribed on any thread (each runs on the thread
+     * that subscribes to it) and many transactions can share a few threads.
+     * Its queries share one connection so should be run one after the other
+     * (for example by chaining them with <code>flatMap</code> or
+     * <code>concatWith</code>). Calling {@link #commit(Observable...)} or
+     * {@link #rollback(Observable...)} on it finishes the transaction early.
+     * 
+     * <pre>
+     * Observable&lt;Integer&gt; count = db.transaction(new Func1&lt;Database, Observable&lt;Integer&gt;&gt;() {
+     *     public Observable&lt;Integer&gt; call(Database tx) {
+     *         return tx.update("update person set score = score - 1 where name = ?")
+     *                 .parameter("FRED").count()
+     *                 .concatWith(tx.update("update person set score = score + 1 where name = ?")
+     *                         .parameter("JOSEPH").count());
+     *     }
+     * }).subscribeOn(scheduler);
+     * </pre>
+     * 
+     * @param work
+     *            creates the queries of the transaction from the database
+     *            bound to the transaction
+     * @return the values of the Observable returned by <code>work</code>
+     */
+    public <T> Observable<T> transaction(final Func1<Database, Observable<T>> work) {
+        Conditions.checkNotNull(work);
+        return Observable.using(new Func0<TransactionContext>() {
+            @Override
+            public TransactionContext call() {
+                return new TransactionContext(cp);
+            }
+        }, new Func1<TransactionContext, Observable<T>>() {
+            @Override
+            public Observable<T> call(final TransactionContext tx) {
+                Database db = new Database(cp, nonTransactionalSchedulerFactory,
+                        resultSetTransform, statementCache, fetchSize, resultCache, coalescer,
+                        listener, tx);
+                return work.call(db).doOnCompleted(new Action0() {
+                    @Override
+                    public void call() {
+                        if (tx.finish(true))
+                            // rows cached outside the transaction may predate
+                            // its updates
+                            resultCache.invalidateAll();
+                    }
+                });
+            }
+        }, new Action1<TransactionContext>() {
+            @Override
+            public void call(TransactionContext tx) {
+                try {
+                    tx.finish(false);
+                } catch (RuntimeException e) {
+                    log.warn("rollback of transaction failed", e);
+                }
+            }
+        }, true);
+    }
+
     /**
      * Close the database in particular closes the {@link ConnectionProvider}
      * for the database. For a {@link ConnectionProviderPooled} this will be a
@@ -607,6 +954,8 @@ final public class Database {
      * @return
      */
     public Database close() {
+        log.debug("closing cached statements");
+        statementCache.close();
         log.debug("closing connection provider");
         cp.close();
         log.debug("closed connection provider");
@@ -614,35 +963,57 @@ final public class Database {
     }
 
     /**
-     * Returns the current thread local {@link Scheduler}.
+     * Returns the current thread local {@link Scheduler} or
+     * {@link Schedulers#trampoline()} if this database is bound to a
+     * transaction.
      * 
      * @return
      */
     Scheduler currentScheduler() {
-        if (currentSchedulerFactory.get() == null)
+        if (transaction != null)
+            return Schedulers.trampoline();
+        else if (currentSchedulerFactory.get() == null)
             return nonTransactionalSchedulerFactory.call();
         else
             return currentSchedulerFactory.get().call();
     }
 
     /**
-     * Returns the current thread local {@link ConnectionProvider}.
+     * Returns the current thread local {@link ConnectionProvider} or the
+     * transaction if this database is bound to a transaction.
      * 
      * @return
      */
     ConnectionProvider connectionProvider() {
-        if (currentConnectionProvider.get() == null)
+        if (transaction != null)
+            return transaction;
+        else if (currentConnectionProvider.get() == null)
             return cp;
         else
             return currentConnectionProvider.get();
     }
 
+    /**
+     * Returns true if and only if a transaction is open on the current thread
+     * or this database is bound to a transaction.
+     * 
+     * @return true if in a transaction
+     */
+    boolean isTransactionOpen() {
+        if (transaction != null)
+            return true;
+        Boolean open = isTransactionOpen.get();
+        return open != null && open;
+    }
+
     /**
      * Sets the current thread local {@link ConnectionProvider} to a singleton
      * manual commit instance.
      */
     void beginTransactionObserve() {
         log.debug("beginTransactionObserve");
+        if (transaction != null)
+            throw new TransactionAlreadyOpenException();
         currentConnectionProvider.set(new ConnectionProviderSingletonManualCommit(cp));
         if (isTransactionOpen.get() != null && isTransactionOpen.get())
             throw new TransactionAlreadyOpenException();
@@ -651,7 +1022,9 @@ final public class Database {
 
     void batching(int batchSize) {
         log.debug("batching size=" + batchSize);
-        if (batchSize > 1) {
+        if (transaction != null)
+            transaction.batching(batchSize);
+        else if (batchSize > 1) {
             if (!(currentConnectionProvider.get() instanceof ConnectionProviderBatch)) {
                 currentConnectionProvider.set(
                         new ConnectionProviderBatch(currentConnectionProvider.get(), batchSize));
@@ -665,7 +1038,8 @@ final public class Database {
      */
     void beginTransactionSubscribe() {
         log.debug("beginTransactionSubscribe");
-        currentSchedulerFactory.set(CURRENT_THREAD_SCHEDULER_FACTORY);
+        if (transaction == null)
+            currentSchedulerFactory.set(CURRENT_THREAD_SCHEDULER_FACTORY);
     }
 
     /**
@@ -673,22 +1047,34 @@ final public class Database {
      */
     void endTransactionSubscribe() {
         log.debug("endTransactionSubscribe");
-        currentSchedulerFactory.set(null);
-        rsCache.set(null);
+        if (transaction == null)
+            currentSchedulerFactory.set(null);
     }
 
     /**
      * Resets the current thread local {@link ConnectionProvider} to default.
+     * Does nothing if this database is bound to a transaction (the
+     * transaction is rolled back when its queries fail).
      */
     void endTransactionObserve() {
         log.debug("endTransactionObserve");
+        if (transaction != null)
+            return;
         ConnectionProvider c = currentConnectionProvider.get();
         if (c instanceof ConnectionProviderBatch) {
             c.close();
         }
         currentConnectionProvider.set(cp);
         isTransactionOpen.set(false);
-        rsCache.set(null);
+    }
+
+    /**
+     * Records that a commit or rollback query has finished the transaction
+     * this database is bound to (if any).
+     */
+    void transactionEnded() {
+        if (transaction != null)
+            transaction.ended();
     }
 
     /**
@@ -947,7 +1333,8 @@ final public class Database {
      * @return new Database instance
      */
     public Database asynchronous(final Func0<Scheduler> nonTransactionalSchedulerFactory) {
-        return new Database(cp, nonTransactionalSchedulerFactory);
+        return new Database(cp, nonTransactionalSchedulerFactory, IDENTITY_TRANSFORM,
+                statementCache, fetchSize, resultCache, coalescer, listener, transaction);
     }
 
     /**
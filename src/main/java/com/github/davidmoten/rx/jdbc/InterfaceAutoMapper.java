@@ -0,0 +1,302 @@
+package com.github.davidmoten.rx.jdbc;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import com.github.davidmoten.rx.jdbc.Util.Col;
+import com.github.davidmoten.rx.jdbc.Util.IndexedCol;
+import com.github.davidmoten.rx.jdbc.Util.NamedCol;
+import com.github.davidmoten.rx.jdbc.exceptions.SQLRuntimeException;
+
+/**
+ * Maps each row of a {@link ResultSet} to an implementation of an interface
+ * whose methods are annotated with
+ * {@link com.github.davidmoten.rx.jdbc.annotations.Column} or
+ * {@link com.github.davidmoten.rx.jdbc.annotations.Index}.
+ *
+ * <p>
+ * The implementation class is generated once per interface (by
+ * {@link Proxy}) and its constructor is resolved once per mapper, as is the
+ * annotation metadata ({@link AutoMapCache}), that is once per query. Column
+ * indexes are resolved once per {@link ColumnReadPlan} and the slot of each
+ * interface method once per {@link Method} instance passed by the proxy. Each
+ * row then costs one array of values, its handler and one instance of the
+ * generated class. A method with a primitive return type returns zero (or
+ * false) for SQL NULL.
+ *
+ * @param <T>
+ *            the mapped interface type
+ */
+final class InterfaceAutoMapper<T> extends PlannedResultSetMapper<T> {
+
+    private final Class<T> cls;
+
+    /**
+     * Invokes the constructor of the generated implementation class.
+     */
+    private final MethodHandle constructor;
+
+    /**
+     * Columns in slot order.
+     */
+    private final Col[] cols;
+
+    /**
+     * Types to which each slot value is automapped (primitive return types
+     * are replaced by their wrapper types).
+     */
+    private final Class<?>[] types;
+
+    /**
+     * Finds the slot holding the value of each interface method.
+     */
+    private final Slots slots;
+
+    /**
+     * The column indexes for the last {@link ColumnReadPlan} seen by this
+     * mapper.
+     */
+    private volatile Resolved resolved;
+
+    InterfaceAutoMapper(Class<T> cls) {
+        this.cls = cls;
+        Map<String, Col> methodCols = new AutoMapCache(cls).methodCols;
+        this.cols = new Col[methodCols.size()];
+        this.types = new Class<?>[methodCols.size()];
+        Map<String, Integer> slotsByName = new HashMap<String, Integer>();
+        int slot = 0;
+        for (Entry<String, Col> entry : methodCols.entrySet()) {
+            cols[slot] = entry.getValue();
+            types[slot] = wrapperType(entry.getValue().returnType());
+            slotsByName.put(entry.getKey(), slot);
+            slot++;
+        }
+        this.slots = new Slots(slotsByName);
+        this.constructor = implementationConstructor(cls);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public T call(ResultSet rs, ColumnReadPlan plan) {
+        Resolved r = resolved;
+        if (r == null || r.plan != plan) {
+            r = new Resolved(plan, columnIndexes(plan));
+            resolved = r;
+        }
+        int[] indexes = r.indexes;
+        Object[] values = new Object[indexes.length];
+        for (int i = 0; i < indexes.length; i++) {
+            values[i] = plan.mapObject(rs, types[i], indexes[i]);
+        }
+        InvocationHandler handler = new Values(slots, values);
+        try {
+            return (T) (Object) constructor.invokeExact(handler);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private int[] columnIndexes(ColumnReadPlan plan) {
+        Map<String, Integer> colIndexes = plan.colIndexes();
+        int[] indexes = new int[cols.length];
+        for (int i = 0; i < cols.length; i++) {
+            Col column = cols[i];
+            if (column instanceof NamedCol) {
+                String name = ((NamedCol) column).name;
+                Integer index = colIndexes.get(name.toUpperCase());
+                if (index == null) {
+                    throw new SQLRuntimeException(
+                            "query column names do not include '" + name + "'");
+                }
+                indexes[i] = index;
+            } else {
+                indexes[i] = ((IndexedCol) column).index;
+            }
+        }
+        return indexes;
+    }
+
+    private static MethodHandle implementationConstructor(Class<?> cls) {
+        // the class of an instance is the generated class (cached by Proxy)
+        Class<?> implementation = Proxy
+                .newProxyInstance(cls.getClassLoader(), new Class<?>[] { cls }, NO_VALUES)
+                .getClass();
+        try {
+            Constructor<?> c = implementation.getConstructor(InvocationHandler.class);
+            c.setAccessible(true);
+            return MethodHandles.lookup().unreflectConstructor(c)
+                    .asType(MethodType.methodType(Object.class, InvocationHandler.class));
+        } catch (NoSuchMethodException e) {
+            throw new RuntimeException(e);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static Class<?> wrapperType(Class<?> cls) {
+        if (!cls.isPrimitive())
+            return cls;
+        else if (cls == int.class)
+            return Integer.class;
+        else if (cls == long.class)
+            return Long.class;
+        else if (cls == double.class)
+            return Double.class;
+        else if (cls == float.class)
+            return Float.class;
+        else if (cls == short.class)
+            return Short.class;
+        else if (cls == byte.class)
+            return Byte.class;
+        else if (cls == boolean.class)
+            return Boolean.class;
+        else if (cls == char.class)
+            return Character.class;
+        else
+            return cls;
+    }
+
+    /**
+     * Returns the value of an uninitialized field of a primitive type (zero or
+     * false), returned for SQL NULL or a method without a column.
+     * 
+     * @param cls
+     *            primitive type
+     * @return default value
+     */
+    static Object defaultValue(Class<?> cls) {
+        if (cls == int.class)
+            return 0;
+        else if (cls == long.class)
+            return 0L;
+        else if (cls == double.class)
+            return 0.0;
+        else if (cls == float.class)
+            return 0.0f;
+        else if (cls == short.class)
+            return (short) 0;
+        else if (cls == byte.class)
+            return (byte) 0;
+        else if (cls == boolean.class)
+            return false;
+        else if (cls == char.class)
+            return '\0';
+        else
+            // void
+            return null;
+    }
+
+    @Override
+    public String toString() {
+        return "InterfaceAutoMapper [cls=" + cls + "]";
+    }
+
+    private static final InvocationHandler NO_VALUES = new InvocationHandler() {
+        @Override
+        public Object invoke(Object proxy, Method m, Object[] args) {
+            return null;
+        }
+    };
+
+    /**
+     * Slots of the interface methods. The generated class passes the same
+     * {@link Method} instance for every call of a method so the slot is found
+     * by identity in a small copy-on-write array, each method being matched by
+     * name only on its first call.
+     */
+    private static final class Slots {
+
+        private final Map<String, Integer> slotsByName;
+
+        /**
+         * Methods seen so far, replaced (not modified) when a method is added.
+         */
+        private volatile Method[] methods = new Method[0];
+
+        /**
+         * Slot of each method in <code>methods</code>, -1 if none.
+         */
+        private volatile int[] methodSlots = new int[0];
+
+        Slots(Map<String, Integer> slotsByName) {
+            this.slotsByName = slotsByName;
+        }
+
+        int slot(Method m) {
+            // read slots first, they are written after methods
+            int[] sl = methodSlots;
+            Method[] ms = methods;
+            for (int i = 0; i < sl.length; i++) {
+                if (ms[i] == m)
+                    return sl[i];
+            }
+            return add(m);
+        }
+
+        private synchronized int add(Method m) {
+            for (int i = 0; i < methods.length; i++) {
+                if (methods[i] == m)
+                    return methodSlots[i];
+            }
+            Integer index = slotsByName.get(m.getName());
+            int slot = index == null ? -1 : index;
+            Method[] ms = Arrays.copyOf(methods, methods.length + 1);
+            ms[ms.length - 1] = m;
+            int[] sl = Arrays.copyOf(methodSlots, methodSlots.length + 1);
+            sl[sl.length - 1] = slot;
+            methods = ms;
+            methodSlots = sl;
+            return slot;
+        }
+    }
+
+    /**
+     * Answers interface method calls for one row.
+     */
+    private static final class Values implements InvocationHandler {
+
+        private final Slots slots;
+        private final Object[] values;
+
+        Values(Slots slots, Object[] values) {
+            this.slots = slots;
+            this.values = values;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method m, Object[] args) {
+            int slot = slots.slot(m);
+            Object value = slot == -1 ? null : values[slot];
+            if (value == null && m.getReturnType().isPrimitive())
+                // the proxy would throw NullPointerException unboxing null
+                return defaultValue(m.getReturnType());
+            else
+                return value;
+        }
+    }
+
+    private static final class Resolved {
+        final ColumnReadPlan plan;
+        final int[] indexes;
+
+        Resolved(ColumnReadPlan plan, int[] indexes) {
+            this.plan = plan;
+            this.indexes = indexes;
+        }
+    }
+
+}
@@ -0,0 +1,142 @@
+package com.github.davidmoten.rx.jdbc;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of non-negative values (typically durations in
+ * nanoseconds) in the style of HdrHistogram. Values below 32 are counted
+ * exactly and larger values in buckets of 32 sub-buckets per power of two, so
+ * a percentile is within about 3% of the recorded value. Values above 2^44
+ * (about 4.9 hours in nanoseconds) are counted in the last bucket. Recording
+ * does not allocate or lock.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 44;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a value.
+     *
+     * @param value
+     *            value, negative values are recorded as 0
+     */
+    public void record(long value) {
+        record(value, 1);
+    }
+
+    /**
+     * Records a value <code>n</code> times.
+     *
+     * @param value
+     *            value, negative values are recorded as 0
+     * @param n
+     *            number of times
+     */
+    public void record(long value, long n) {
+        if (n <= 0)
+            return;
+        if (value < 0)
+            value = 0;
+        counts.addAndGet(index(value), n);
+        count.addAndGet(n);
+        total.addAndGet(value * n);
+        long m;
+        while (value > (m = max.get()) && !max.compareAndSet(m, value)) {
+            // retry
+        }
+    }
+
+    /**
+     * Returns the number of recorded values.
+     *
+     * @return count
+     */
+    public long count() {
+        return count.get();
+    }
+
+    /**
+     * Returns the largest recorded value (0 if none).
+     *
+     * @return max
+     */
+    public long max() {
+        return max.get();
+    }
+
+    /**
+     * Returns the mean of the recorded values (0 if none).
+     *
+     * @return mean
+     */
+    public double mean() {
+        long c = count.get();
+        if (c == 0)
+            return 0;
+        else
+            return (double) total.get() / c;
+    }
+
+    /**
+     * Returns the value that <code>percentile</code> percent of the recorded
+     * values are less than or equal to (0 if none). The value is the highest
+     * value counted in the same bucket but no more than {@link #max()}.
+     *
+     * @param percentile
+     *            between 0 and 100
+     * @return value at percentile
+     */
+    public long percentile(double percentile) {
+        Conditions.checkArgument(percentile >= 0 && percentile <= 100,
+                "percentile must be between 0 and 100");
+        long c = count.get();
+        if (c == 0)
+            return 0;
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * c));
+        long m = max.get();
+        long sum = 0;
+        // the last bucket has no upper bound
+        for (int i = 0; i < BUCKETS - 1; i++) {
+            sum += counts.get(i);
+            if (sum >= target)
+                return Math.min(highestEquivalentValue(i), m);
+        }
+        return m;
+    }
+
+    static int index(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT)
+            return BUCKETS - 1;
+        // the top SUB_BUCKET_BITS + 1 bits, between SUB_BUCKETS and
+        // 2 * SUB_BUCKETS - 1
+        int top = (int) (value >>> (exponent - SUB_BUCKET_BITS));
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + top - SUB_BUCKETS;
+    }
+
+    static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKETS)
+            return index;
+        int shift = (index >> SUB_BUCKET_BITS) - 1;
+        long subBucket = SUB_BUCKETS + (index & (SUB_BUCKETS - 1));
+        return (subBucket << shift) + (1L << shift) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return "LatencyHistogram [count=" + count() + ", mean=" + mean() + ", p50="
+                + percentile(50) + ", p99=" + percentile(99) + ", max=" + max() + "]";
+    }
+
+}
@@ -0,0 +1,274 @@
+package com.github.davidmoten.rx.jdbc;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sets BLOB and CLOB parameters from files, file channels and byte buffers
+ * (heap, direct or memory-mapped) as streams of known length so the content is
+ * read by the driver a chunk at a time rather than copied onto the heap first.
+ * A file is opened when the driver first reads the stream and closed when the
+ * stream is exhausted or closed. A {@link FileChannel} supplied by the caller
+ * is read from its current position and left open, and a {@link ByteBuffer}
+ * is read without changing its position.
+ */
+final class LobParameters {
+
+    private static final Logger log = LoggerFactory.getLogger(LobParameters.class);
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private LobParameters() {
+        // prevent instantiation
+    }
+
+    /**
+     * Returns true if and only if values of the class are set by
+     * {@link #setBinaryStream(PreparedStatement, int, Object)}.
+     *
+     * @param cls
+     *            parameter class
+     * @return true if a binary stream parameter
+     */
+    static boolean isBinaryStream(Class<?> cls) {
+        return Path.class.isAssignableFrom(cls) || FileChannel.class.isAssignableFrom(cls)
+                || ByteBuffer.class.isAssignableFrom(cls);
+    }
+
+    /**
+     * Sets the parameter from a {@link Path}, {@link FileChannel} or
+     * {@link ByteBuffer} using
+     * {@link PreparedStatement#setBinaryStream(int, InputStream, long)}.
+     *
+     * @param ps
+     *            prepared statement
+     * @param i
+     *            1-based parameter index
+     * @param o
+     *            parameter value
+     * @throws SQLException
+     */
+    static void setBinaryStream(PreparedStatement ps, int i, Object o) throws SQLException {
+        try {
+            if (o instanceof Path) {
+                Path file = (Path) o;
+                ps.setBinaryStream(i, new ChannelInputStream(file), Files.size(file));
+            } else if (o instanceof FileChannel) {
+                FileChannel channel = (FileChannel) o;
+                ps.setBinaryStream(i, new ChannelInputStream(channel),
+                        channel.size() - channel.position());
+            } else {
+                // duplicate so the caller's position is unchanged and the
+                // buffer can be bound again
+                ByteBuffer buffer = ((ByteBuffer) o).duplicate();
+                ps.setBinaryStream(i, new ByteBufferInputStream(buffer), buffer.remaining());
+            }
+        } catch (IOException e) {
+            throw new SQLException("could not read blob parameter " + i, e);
+        }
+    }
+
+    /**
+     * Sets the parameter from a text file using
+     * {@link PreparedStatement#setCharacterStream(int, Reader, long)}. The
+     * length is the file size when every character of the charset is encoded
+     * in one byte, otherwise the number of characters is not known without
+     * reading the file and the stream is set without a length.
+     *
+     * @param ps
+     *            prepared statement
+     * @param i
+     *            1-based parameter index
+     * @param file
+     *            text file
+     * @throws SQLException
+     */
+    static void setCharacterStream(PreparedStatement ps, int i, TextFile file)
+            throws SQLException {
+        try {
+            Reader reader = new FileReader(file);
+            if (file.charset.canEncode() && file.charset.newEncoder().maxBytesPerChar() == 1)
+                ps.setCharacterStream(i, reader, Files.size(file.path));
+            else
+                ps.setCharacterStream(i, reader);
+        } catch (IOException e) {
+            throw new SQLException("could not read clob parameter " + i, e);
+        }
+    }
+
+    /**
+     * A text file to be set as a CLOB parameter.
+     */
+    static final class TextFile {
+
+        final Path path;
+        final Charset charset;
+
+        TextFile(Path path, Charset charset) {
+            this.path = path;
+            this.charset = charset;
+        }
+
+        @Override
+        public String toString() {
+            return "TextFile [path=" + path + ", charset=" + charset + "]";
+        }
+
+    }
+
+    /**
+     * Reads from a channel at its current position. A channel opened from a
+     * file is opened on first read and closed at the end of the file, a
+     * channel supplied by the caller is left open.
+     */
+    private static final class ChannelInputStream extends InputStream {
+
+        private Path file;
+        private FileChannel channel;
+        private final boolean owned;
+
+        ChannelInputStream(Path file) {
+            this.file = file;
+            this.owned = true;
+        }
+
+        ChannelInputStream(FileChannel channel) {
+            this.channel = channel;
+            this.owned = false;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int n;
+            while ((n = read(b, 0, 1)) == 0) {
+                // read again
+            }
+            if (n < 0)
+                return -1;
+            else
+                return b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0)
+                return 0;
+            if (channel == null) {
+                if (file == null)
+                    return -1;
+                channel = FileChannel.open(file, StandardOpenOption.READ);
+                log.debug("opened blob parameter file {}", file);
+                file = null;
+            }
+            int n = channel.read(ByteBuffer.wrap(b, off, len));
+            if (n < 0)
+                close();
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            file = null;
+            if (channel != null) {
+                FileChannel ch = channel;
+                channel = null;
+                if (owned)
+                    ch.close();
+            }
+        }
+    }
+
+    /**
+     * Reads the remaining bytes of a buffer. Reads from a direct or mapped
+     * buffer copy straight into the driver's array.
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            if (buffer.hasRemaining())
+                return buffer.get() & 0xff;
+            else
+                return -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0)
+                return 0;
+            if (!buffer.hasRemaining())
+                return -1;
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+    /**
+     * Opens the text file on first read and closes it at the end of the file.
+     */
+    private static final class FileReader extends Reader {
+
+        private TextFile file;
+        private Reader reader;
+
+        FileReader(TextFile file) {
+            this.file = file;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            if (len == 0)
+                return 0;
+            if (reader == null) {
+                if (file == null)
+                    return -1;
+                reader = Channels.newReader(FileChannel.open(file.path, StandardOpenOption.READ),
+                        file.charset.newDecoder(), -1);
+                log.debug("opened clob parameter file {}", file.path);
+                file = null;
+            }
+            int n = reader.read(cbuf, off, len);
+            if (n < 0)
+                close();
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            file = null;
+            if (reader != null) {
+                Reader r = reader;
+                reader = null;
+                r.close();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,192 @@
+package com.github.davidmoten.rx.jdbc;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.SQLException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.davidmoten.rx.jdbc.exceptions.SQLRuntimeException;
+
+import rx.Observable;
+import rx.Observer;
+import rx.functions.Action1;
+import rx.functions.Action2;
+import rx.functions.Func0;
+import rx.observables.SyncOnSubscribe;
+
+/**
+ * Streams the content of {@link Blob}s and {@link Clob}s in chunks with
+ * backpressure. A chunk is read from the database only when it is requested so
+ * at most one chunk per outstanding request is held in memory whatever the
+ * size of the LOB. The LOB stream is opened on subscription and the stream is
+ * closed and the LOB freed when the subscription ends.
+ */
+final class LobStreams {
+
+    private static final Logger log = LoggerFactory.getLogger(LobStreams.class);
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private LobStreams() {
+        // prevent instantiation
+    }
+
+    /**
+     * Returns the bytes of a blob in chunks of <code>chunkSize</code> bytes
+     * (the last chunk may be smaller). A null blob gives no chunks.
+     *
+     * @param blob
+     *            blob, nullable
+     * @param chunkSize
+     *            maximum number of bytes in a chunk
+     * @return chunks
+     */
+    static Observable<ByteBuffer> bytes(final Blob blob, final int chunkSize) {
+        if (blob == null)
+            return Observable.empty();
+        return Observable.create(SyncOnSubscribe.createSingleState(new Func0<InputStream>() {
+            @Override
+            public InputStream call() {
+                try {
+                    return blob.getBinaryStream();
+                } catch (SQLException e) {
+                    free(blob);
+                    throw new SQLRuntimeException(e);
+                }
+            }
+        }, new Action2<InputStream, Observer<? super ByteBuffer>>() {
+            @Override
+            public void call(InputStream is, Observer<? super ByteBuffer> observer) {
+                byte[] chunk = new byte[chunkSize];
+                int n;
+                try {
+                    n = readFully(is, chunk);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+                if (n > 0)
+                    observer.onNext(ByteBuffer.wrap(chunk, 0, n));
+                if (n < chunkSize)
+                    observer.onCompleted();
+            }
+        }, new Action1<InputStream>() {
+            @Override
+            public void call(InputStream is) {
+                closeQuietly(is);
+                free(blob);
+            }
+        }));
+    }
+
+    /**
+     * Returns the characters of a clob in chunks of <code>chunkSize</code>
+     * characters (the last chunk may be smaller). A null clob gives no
+     * chunks.
+     *
+     * @param clob
+     *            clob, nullable
+     * @param chunkSize
+     *            maximum number of characters in a chunk
+     * @return chunks
+     */
+    static Observable<CharBuffer> chars(final Clob clob, final int chunkSize) {
+        if (clob == null)
+            return Observable.empty();
+        return Observable.create(SyncOnSubscribe.createSingleState(new Func0<Reader>() {
+            @Override
+            public Reader call() {
+                try {
+                    return clob.getCharacterStream();
+                } catch (SQLException e) {
+                    free(clob);
+                    throw new SQLRuntimeException(e);
+                }
+            }
+        }, new Action2<Reader, Observer<? super CharBuffer>>() {
+            @Override
+            public void call(Reader reader, Observer<? super CharBuffer> observer) {
+                char[] chunk = new char[chunkSize];
+                int n;
+                try {
+                    n = readFully(reader, chunk);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+                if (n > 0)
+                    observer.onNext(CharBuffer.wrap(chunk, 0, n));
+                if (n < chunkSize)
+                    observer.onCompleted();
+            }
+        }, new Action1<Reader>() {
+            @Override
+            public void call(Reader reader) {
+                closeQuietly(reader);
+                free(clob);
+            }
+        }));
+    }
+
+    /**
+     * Reads till the array is full or the end of the stream, returning the
+     * number of bytes read.
+     */
+    private static int readFully(InputStream is, byte[] b) throws IOException {
+        int n = 0;
+        while (n < b.length) {
+            int count = is.read(b, n, b.length - n);
+            if (count < 0)
+                break;
+            n += count;
+        }
+        return n;
+    }
+
+    /**
+     * Reads till the array is full or the end of the stream, returning the
+     * number of characters read.
+     */
+    private static int readFully(Reader reader, char[] c) throws IOException {
+        int n = 0;
+        while (n < c.length) {
+            int count = reader.read(c, n, c.length - n);
+            if (count < 0)
+                break;
+            n += count;
+        }
+        return n;
+    }
+
+    private static void closeQuietly(Closeable c) {
+        try {
+            c.close();
+        } catch (IOException e) {
+            log.debug(e.getMessage());
+        }
+    }
+
+    private static void free(Blob blob) {
+        try {
+            blob.free();
+        } catch (SQLException e) {
+            log.debug(e.getMessage());
+        }
+    }
+
+    private static void free(Clob clob) {
+        try {
+            clob.free();
+        } catch (SQLException e) {
+            log.debug(e.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,267 @@
+package com.github.davidmoten.rx.jdbc;
+
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Calendar;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sets the parameters of a {@link PreparedStatement}. The setter for each
+ * parameter position is chosen from the class of the first value seen at that
+ * position and reused while later values have the same class, so repeated
+ * executions of a query skip the type checks. One {@link Calendar} is shared
+ * by all date and time parameters of an execution.
+ *
+ * <p>
+ * A binder may be shared by concurrent executions of a query.
+ */
+final class ParameterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(ParameterBinder.class);
+
+    private static final int OBJECT = 0;
+    private static final int STRING = 1;
+    private static final int INTEGER = 2;
+    private static final int LONG = 3;
+    private static final int DOUBLE = 4;
+    private static final int CLOB = 5;
+    private static final int BLOB = 6;
+    private static final int CALENDAR = 7;
+    private static final int TIME = 8;
+    private static final int TIMESTAMP = 9;
+    private static final int SQL_DATE = 10;
+    private static final int UTIL_DATE = 11;
+    private static final int BINARY_STREAM = 12;
+    private static final int CHARACTER_STREAM = 13;
+
+    /**
+     * The setter last used at each (0-based) parameter position. Elements are
+     * immutable so a stale read only costs a recalculation.
+     */
+    private volatile Setter[] setters = new Setter[0];
+
+    /**
+     * Sets the parameters (named or positional) for one execution.
+     *
+     * @param ps
+     *            prepared statement
+     * @param parameters
+     *            parameters
+     * @param names
+     *            the parameter names in sql order, empty if sql has no names
+     * @throws SQLException
+     */
+    void bind(PreparedStatement ps, List<Parameter> parameters, List<String> names)
+            throws SQLException {
+        if (names.isEmpty())
+            bind(ps, parameters, false);
+        else
+            bind(ps, Util.namedParametersInOrder(parameters, names), true);
+    }
+
+    /**
+     * Sets the parameters in order for one execution.
+     *
+     * @param ps
+     *            prepared statement
+     * @param parameters
+     *            parameters in sql order
+     * @param namesAllowed
+     *            if false then a named parameter is an error
+     * @throws SQLException
+     */
+    void bind(PreparedStatement ps, List<Parameter> parameters, boolean namesAllowed)
+            throws SQLException {
+        Calendar cal = null;
+        for (int i = 1; i <= parameters.size(); i++) {
+            Parameter p = parameters.get(i - 1);
+            if (p.hasName() && !namesAllowed)
+                throw new SQLException("named parameter found but sql does not contain names");
+            cal = bind(ps, i, p.value(), cal);
+        }
+    }
+
+    /**
+     * Sets the parameters from row <code>row</code> of <code>columns</code>.
+     * Primitive columns are set without boxing.
+     *
+     * @param ps
+     *            prepared statement
+     * @param columns
+     *            parameter values by column
+     * @param row
+     *            0-based row index
+     * @throws SQLException
+     */
+    void bind(PreparedStatement ps, Columns columns, int row) throws SQLException {
+        Calendar cal = null;
+        for (int i = 1; i <= columns.size(); i++) {
+            Object column = columns.column(i - 1);
+            switch (columns.kind(i - 1)) {
+            case Columns.LONGS:
+                ps.setLong(i, ((long[]) column)[row]);
+                break;
+            case Columns.INTS:
+                ps.setInt(i, ((int[]) column)[row]);
+                break;
+            case Columns.DOUBLES:
+                ps.setDouble(i, ((double[]) column)[row]);
+                break;
+            case Columns.BOOLEANS:
+                ps.setBoolean(i, ((boolean[]) column)[row]);
+                break;
+            default:
+                cal = bind(ps, i, ((Object[]) column)[row], cal);
+            }
+        }
+    }
+
+    /**
+     * Sets one parameter and returns the calendar for the rest of the
+     * execution (created on first use).
+     */
+    private Calendar bind(PreparedStatement ps, int i, Object o, Calendar cal)
+            throws SQLException {
+        try {
+            if (o == null)
+                ps.setObject(i, null);
+            else if (o == Database.NULL_CLOB)
+                ps.setNull(i, Types.CLOB);
+            else if (o == Database.NULL_BLOB)
+                ps.setNull(i, Types.BLOB);
+            else {
+                switch (setter(i - 1, o.getClass())) {
+                case STRING:
+                    ps.setString(i, (String) o);
+                    break;
+                case INTEGER:
+                    ps.setInt(i, (Integer) o);
+                    break;
+                case LONG:
+                    ps.setLong(i, (Long) o);
+                    break;
+                case DOUBLE:
+                    ps.setDouble(i, (Double) o);
+                    break;
+                case CLOB:
+                    Util.setClob(ps, i, o, o.getClass());
+                    break;
+                case BLOB:
+                    Util.setBlob(ps, i, o, o.getClass());
+                    break;
+                case CALENDAR: {
+                    Calendar c = (Calendar) o;
+                    ps.setTimestamp(i, new Timestamp(c.getTimeInMillis()), c);
+                    break;
+                }
+                case TIME:
+                    cal = calendar(cal);
+                    ps.setTime(i, (Time) o, cal);
+                    break;
+                case TIMESTAMP:
+                    cal = calendar(cal);
+                    ps.setTimestamp(i, (Timestamp) o, cal);
+                    break;
+                case SQL_DATE:
+                    cal = calendar(cal);
+                    ps.setDate(i, (java.sql.Date) o, cal);
+                    break;
+                case UTIL_DATE:
+                    cal = calendar(cal);
+                    ps.setTimestamp(i, new Timestamp(((java.util.Date) o).getTime()), cal);
+                    break;
+                case BINARY_STREAM:
+                    LobParameters.setBinaryStream(ps, i, o);
+                    break;
+                case CHARACTER_STREAM:
+                    LobParameters.setCharacterStream(ps, i, (LobParameters.TextFile) o);
+                    break;
+                default:
+                    ps.setObject(i, o);
+                }
+            }
+            return cal;
+        } catch (SQLException e) {
+            log.debug("{} when setting ps.setObject({},{})", e.getMessage(), i, o);
+            throw e;
+        }
+    }
+
+    private static Calendar calendar(Calendar cal) {
+        if (cal == null)
+            return Calendar.getInstance();
+        else
+            return cal;
+    }
+
+    private int setter(int index, Class<?> cls) {
+        Setter[] s = setters;
+        if (index < s.length) {
+            Setter setter = s[index];
+            if (setter != null && setter.cls == cls)
+                return setter.kind;
+        }
+        Setter setter = new Setter(cls, kind(cls));
+        synchronized (this) {
+            s = setters;
+            if (index >= s.length) {
+                Setter[] t = new Setter[index + 1];
+                System.arraycopy(s, 0, t, 0, s.length);
+                s = t;
+            }
+            s[index] = setter;
+            setters = s;
+        }
+        return setter.kind;
+    }
+
+    private static int kind(Class<?> cls) {
+        if (cls == String.class)
+            return STRING;
+        else if (cls == Integer.class)
+            return INTEGER;
+        else if (cls == Long.class)
+            return LONG;
+        else if (cls == Double.class)
+            return DOUBLE;
+        else if (Clob.class.isAssignableFrom(cls))
+            return CLOB;
+        else if (Blob.class.isAssignableFrom(cls))
+            return BLOB;
+        else if (Calendar.class.isAssignableFrom(cls))
+            return CALENDAR;
+        else if (Time.class.isAssignableFrom(cls))
+            return TIME;
+        else if (Timestamp.class.isAssignableFrom(cls))
+            return TIMESTAMP;
+        else if (java.sql.Date.class.isAssignableFrom(cls))
+            return SQL_DATE;
+        else if (java.util.Date.class.isAssignableFrom(cls))
+            return UTIL_DATE;
+        else if (LobParameters.isBinaryStream(cls))
+            return BINARY_STREAM;
+        else if (cls == LobParameters.TextFile.class)
+            return CHARACTER_STREAM;
+        else
+            return OBJECT;
+    }
+
+    private static final class Setter {
+        final Class<?> cls;
+        final int kind;
+
+        Setter(Class<?> cls, int kind) {
+            this.cls = cls;
+            this.kind = kind;
+        }
+    }
+
+}
@@ -0,0 +1,38 @@
+package com.github.davidmoten.rx.jdbc;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * A {@link ResultSetMapper} that reads columns using a {@link ColumnReadPlan}.
+ * When used in a select query the plan is created once per query execution
+ * and passed to {@link #call(ResultSet, ColumnReadPlan)} for every row.
+ *
+ * @param <T>
+ *            the mapped type
+ */
+public abstract class PlannedResultSetMapper<T> implements ResultSetMapper<T> {
+
+    /**
+     * Maps the current row of the {@link ResultSet}.
+     *
+     * @param rs
+     *            result set positioned on a row
+     * @param plan
+     *            the column read plan for {@code rs}
+     * @return the mapped row
+     * @throws SQLException
+     */
+    public abstract T call(ResultSet rs, ColumnReadPlan plan) throws SQLException;
+
+    /**
+     * Maps the current row of the {@link ResultSet} using a plan created from
+     * its metadata. Prefer {@link #call(ResultSet, ColumnReadPlan)} when
+     * mapping many rows.
+     */
+    @Override
+    public T call(ResultSet rs) throws SQLException {
+        return call(rs, ColumnReadPlan.create(rs));
+    }
+
+}
@@ -13,14 +13,29 @@ final class QueryContext {
 
 	private final Database db;
 	private final int batchSize;
+	private final int fetchSize;
+	private final boolean prefetch;
+	private final boolean cached;
+	private final boolean coalesced;
+	private final int maxRows;
 
 	QueryContext(Database db) {
 		this(db, 1);
 	}
 
 	public QueryContext(Database db, int batchSize) {
+		this(db, batchSize, db.fetchSize(), false, false, false, 0);
+	}
+
+	private QueryContext(Database db, int batchSize, int fetchSize, boolean prefetch,
+			boolean cached, boolean coalesced, int maxRows) {
 		this.db = db;
 		this.batchSize = batchSize;
+		this.fetchSize = fetchSize;
+		this.prefetch = prefetch;
+		this.cached = cached;
+		this.coalesced = coalesced;
+		this.maxRows = maxRows;
 	}
 
 	/**
@@ -56,21 +71,146 @@ final class QueryContext {
 	void endTransactionObserve() {
 		db.endTransactionObserve();
 	}
+
+	void transactionEnded() {
+		db.transactionEnded();
+	}
 	
 	void setupBatching() {
 		db.batching(batchSize);
 	}
 
+	/**
+	 * Returns the statement cache for queries with this context.
+	 * 
+	 * @return
+	 */
+	StatementCache statementCache() {
+		return db.statementCache();
+	}
+
 	Func1<ResultSet, ? extends ResultSet> resultSetTransform() {
 		return db.getResultSetTransform();
 	}
 
 	QueryContext batched(int batchSize) {
-		return new QueryContext(db, batchSize);
+		return new QueryContext(db, batchSize, fetchSize, prefetch, cached, coalesced, maxRows);
 	}
 	
 	int batchSize() {
 		return batchSize;
 	}
 
+	/**
+	 * Returns a copy of this context with the given fetch size for select
+	 * queries.
+	 * 
+	 * @param fetchSize
+	 * @return
+	 */
+	QueryContext fetchSize(int fetchSize) {
+		return new QueryContext(db, batchSize, fetchSize, prefetch, cached, coalesced, maxRows);
+	}
+
+	/**
+	 * Returns the fetch size hint for select queries (0 for the driver
+	 * default).
+	 * 
+	 * @return
+	 */
+	int fetchSize() {
+		return fetchSize;
+	}
+
+	/**
+	 * Returns a copy of this context where select queries read rows ahead of
+	 * demand on a background thread.
+	 * 
+	 * @return
+	 */
+	QueryContext prefetching() {
+		return new QueryContext(db, batchSize, fetchSize, true, cached, coalesced, maxRows);
+	}
+
+	boolean prefetch() {
+		return prefetch;
+	}
+
+	boolean isTransactionOpen() {
+		return db.isTransactionOpen();
+	}
+
+	/**
+	 * Returns a copy of this context where the rows of select queries are
+	 * cached in the {@link ResultCache} of the database.
+	 * 
+	 * @return
+	 */
+	QueryContext caching() {
+		return new QueryContext(db, batchSize, fetchSize, prefetch, true, coalesced, maxRows);
+	}
+
+	boolean cached() {
+		return cached;
+	}
+
+	/**
+	 * Returns the result cache of the database (disabled if the database has
+	 * no result cache).
+	 * 
+	 * @return
+	 */
+	ResultCache resultCache() {
+		return db.resultCache();
+	}
+
+	/**
+	 * Returns a copy of this context where identical select queries in flight
+	 * at the same time share one execution.
+	 * 
+	 * @return
+	 */
+	QueryContext coalescing() {
+		return new QueryContext(db, batchSize, fetchSize, prefetch, cached, true, maxRows);
+	}
+
+	boolean coalesced() {
+		return coalesced;
+	}
+
+	/**
+	 * Returns a copy of this context where select queries read at most
+	 * <code>maxRows</code> rows per execution.
+	 * 
+	 * @param maxRows
+	 * @return
+	 */
+	QueryContext limited(int maxRows) {
+		return new QueryContext(db, batchSize, fetchSize, prefetch, cached, coalesced, maxRows);
+	}
+
+	/**
+	 * Returns the maximum number of rows read per execution of a select
+	 * query (0 for no limit).
+	 * 
+	 * @return
+	 */
+	int maxRows() {
+		return maxRows;
+	}
+
+	QuerySelectCoalescer coalescer() {
+		return db.coalescer();
+	}
+
+	/**
+	 * Returns the listener that receives the timings of queries with this
+	 * context.
+	 * 
+	 * @return
+	 */
+	QueryListener listener() {
+		return db.queryListener();
+	}
+
 }
\ No newline at end of file
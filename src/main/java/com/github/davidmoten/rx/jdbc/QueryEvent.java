@@ -0,0 +1,58 @@
+package com.github.davidmoten.rx.jdbc;
+
+/**
+ * The timed stages of a query execution reported to a {@link QueryListener}.
+ */
+public enum QueryEvent {
+
+    /**
+     * Obtaining the connection from the {@link ConnectionProvider}.
+     */
+    CONNECTION_ACQUIRE,
+
+    /**
+     * Preparing the statement (or taking it from the statement cache) and
+     * setting its parameters.
+     */
+    PREPARE,
+
+    /**
+     * Executing the statement. For an update the rows are the affected row
+     * count.
+     */
+    EXECUTE,
+
+    /**
+     * From the start of a select query (before the connection is obtained) to
+     * reading its first row.
+     */
+    FIRST_ROW,
+
+    /**
+     * Mapping the rows of a select query to values, reported once per query
+     * with the total time and the number of rows mapped.
+     */
+    ROW_MAPPING,
+
+    /**
+     * Closing the result set, statement and connection. The rows are the rows
+     * emitted by a select query or the affected row count of an update.
+     */
+    CLOSE,
+
+    /**
+     * From obtaining the connection to closing it, reported with the
+     * {@link #CLOSE}.
+     */
+    CONNECTION_HOLD,
+
+    /**
+     * The total time a select query held its connection open while its
+     * subscriber was not ready for more rows, reported once per query with
+     * the {@link #CLOSE}. This is the time without outstanding requests plus
+     * the time spent in the subscriber's <code>onNext</code> or, when
+     * prefetching, the time the read-ahead queue was full.
+     */
+    BACKPRESSURE_WAIT;
+
+}
@@ -0,0 +1,43 @@
+package com.github.davidmoten.rx.jdbc;
+
+/**
+ * Receives the timings of the stages of query executions (see
+ * {@link QueryEvent}). Set using {@link Database.Builder#queryListener}. Called
+ * synchronously on the thread running the stage so implementations should be
+ * fast, thread-safe and should not block. An exception thrown by a listener is
+ * logged and does not affect the query.
+ */
+public interface QueryListener {
+
+    /**
+     * Listener that ignores all events. When this listener is used (the
+     * default) queries are not timed.
+     */
+    QueryListener NONE = new QueryListener() {
+        @Override
+        public void onEvent(QueryEvent event, String fingerprint, long durationNanos, long rows,
+                int batchSize) {
+            // do nothing
+        }
+    };
+
+    /**
+     * Called when a stage of a query execution has finished.
+     *
+     * @param event
+     *            the stage
+     * @param fingerprint
+     *            the sql of the query with literals replaced by
+     *            <code>?</code> and whitespace collapsed (see
+     *            {@link QueryMetrics#fingerprint(String)})
+     * @param durationNanos
+     *            duration of the stage in nanoseconds
+     * @param rows
+     *            rows read or affected so far (see {@link QueryEvent})
+     * @param batchSize
+     *            the batch size of the query
+     */
+    void onEvent(QueryEvent event, String fingerprint, long durationNanos, long rows,
+            int batchSize);
+
+}
@@ -0,0 +1,98 @@
+package com.github.davidmoten.rx.jdbc;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * {@link QueryListener} that aggregates the durations of each
+ * {@link QueryEvent} per sql fingerprint in {@link LatencyHistogram}s.
+ * Recording an event for a known fingerprint does not allocate or lock so it
+ * can stay enabled in production. {@link QueryEvent#ROW_MAPPING} is recorded
+ * as the mean mapping time per row, once for each row.
+ *
+ * <pre>
+ * QueryMetrics metrics = new QueryMetrics();
+ * Database db = Database.builder().url(url).queryListener(metrics).build();
+ * ...
+ * long p99 = metrics.histogram(QueryMetrics.fingerprint(sql), QueryEvent.EXECUTE)
+ *         .percentile(99);
+ * </pre>
+ */
+public final class QueryMetrics implements QueryListener {
+
+    private static final int EVENTS = QueryEvent.values().length;
+
+    private final ConcurrentMap<String, LatencyHistogram[]> histograms = new ConcurrentHashMap<String, LatencyHistogram[]>();
+
+    @Override
+    public void onEvent(QueryEvent event, String fingerprint, long durationNanos, long rows,
+            int batchSize) {
+        LatencyHistogram h = histograms(fingerprint)[event.ordinal()];
+        if (event == QueryEvent.ROW_MAPPING) {
+            if (rows > 0)
+                h.record(durationNanos / rows, rows);
+        } else
+            h.record(durationNanos);
+    }
+
+    private LatencyHistogram[] histograms(String fingerprint) {
+        LatencyHistogram[] h = histograms.get(fingerprint);
+        if (h == null) {
+            h = new LatencyHistogram[EVENTS];
+            for (int i = 0; i < EVENTS; i++)
+                h[i] = new LatencyHistogram();
+            LatencyHistogram[] existing = histograms.putIfAbsent(fingerprint, h);
+            if (existing != null)
+                h = existing;
+        }
+        return h;
+    }
+
+    /**
+     * Returns the fingerprints of the queries that have reported events.
+     *
+     * @return fingerprints
+     */
+    public Set<String> fingerprints() {
+        return Collections.unmodifiableSet(histograms.keySet());
+    }
+
+    /**
+     * Returns the durations in nanoseconds of an event for a query or null if
+     * the query has not reported events.
+     *
+     * @param fingerprint
+     *            query fingerprint
+     * @param event
+     *            stage of the query
+     * @return histogram or null
+     */
+    public LatencyHistogram histogram(String fingerprint, QueryEvent event) {
+        LatencyHistogram[] h = histograms.get(fingerprint);
+        if (h == null)
+            return null;
+        else
+            return h[event.ordinal()];
+    }
+
+    /**
+     * Returns the fingerprint of the sql as reported to listeners.
+     *
+     * @param sql
+     *            sql
+     * @return fingerprint
+     */
+    public static String fingerprint(String sql) {
+        return QueryProbe.fingerprint(sql);
+    }
+
+    /**
+     * Discards all recorded durations.
+     */
+    public void reset() {
+        histograms.clear();
+    }
+
+}
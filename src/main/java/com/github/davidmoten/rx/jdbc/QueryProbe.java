@@ -0,0 +1,293 @@
+package com.github.davidmoten.rx.jdbc;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Times the stages of one query execution and reports them to the
+ * {@link QueryListener} of the database. When the listener is
+ * {@link QueryListener#NONE} the shared {@link #NONE} probe is used which
+ * neither reads the clock nor allocates.
+ *
+ * <p>
+ * The stages up to the first row are timed by the subscribing thread and rows
+ * are counted by the (serialized) thread reading them. The close may be
+ * reported from another thread so its row count may be stale.
+ */
+final class QueryProbe {
+
+    private static final Logger log = LoggerFactory.getLogger(QueryProbe.class);
+
+    static final QueryProbe NONE = new QueryProbe(QueryListener.NONE, "", 0);
+
+    private static final AtomicIntegerFieldUpdater<QueryProbe> CLOSED = AtomicIntegerFieldUpdater
+            .newUpdater(QueryProbe.class, "closed");
+
+    private final QueryListener listener;
+    private final String fingerprint;
+    private final int batchSize;
+    final boolean enabled;
+
+    private long start;
+    private long last;
+    private long acquired;
+    private boolean connected;
+    private long waitStart;
+    private long waitNanos;
+    private long rows;
+    private long mapped;
+    private long mappingNanos;
+    private boolean update;
+    private volatile int closed;
+
+    private QueryProbe(QueryListener listener, String fingerprint, int batchSize) {
+        this.listener = listener;
+        this.fingerprint = fingerprint;
+        this.batchSize = batchSize;
+        this.enabled = listener != QueryListener.NONE;
+    }
+
+    /**
+     * Returns a probe for one execution of a select query.
+     *
+     * @param query
+     *            query
+     * @return probe
+     */
+    static QueryProbe create(QuerySelect query) {
+        QueryListener listener = query.context().listener();
+        if (listener == QueryListener.NONE)
+            return NONE;
+        else
+            return new QueryProbe(listener, query.fingerprint(), query.context().batchSize());
+    }
+
+    /**
+     * Returns a probe for one execution of an update query.
+     *
+     * @param query
+     *            query
+     * @return probe
+     */
+    static QueryProbe create(QueryUpdate<?> query) {
+        QueryListener listener = query.context().listener();
+        if (listener == QueryListener.NONE)
+            return NONE;
+        else
+            return new QueryProbe(listener, query.fingerprint(), query.context().batchSize());
+    }
+
+    /**
+     * Marks the start of the execution (before the connection is obtained).
+     */
+    void start() {
+        if (enabled) {
+            start = System.nanoTime();
+            last = start;
+        }
+    }
+
+    /**
+     * Reports the stage that started when the previous stage finished.
+     *
+     * @param event
+     *            stage that has just finished
+     */
+    void event(QueryEvent event) {
+        if (enabled) {
+            long now = System.nanoTime();
+            report(event, now - last, rows);
+            last = now;
+            if (event == QueryEvent.CONNECTION_ACQUIRE) {
+                acquired = now;
+                connected = true;
+            }
+        }
+    }
+
+    /**
+     * Reports the execution of an update. Generated keys read afterwards are
+     * timed as mapped rows but the rows reported stay the affected row count.
+     *
+     * @param count
+     *            affected row count
+     */
+    void executed(long count) {
+        if (enabled) {
+            rows = count;
+            update = true;
+            event(QueryEvent.EXECUTE);
+        }
+    }
+
+    /**
+     * Returns the time a row was read, call before mapping the row.
+     *
+     * @return nanoTime or 0 if not enabled
+     */
+    long rowRead() {
+        if (enabled)
+            return System.nanoTime();
+        else
+            return 0;
+    }
+
+    /**
+     * Records the mapping of a row, call after mapping the row.
+     *
+     * @param readTime
+     *            value returned by {@link #rowRead()}
+     * @return nanoTime or 0 if not enabled
+     */
+    long rowMapped(long readTime) {
+        if (enabled) {
+            if (!update) {
+                if (rows == 0)
+                    report(QueryEvent.FIRST_ROW, readTime - start, 1);
+                rows++;
+            }
+            long now = System.nanoTime();
+            mappingNanos += now - readTime;
+            mapped++;
+            return now;
+        } else
+            return 0;
+    }
+
+    /**
+     * Records the time the subscriber took to handle a row emitted
+     * synchronously as time waiting for the subscriber.
+     *
+     * @param mappedTime
+     *            value returned by {@link #rowMapped(long)}
+     */
+    void rowEmitted(long mappedTime) {
+        if (enabled)
+            waitNanos += System.nanoTime() - mappedTime;
+    }
+
+    /**
+     * Marks the start of a wait for requests (the subscriber has not
+     * requested more rows). Must happen before the wait is published to other
+     * threads (for example by setting the requested count to zero).
+     */
+    void waiting() {
+        if (enabled)
+            waitStart = System.nanoTime();
+    }
+
+    /**
+     * Marks the end of a wait for requests started by {@link #waiting()}, if
+     * any.
+     */
+    void resumed() {
+        if (enabled && waitStart != 0) {
+            waitNanos += System.nanoTime() - waitStart;
+            waitStart = 0;
+        }
+    }
+
+    /**
+     * Returns the time closing started.
+     *
+     * @return nanoTime or 0 if not enabled
+     */
+    long closing() {
+        if (enabled)
+            return System.nanoTime();
+        else
+            return 0;
+    }
+
+    /**
+     * Reports the row mapping and the close of the execution. Only the first
+     * call reports.
+     *
+     * @param closingTime
+     *            value returned by {@link #closing()}
+     */
+    void closed(long closingTime) {
+        if (enabled && CLOSED.compareAndSet(this, 0, 1)) {
+            long now = System.nanoTime();
+            if (mapped > 0)
+                report(QueryEvent.ROW_MAPPING, mappingNanos, mapped);
+            if (!update) {
+                // include a wait still in progress (the subscriber
+                // unsubscribed without requesting again)
+                long w = waitStart;
+                report(QueryEvent.BACKPRESSURE_WAIT,
+                        waitNanos + (w == 0 ? 0 : Math.max(0, closingTime - w)), rows);
+            }
+            if (connected)
+                report(QueryEvent.CONNECTION_HOLD, now - acquired, rows);
+            report(QueryEvent.CLOSE, now - closingTime, rows);
+        }
+    }
+
+    private void report(QueryEvent event, long durationNanos, long rows) {
+        try {
+            listener.onEvent(event, fingerprint, durationNanos, rows, batchSize);
+        } catch (RuntimeException e) {
+            log.warn("query listener failed on " + event, e);
+        }
+    }
+
+    /**
+     * Returns the sql with string and numeric literals replaced by
+     * <code>?</code> and whitespace collapsed to a single space, so executions
+     * of the same statement with different literal values have the same
+     * fingerprint.
+     *
+     * @param sql
+     *            sql
+     * @return fingerprint
+     */
+    static String fingerprint(String sql) {
+        StringBuilder s = new StringBuilder(sql.length());
+        int n = sql.length();
+        int i = 0;
+        while (i < n) {
+            char c = sql.charAt(i);
+            if (c == '\'') {
+                // string literal, a quote is escaped by doubling it
+                i++;
+                while (i < n) {
+                    if (sql.charAt(i) == '\'') {
+                        if (i + 1 < n && sql.charAt(i + 1) == '\'')
+                            i += 2;
+                        else
+                            break;
+                    } else
+                        i++;
+                }
+                i++;
+                s.append('?');
+            } else if (c == '"') {
+                // quoted identifier
+                int end = sql.indexOf('"', i + 1);
+                if (end < 0)
+                    end = n - 1;
+                s.append(sql, i, end + 1);
+                i = end + 1;
+            } else if (Character.isDigit(c) && (s.length() == 0
+                    || !Character.isJavaIdentifierPart(s.charAt(s.length() - 1)))) {
+                while (i < n && (Character.isLetterOrDigit(sql.charAt(i))
+                        || sql.charAt(i) == '.'))
+                    i++;
+                s.append('?');
+            } else if (Character.isWhitespace(c)) {
+                while (i < n && Character.isWhitespace(sql.charAt(i)))
+                    i++;
+                if (s.length() > 0 && i < n)
+                    s.append(' ');
+            } else {
+                s.append(c);
+                i++;
+            }
+        }
+        return s.toString();
+    }
+
+}
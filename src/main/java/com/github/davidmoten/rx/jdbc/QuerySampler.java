@@ -0,0 +1,274 @@
+package com.github.davidmoten.rx.jdbc;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * {@link QueryListener} that samples the connection hold time, rows per second
+ * and backpressure waits of each query (sql fingerprint) to find the slowest
+ * queries and the queries whose subscribers hold pooled connections open
+ * while not ready for more rows. Recording an execution of a known query is a few
+ * atomic increments. Read the samples using {@link #slowest()},
+ * {@link #slowBackpressure()} and {@link #snapshot()} or over JMX after
+ * {@link #registerMBean(String)}.
+ *
+ * <pre>
+ * QuerySampler sampler = new QuerySampler(10, 1, TimeUnit.SECONDS);
+ * sampler.registerMBean("orders");
+ * Database db = Database.builder().url(url).queryListener(sampler).build();
+ * </pre>
+ */
+public final class QuerySampler implements QueryListener, QuerySamplerMXBean {
+
+    private static final int DEFAULT_TOP_N = 10;
+    private static final int DEFAULT_SLOW_BACKPRESSURE_SECONDS = 1;
+    private static final int DEFAULT_MAX_QUERIES = 1000;
+
+    private final int topN;
+    private final long slowBackpressureNanos;
+    private final int maxQueries;
+    private final ConcurrentMap<String, Sample> samples = new ConcurrentHashMap<String, Sample>();
+    private final AtomicLong unsampled = new AtomicLong();
+    private volatile ObjectName objectName;
+
+    /**
+     * Constructor. Reports the 10 slowest queries and counts backpressure
+     * waits of 1 second or more as slow.
+     */
+    public QuerySampler() {
+        this(DEFAULT_TOP_N, DEFAULT_SLOW_BACKPRESSURE_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param topN
+     *            maximum number of queries returned by {@link #slowest()} and
+     *            {@link #slowBackpressure()}
+     * @param slowBackpressure
+     *            backpressure wait at or above which an execution is counted
+     *            as slow
+     * @param unit
+     *            unit of slowBackpressure
+     */
+    public QuerySampler(int topN, long slowBackpressure, TimeUnit unit) {
+        this(topN, slowBackpressure, unit, DEFAULT_MAX_QUERIES);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param topN
+     *            maximum number of queries returned by {@link #slowest()} and
+     *            {@link #slowBackpressure()}
+     * @param slowBackpressure
+     *            backpressure wait at or above which an execution is counted
+     *            as slow
+     * @param unit
+     *            unit of slowBackpressure
+     * @param maxQueries
+     *            maximum number of distinct queries sampled, executions of
+     *            other queries are only counted
+     */
+    public QuerySampler(int topN, long slowBackpressure, TimeUnit unit, int maxQueries) {
+        Conditions.checkArgument(topN > 0, "topN must be > 0");
+        Conditions.checkArgument(slowBackpressure >= 0, "slowBackpressure must be >= 0");
+        Conditions.checkArgument(maxQueries > 0, "maxQueries must be > 0");
+        this.topN = topN;
+        this.slowBackpressureNanos = unit.toNanos(slowBackpressure);
+        this.maxQueries = maxQueries;
+    }
+
+    @Override
+    public void onEvent(QueryEvent event, String fingerprint, long durationNanos, long rows,
+            int batchSize) {
+        if (event == QueryEvent.CONNECTION_HOLD) {
+            Sample sample = sample(fingerprint);
+            if (sample == null)
+                unsampled.incrementAndGet();
+            else {
+                sample.executions.incrementAndGet();
+                sample.rows.addAndGet(rows);
+                sample.holdNanos.addAndGet(durationNanos);
+                max(sample.maxHoldNanos, durationNanos);
+            }
+        } else if (event == QueryEvent.BACKPRESSURE_WAIT) {
+            Sample sample = sample(fingerprint);
+            if (sample != null) {
+                sample.waitNanos.addAndGet(durationNanos);
+                max(sample.maxWaitNanos, durationNanos);
+                if (durationNanos >= slowBackpressureNanos && durationNanos > 0)
+                    sample.slowBackpressure.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Returns the sample for the query or null if the maximum number of
+     * queries are already sampled.
+     */
+    private Sample sample(String fingerprint) {
+        Sample sample = samples.get(fingerprint);
+        if (sample == null) {
+            // the size check is racy so the maximum may be slightly exceeded
+            if (samples.size() >= maxQueries)
+                return null;
+            sample = new Sample();
+            Sample existing = samples.putIfAbsent(fingerprint, sample);
+            if (existing != null)
+                sample = existing;
+        }
+        return sample;
+    }
+
+    private static void max(AtomicLong max, long value) {
+        long m;
+        while (value > (m = max.get()) && !max.compareAndSet(m, value)) {
+            // retry
+        }
+    }
+
+    /**
+     * Returns the stats of all sampled queries with the longest connection
+     * hold time first.
+     *
+     * @return stats of all queries
+     */
+    public List<QueryStats> snapshot() {
+        List<QueryStats> list = new ArrayList<QueryStats>();
+        for (Map.Entry<String, Sample> entry : samples.entrySet()) {
+            Sample s = entry.getValue();
+            list.add(new QueryStats(entry.getKey(), s.executions.get(), s.rows.get(),
+                    s.holdNanos.get(), s.maxHoldNanos.get(), s.waitNanos.get(),
+                    s.maxWaitNanos.get(), s.slowBackpressure.get()));
+        }
+        Collections.sort(list, new Comparator<QueryStats>() {
+            @Override
+            public int compare(QueryStats a, QueryStats b) {
+                return Double.compare(b.getMaxConnectionHoldMs(), a.getMaxConnectionHoldMs());
+            }
+        });
+        return list;
+    }
+
+    /**
+     * Returns the stats of the top N queries by longest connection hold time,
+     * longest first.
+     *
+     * @return slowest queries
+     */
+    public List<QueryStats> slowest() {
+        List<QueryStats> list = snapshot();
+        return new ArrayList<QueryStats>(list.subList(0, Math.min(topN, list.size())));
+    }
+
+    /**
+     * Returns the stats of the top N queries by longest backpressure wait
+     * that have waited for their subscriber for at least the slow
+     * backpressure threshold in one execution, longest wait first.
+     *
+     * @return queries with slow subscribers
+     */
+    public List<QueryStats> slowBackpressure() {
+        List<QueryStats> list = new ArrayList<QueryStats>();
+        for (QueryStats stats : snapshot())
+            if (stats.getSlowBackpressureCount() > 0)
+                list.add(stats);
+        Collections.sort(list, new Comparator<QueryStats>() {
+            @Override
+            public int compare(QueryStats a, QueryStats b) {
+                return Double.compare(b.getMaxBackpressureWaitMs(),
+                        a.getMaxBackpressureWaitMs());
+            }
+        });
+        return new ArrayList<QueryStats>(list.subList(0, Math.min(topN, list.size())));
+    }
+
+    @Override
+    public List<QueryStats> getSlowestQueries() {
+        return slowest();
+    }
+
+    @Override
+    public List<QueryStats> getSlowBackpressureQueries() {
+        return slowBackpressure();
+    }
+
+    @Override
+    public long getSlowBackpressureThresholdMs() {
+        return TimeUnit.NANOSECONDS.toMillis(slowBackpressureNanos);
+    }
+
+    @Override
+    public long getUnsampledExecutions() {
+        return unsampled.get();
+    }
+
+    @Override
+    public void reset() {
+        samples.clear();
+        unsampled.set(0);
+    }
+
+    /**
+     * Registers this sampler with the platform MBean server under the name
+     * <code>com.github.davidmoten.rx.jdbc:type=QuerySampler,name=</code>
+     * <code>name</code>.
+     *
+     * @param name
+     *            distinguishes samplers of different databases
+     * @return the object name
+     */
+    public ObjectName registerMBean(String name) {
+        try {
+            ObjectName on = new ObjectName("com.github.davidmoten.rx.jdbc:type=QuerySampler,name="
+                    + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, on);
+            objectName = on;
+            return on;
+        } catch (JMException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Unregisters this sampler from the platform MBean server if registered
+     * by {@link #registerMBean(String)}.
+     */
+    public void unregisterMBean() {
+        ObjectName on = objectName;
+        if (on != null) {
+            objectName = null;
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            try {
+                if (server.isRegistered(on))
+                    server.unregisterMBean(on);
+            } catch (JMException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private static final class Sample {
+        final AtomicLong executions = new AtomicLong();
+        final AtomicLong rows = new AtomicLong();
+        final AtomicLong holdNanos = new AtomicLong();
+        final AtomicLong maxHoldNanos = new AtomicLong();
+        final AtomicLong waitNanos = new AtomicLong();
+        final AtomicLong maxWaitNanos = new AtomicLong();
+        final AtomicLong slowBackpressure = new AtomicLong();
+    }
+
+}
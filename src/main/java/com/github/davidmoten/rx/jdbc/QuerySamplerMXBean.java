@@ -0,0 +1,48 @@
+package com.github.davidmoten.rx.jdbc;
+
+import java.util.List;
+
+/**
+ * JMX view of a {@link QuerySampler}.
+ */
+public interface QuerySamplerMXBean {
+
+    /**
+     * Returns the queries with the longest connection hold times, longest
+     * first.
+     * 
+     * @return slowest queries
+     */
+    List<QueryStats> getSlowestQueries();
+
+    /**
+     * Returns the queries whose subscribers have held a connection open while
+     * not ready for more rows for at least the slow backpressure threshold,
+     * longest wait first.
+     * 
+     * @return queries with slow subscribers
+     */
+    List<QueryStats> getSlowBackpressureQueries();
+
+    /**
+     * Returns the backpressure wait at or above which an execution is counted
+     * as slow.
+     * 
+     * @return threshold in ms
+     */
+    long getSlowBackpressureThresholdMs();
+
+    /**
+     * Returns the number of executions not sampled because the maximum number
+     * of distinct queries was reached.
+     * 
+     * @return unsampled executions
+     */
+    long getUnsampledExecutions();
+
+    /**
+     * Discards all samples.
+     */
+    void reset();
+
+}
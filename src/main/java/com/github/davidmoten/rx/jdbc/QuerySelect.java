@@ -1,9 +1,15 @@
 package com.github.davidmoten.rx.jdbc;
 
+import static com.github.davidmoten.rx.jdbc.Conditions.checkArgument;
 import static com.github.davidmoten.rx.jdbc.Conditions.checkNotNull;
 import static com.github.davidmoten.rx.jdbc.Queries.bufferedParameters;
 
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import com.github.davidmoten.rx.Functions;
@@ -34,6 +40,17 @@ final public class QuerySelect implements Query {
     private Observable<?> depends = Observable.empty();
     private final JdbcQuery jdbcQuery;
     private final Func1<ResultSet, ? extends ResultSet> resultSetTransform;
+    private final int batchSize;
+    // nullable!
+    private final QuerySelectPartitions partitions;
+    private final ParameterBinder binder = new ParameterBinder();
+    private volatile String fingerprint;
+
+    /**
+     * Shared so that queries without a transform have equal result cache
+     * keys.
+     */
+    private static final Func1<ResultSet, ResultSet> IDENTITY_TRANSFORM = Functions.identity();
 
     /**
      * Constructor.
@@ -46,10 +63,53 @@ final public class QuerySelect implements Query {
      * @param depends
      * @param context
      * @param resultSetTransform
-     * @param resultSetTransform
      */
     QuerySelect(String sql, Observable<Parameter> parameters, Observable<?> depends,
             QueryContext context, Func1<ResultSet, ? extends ResultSet> resultSetTransform) {
+        this(sql, parameters, depends, context, resultSetTransform, 1);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param sql
+     *            jdbc select statement or the word RETURN_GENERATED_KEYS
+     * @param parameters
+     *            if sql == RETURN_GENERATED_KEYS then the first parameter will
+     *            be the ResultSet to be used as source
+     * @param depends
+     * @param context
+     * @param resultSetTransform
+     * @param batchSize
+     *            maximum number of parameter sets to run in one database
+     *            round trip
+     */
+    QuerySelect(String sql, Observable<Parameter> parameters, Observable<?> depends,
+            QueryContext context, Func1<ResultSet, ? extends ResultSet> resultSetTransform,
+            int batchSize) {
+        this(sql, parameters, depends, context, resultSetTransform, batchSize, null);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param sql
+     *            jdbc select statement or the word RETURN_GENERATED_KEYS
+     * @param parameters
+     *            if sql == RETURN_GENERATED_KEYS then the first parameter will
+     *            be the ResultSet to be used as source
+     * @param depends
+     * @param context
+     * @param resultSetTransform
+     * @param batchSize
+     *            maximum number of parameter sets to run in one database
+     *            round trip
+     * @param partitions
+     *            splits each execution into concurrent partitions, nullable
+     */
+    QuerySelect(String sql, Observable<Parameter> parameters, Observable<?> depends,
+            QueryContext context, Func1<ResultSet, ? extends ResultSet> resultSetTransform,
+            int batchSize, QuerySelectPartitions partitions) {
         checkNotNull(sql);
         checkNotNull(parameters);
         checkNotNull(depends);
@@ -60,6 +120,13 @@ final public class QuerySelect implements Query {
         this.depends = depends;
         this.context = context;
         this.resultSetTransform = resultSetTransform;
+        checkArgument(batchSize >= 1, "batchSize must be >= 1");
+        checkArgument(batchSize == 1 || QuerySelectBatch.isBatchable(jdbcQuery.sql()),
+                "a batched query must start with select and only order by column names");
+        this.batchSize = batchSize;
+        checkArgument(partitions == null || batchSize == 1,
+                "a partitioned query cannot be batched");
+        this.partitions = partitions;
     }
 
     @Override
@@ -67,6 +134,21 @@ final public class QuerySelect implements Query {
         return jdbcQuery.sql();
     }
 
+    /**
+     * Returns the fingerprint of the sql reported to the query listener
+     * (calculated on first use).
+     * 
+     * @return sql fingerprint
+     */
+    String fingerprint() {
+        String f = fingerprint;
+        if (f == null) {
+            f = QueryProbe.fingerprint(sql());
+            fingerprint = f;
+        }
+        return f;
+    }
+
     @Override
     public QueryContext context() {
         return context;
@@ -96,6 +178,15 @@ final public class QuerySelect implements Query {
         return resultSetTransform;
     }
 
+    /**
+     * Returns the binder that sets the parameters of this query.
+     * 
+     * @return parameter binder
+     */
+    ParameterBinder binder() {
+        return binder;
+    }
+
     /**
      * Returns the results of running a select query with all sets of
      * parameters.
@@ -103,24 +194,117 @@ final public class QuerySelect implements Query {
      * @return
      */
     public <T> Observable<T> execute(ResultSetMapper<? extends T> function) {
+        return execute(function, function);
+    }
+
+    /**
+     * Returns the results of running a select query with all sets of
+     * parameters.
+     * 
+     * @param function
+     *            maps each row
+     * @param mapperKey
+     *            identifies the mapping of rows in {@link ResultCache} keys
+     * @return
+     */
+    <T> Observable<T> execute(ResultSetMapper<? extends T> function, Object mapperKey) {
+        if (partitions != null)
+            return bufferedParameters(this)
+                    // execute the partitions once per set of parameters
+                    .concatMap(executePartitioned(function));
+        else if (batchSize > 1)
+            return bufferedParameters(this)
+                    // execute once per batch of parameter sets
+                    .buffer(batchSize).concatMap(executeBatch(function));
+        else
+            return bufferedParameters(this)
+                    // execute once per set of parameters
+                    .concatMap(executeOnce(function, mapperKey));
+    }
+
+    /**
+     * Returns the total number of rows of running the query with all sets of
+     * parameters. Where the sql allows, each execution runs as
+     * <code>select count(*) from (sql)</code> (see {@link QuerySelectCount})
+     * so that rows are not transferred from the database. The rows are counted
+     * as they are read instead if the ResultSet is transformed (by the query or
+     * the {@link Database}), the rows are limited or a transaction is open (where a rejected count
+     * sql could not be retried).
+     * 
+     * @return count
+     */
+    Observable<Integer> count() {
+        if (resultSetTransform != IDENTITY_TRANSFORM
+                || context.resultSetTransform() != Database.IDENTITY_TRANSFORM
+                || context.maxRows() > 0
+                || !QuerySelectCount.isCountable(sql()))
+            return execute(Util.toOne()).count();
         return bufferedParameters(this)
-                // execute once per set of parameters
-                .concatMap(executeOnce(function));
+                // count once per set of parameters
+                .concatMap(new Func1<List<Parameter>, Observable<Integer>>() {
+                    @Override
+                    public Observable<Integer> call(List<Parameter> params) {
+                        Observable<Integer> counted = executeOnce(params, Util.toOne(),
+                                Util.toOne()).count();
+                        if (context.isTransactionOpen())
+                            return counted;
+                        else
+                            return QuerySelectCount.execute(QuerySelect.this, params, counted);
+                    }
+                }).reduce(0, QuerySelectCount.SUM);
+    }
+
+    /**
+     * Returns a {@link Func1} that itself returns the results of pushing a
+     * batch of parameter sets through a select query.
+     * 
+     * @param function
+     * @return
+     */
+    private <T> Func1<List<List<Parameter>>, Observable<T>> executeBatch(
+            final ResultSetMapper<? extends T> function) {
+        return new Func1<List<List<Parameter>>, Observable<T>>() {
+            @Override
+            public Observable<T> call(List<List<Parameter>> batch) {
+                if (batch.size() == 1)
+                    return executeOnce(batch.get(0), function, null);
+                else
+                    return QuerySelectBatch.execute(QuerySelect.this, batch, function);
+            }
+        };
+    }
+
+    /**
+     * Returns a {@link Func1} that itself returns the merged results of
+     * pushing one set of parameters through each partition of a select query.
+     * 
+     * @param function
+     * @return
+     */
+    private <T> Func1<List<Parameter>, Observable<T>> executePartitioned(
+            final ResultSetMapper<? extends T> function) {
+        return new Func1<List<Parameter>, Observable<T>>() {
+            @Override
+            public Observable<T> call(List<Parameter> params) {
+                return partitions.execute(QuerySelect.this, params, function);
+            }
+        };
     }
 
     /**
      * Returns a {@link Func1} that itself returns the results of pushing one
      * set of parameters through a select query.
      * 
-     * @param query
+     * @param function
+     * @param mapperKey
      * @return
      */
     private <T> Func1<List<Parameter>, Observable<T>> executeOnce(
-            final ResultSetMapper<? extends T> function) {
+            final ResultSetMapper<? extends T> function, final Object mapperKey) {
         return new Func1<List<Parameter>, Observable<T>>() {
             @Override
             public Observable<T> call(List<Parameter> params) {
-                return executeOnce(params, function);
+                return executeOnce(params, function, mapperKey);
             }
         };
     }
@@ -131,12 +315,33 @@ final public class QuerySelect implements Query {
      * 
      * @param params
      *            one set of parameters to be run with the query
+     * @param function
+     *            maps each row
+     * @param mapperKey
+     *            identifies the mapping in result cache and coalescing keys,
+     *            null to neither cache nor coalesce
      * @return
      */
-    private <T> Observable<T> executeOnce(final List<Parameter> params,
-            ResultSetMapper<? extends T> function) {
-        return QuerySelectOnSubscribe.execute(this, params, function)
+    <T> Observable<T> executeOnce(final List<Parameter> params,
+            ResultSetMapper<? extends T> function, Object mapperKey) {
+        Observable<T> o = QuerySelectOnSubscribe.<T> execute(this, params, function)
                 .subscribeOn(context.scheduler());
+        ResultCache cache = context.resultCache();
+        boolean cached = context.cached() && cache.isEnabled();
+        if (mapperKey == null || (!cached && !context.coalesced()) || context.isTransactionOpen())
+            return o;
+        if (context.maxRows() > 0)
+            // the same query with a different limit has different rows
+            mapperKey = Arrays.asList(mapperKey, context.maxRows());
+        ResultCache.Key key = ResultCache.key(sql(),
+                QuerySelectBatch.positional(params, names()), mapperKey, resultSetTransform);
+        if (key == null)
+            return o;
+        if (context.coalesced())
+            o = context.coalescer().get(key, o);
+        if (cached)
+            o = cache.get(key, o);
+        return o;
     }
 
     /**
@@ -152,7 +357,33 @@ final public class QuerySelect implements Query {
         /**
          * The {@link ResultSet} is transformed before use.
          */
-        private Func1<ResultSet, ? extends ResultSet> resultSetTransform = Functions.identity();
+        private Func1<ResultSet, ? extends ResultSet> resultSetTransform = IDENTITY_TRANSFORM;
+
+        /**
+         * Maximum number of parameter sets run in one database round trip.
+         */
+        private int batchSize = 1;
+
+        /**
+         * Partitions to run concurrently, nullable.
+         */
+        private QuerySelectPartitions partitions;
+
+        /**
+         * Fetch size for this query, 0 to use the {@link Database} fetch size.
+         */
+        private int fetchSize;
+
+        private boolean prefetch;
+
+        private boolean cache;
+
+        private boolean coalesce;
+
+        /**
+         * Maximum rows per execution, 0 for no limit.
+         */
+        private int maxRows;
 
         /**
          * Constructor.
@@ -256,6 +487,172 @@ final public class QuerySelect implements Query {
             return this;
         }
 
+        /**
+         * Runs up to <code>batchSize</code> parameter sets in one database
+         * round trip by rewriting the query as a <code>UNION ALL</code> of one
+         * copy of the query per parameter set, sorted by parameter set then by
+         * the <code>order by</code> of the query. Rows are streamed as they
+         * are read in the same order as if the query was run once per
+         * parameter set. The sql must be a single select statement that the
+         * database accepts in parentheses as a branch of a
+         * <code>UNION ALL</code> and its <code>order by</code> (if any) must
+         * only name selected columns (not positions or expressions). Default
+         * is 1 (no batching).
+         * 
+         * @param batchSize
+         *            maximum number of parameter sets per round trip
+         * @return this
+         */
+        public Builder batchSize(int batchSize) {
+            Conditions.checkArgument(batchSize >= 1, "batchSize must be >= 1");
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * Splits the query into <code>bounds.length + 1</code> partitions on
+         * ranges of the values of <code>column</code> and runs the partitions
+         * concurrently, each with its own connection. Partition 0 has the
+         * rows with <code>column &lt; bounds[0]</code> (or null), partition
+         * <code>i</code> the rows with
+         * <code>bounds[i-1] &lt;= column &lt; bounds[i]</code> and the last
+         * partition the rows with <code>column &gt;= bounds[n-1]</code>. The
+         * query is run as a subquery so <code>column</code> must be a column
+         * of the query results. Partitions run in parallel only if the
+         * {@link Database} is asynchronous. Rows of the partitions are merged
+         * as they arrive unless {@link #partitionsInOrder()} is called.
+         * 
+         * @param column
+         *            partition column
+         * @param bounds
+         *            increasing values of the partition column
+         * @return this
+         */
+        public Builder partitionByRange(String column, Object... bounds) {
+            this.partitions = QuerySelectPartitions.byRange(column, bounds);
+            return this;
+        }
+
+        /**
+         * Splits the query into <code>partitions</code> partitions on the
+         * remainder of the integral column <code>column</code> modulo
+         * <code>partitions</code> and runs the partitions concurrently, each
+         * with its own connection. The query is run as a subquery so
+         * <code>column</code> must be a column of the query results.
+         * Partitions run in parallel only if the {@link Database} is
+         * asynchronous. Rows of the partitions are merged as they arrive
+         * unless {@link #partitionsInOrder()} is called.
+         * 
+         * @param column
+         *            partition column
+         * @param partitions
+         *            number of partitions
+         * @return this
+         */
+        public Builder partitionByModulus(String column, int partitions) {
+            this.partitions = QuerySelectPartitions.byModulus(column, partitions);
+            return this;
+        }
+
+        /**
+         * Orders each partition by the partition column and emits all rows of
+         * a partition before the rows of the next partition while still
+         * running the partitions concurrently. With
+         * {@link #partitionByRange(String, Object...)} the rows are emitted in
+         * order of the partition column.
+         * 
+         * @return this
+         */
+        public Builder partitionsInOrder() {
+            Conditions.checkArgument(partitions != null, "partitions must be set first");
+            this.partitions = partitions.inOrder();
+            return this;
+        }
+
+        /**
+         * Sets the number of rows the driver is asked to fetch from the
+         * database at a time for this query (see
+         * {@link java.sql.Statement#setFetchSize(int)}). Overrides the fetch
+         * size of the {@link Database}.
+         * 
+         * @param fetchSize
+         *            rows per fetch
+         * @return this
+         */
+        public Builder fetchSize(int fetchSize) {
+            Conditions.checkArgument(fetchSize > 0, "fetchSize must be > 0");
+            this.fetchSize = fetchSize;
+            return this;
+        }
+
+        /**
+         * Limits each execution of the query to its first <code>maxRows</code>
+         * rows using {@link java.sql.Statement#setMaxRows(int)} so that the
+         * database stops producing rows at the limit instead of the query
+         * running until the subscriber unsubscribes (for example after
+         * <code>first()</code> or <code>take(maxRows)</code>). The fetch size
+         * is reduced to the limit if it is larger, or set to the limit if no
+         * fetch size is set and the limit is at most 1000, so that the rows
+         * are fetched in one round trip. Cannot be combined with a batch size
+         * above 1 or partitions.
+         * 
+         * @param maxRows
+         *            maximum rows per execution
+         * @return this
+         */
+        public Builder limit(int maxRows) {
+            Conditions.checkArgument(maxRows > 0, "maxRows must be > 0");
+            this.maxRows = maxRows;
+            return this;
+        }
+
+        /**
+         * Reads rows ahead of demand on an io thread while the subscriber
+         * consumes earlier rows. Up to the size of the latest request is read
+         * ahead of the outstanding requests. Ignored in a transaction.
+         * 
+         * @return this
+         */
+        public Builder prefetch() {
+            this.prefetch = true;
+            return this;
+        }
+
+        /**
+         * Answers executions of this query from the {@link ResultCache} of
+         * the {@link Database} when the same sql, parameter values and row
+         * mapping were run recently, and stores the rows of other executions
+         * in the cache. Rows are compared using the mapper passed to
+         * {@link #get(ResultSetMapper)} so reuse the mapper instance (the
+         * mappings of {@link #autoMap(Class)} and the <code>getAs</code>
+         * methods are compared by class). Ignored if the database has no
+         * result cache, in a transaction and with a batch size above 1 or
+         * partitions.
+         * 
+         * @return this
+         */
+        public Builder cache() {
+            this.cache = true;
+            return this;
+        }
+
+        /**
+         * Shares one database round trip between all executions of this
+         * query with the same sql, parameter values and row mapping that are
+         * in flight at the same time. A later subscriber receives the rows
+         * already emitted followed by the remaining rows (rows are held in
+         * memory while the query runs). The query is cancelled when all of
+         * its subscribers have unsubscribed and nothing is kept once it
+         * completes. Rows are compared as for {@link #cache()}. Ignored in a
+         * transaction and with a batch size above 1 or partitions.
+         * 
+         * @return this
+         */
+        public Builder coalesce() {
+            this.coalesce = true;
+            return this;
+        }
+
         /**
          * Transforms the results using the given function.
          * 
@@ -263,7 +660,96 @@ final public class QuerySelect implements Query {
          * @return the results of the query as an Observable
          */
         public <T> Observable<T> get(ResultSetMapper<? extends T> function) {
-            return get(function, builder, resultSetTransform);
+            return get(function, function);
+        }
+
+        private <T> Observable<T> get(ResultSetMapper<? extends T> function, Object mapperKey) {
+            return query().execute(function, mapperKey);
+        }
+
+        private QuerySelect query() {
+            QueryContext context = builder.context();
+            if (fetchSize > 0)
+                context = context.fetchSize(fetchSize);
+            if (prefetch)
+                context = context.prefetching();
+            if (cache)
+                context = context.caching();
+            if (coalesce)
+                context = context.coalescing();
+            if (maxRows > 0) {
+                checkArgument(batchSize == 1 && partitions == null,
+                        "a limited query cannot be batched or partitioned");
+                context = context.limited(maxRows);
+            }
+            return new QuerySelect(builder.sql(), builder.parameters(), builder.depends(),
+                    context, resultSetTransform, batchSize, partitions);
+        }
+
+        /**
+         * Streams the {@link java.sql.Blob} in the first column of each row
+         * in chunks of up to <code>chunkSize</code> bytes with backpressure.
+         * A chunk is read from the database only when requested so memory
+         * used does not depend on the size of the blob. The chunks of a row
+         * are emitted before the next row is read (a null blob emits no
+         * chunks) and each blob is freed when its chunks are emitted or the
+         * subscription is cancelled. The row stays the current row of the
+         * {@link ResultSet} while it is streamed so this cannot be combined
+         * with {@link #prefetch()}, {@link #cache()}, {@link #coalesce()} or
+         * a batch size above 1.
+         * 
+         * @param chunkSize
+         *            maximum number of bytes in a chunk
+         * @return chunks of the blobs
+         */
+        public Observable<ByteBuffer> streamBlobs(final int chunkSize) {
+            checkArgument(chunkSize > 0, "chunkSize must be > 0");
+            checkStreamable();
+            return get(new ResultSetMapper<Observable<ByteBuffer>>() {
+                @Override
+                public Observable<ByteBuffer> call(ResultSet rs) throws SQLException {
+                    return LobStreams.bytes(rs.getBlob(1), chunkSize);
+                }
+            })
+                    // read the next row only when this row has been streamed
+                    .flatMap(Functions.<Observable<ByteBuffer>> identity(), 1);
+        }
+
+        /**
+         * Streams the {@link java.sql.Clob} in the first column of each row
+         * in chunks of up to <code>chunkSize</code> characters with
+         * backpressure. See {@link #streamBlobs(int)}.
+         * 
+         * @param chunkSize
+         *            maximum number of characters in a chunk
+         * @return chunks of the clobs
+         */
+        public Observable<CharBuffer> streamClobs(final int chunkSize) {
+            checkArgument(chunkSize > 0, "chunkSize must be > 0");
+            checkStreamable();
+            return get(new ResultSetMapper<Observable<CharBuffer>>() {
+                @Override
+                public Observable<CharBuffer> call(ResultSet rs) throws SQLException {
+                    return LobStreams.chars(rs.getClob(1), chunkSize);
+                }
+            })
+                    // read the next row only when this row has been streamed
+                    .flatMap(Functions.<Observable<CharBuffer>> identity(), 1);
+        }
+
+        private void checkStreamable() {
+            checkArgument(!prefetch && !cache && !coalesce && batchSize == 1,
+                    "streamed LOBs cannot be prefetched, cached, coalesced or batched");
+        }
+
+        /**
+         * Returns a key that identifies a mapping in {@link ResultCache} keys.
+         */
+        private static Object mapperKey(String mapping, Class<?>... classes) {
+            List<Object> key = new ArrayList<Object>(classes.length + 1);
+            key.add(mapping);
+            key.addAll(Arrays.asList(classes));
+            return key;
         }
 
         static <T> Observable<T> get(ResultSetMapper<? extends T> function, QueryBuilder builder,
@@ -303,7 +789,8 @@ final public class QuerySelect implements Query {
          * @return
          */
         public <T> Observable<T> autoMap(Class<T> cls) {
-            return autoMap(cls, builder, resultSetTransform);
+            Util.setSqlFromQueryAnnotation(cls, builder);
+            return get(Util.autoMap(cls), mapperKey("autoMap", cls));
         }
 
         static <T> Observable<T> autoMap(Class<T> cls, QueryBuilder builder,
@@ -320,7 +807,7 @@ final public class QuerySelect implements Query {
          * @return
          */
         public <S> Observable<S> getAs(Class<S> cls) {
-            return get(Tuples.single(cls));
+            return get(Tuples.single(cls), mapperKey("single", cls));
         }
 
         /**
@@ -331,7 +818,7 @@ final public class QuerySelect implements Query {
          * @return
          */
         public <S> Observable<TupleN<S>> getTupleN(Class<S> cls) {
-            return get(Tuples.tupleN(cls));
+            return get(Tuples.tupleN(cls), mapperKey("tupleN", cls));
         }
 
         /**
@@ -342,7 +829,7 @@ final public class QuerySelect implements Query {
          * @return
          */
         public <S> Observable<TupleN<Object>> getTupleN() {
-            return get(Tuples.tupleN(Object.class));
+            return get(Tuples.tupleN(Object.class), mapperKey("tupleN", Object.class));
         }
 
         /**
@@ -354,7 +841,8 @@ final public class QuerySelect implements Query {
          * @return
          */
         public <T1, T2> Observable<Tuple2<T1, T2>> getAs(Class<T1> cls1, Class<T2> cls2) {
-            return get(Tuples.tuple(cls1, cls2));
+            return get(Tuples.tuple(cls1, cls2),
+                    mapperKey("tuple", cls1, cls2));
         }
 
         /**
@@ -368,7 +856,8 @@ final public class QuerySelect implements Query {
          */
         public <T1, T2, T3> Observable<Tuple3<T1, T2, T3>> getAs(Class<T1> cls1, Class<T2> cls2,
                 Class<T3> cls3) {
-            return get(Tuples.tuple(cls1, cls2, cls3));
+            return get(Tuples.tuple(cls1, cls2, cls3),
+                    mapperKey("tuple", cls1, cls2, cls3));
         }
 
         /**
@@ -383,7 +872,8 @@ final public class QuerySelect implements Query {
          */
         public <T1, T2, T3, T4> Observable<Tuple4<T1, T2, T3, T4>> getAs(Class<T1> cls1,
                 Class<T2> cls2, Class<T3> cls3, Class<T4> cls4) {
-            return get(Tuples.tuple(cls1, cls2, cls3, cls4));
+            return get(Tuples.tuple(cls1, cls2, cls3, cls4),
+                    mapperKey("tuple", cls1, cls2, cls3, cls4));
         }
 
         /**
@@ -399,7 +889,8 @@ final public class QuerySelect implements Query {
          */
         public <T1, T2, T3, T4, T5> Observable<Tuple5<T1, T2, T3, T4, T5>> getAs(Class<T1> cls1,
                 Class<T2> cls2, Class<T3> cls3, Class<T4> cls4, Class<T5> cls5) {
-            return get(Tuples.tuple(cls1, cls2, cls3, cls4, cls5));
+            return get(Tuples.tuple(cls1, cls2, cls3, cls4, cls5),
+                    mapperKey("tuple", cls1, cls2, cls3, cls4, cls5));
         }
 
         /**
@@ -417,7 +908,8 @@ final public class QuerySelect implements Query {
         public <T1, T2, T3, T4, T5, T6> Observable<Tuple6<T1, T2, T3, T4, T5, T6>> getAs(
                 Class<T1> cls1, Class<T2> cls2, Class<T3> cls3, Class<T4> cls4, Class<T5> cls5,
                 Class<T6> cls6) {
-            return get(Tuples.tuple(cls1, cls2, cls3, cls4, cls5, cls6));
+            return get(Tuples.tuple(cls1, cls2, cls3, cls4, cls5, cls6),
+                    mapperKey("tuple", cls1, cls2, cls3, cls4, cls5, cls6));
         }
 
         /**
@@ -436,11 +928,20 @@ final public class QuerySelect implements Query {
         public <T1, T2, T3, T4, T5, T6, T7> Observable<Tuple7<T1, T2, T3, T4, T5, T6, T7>> getAs(
                 Class<T1> cls1, Class<T2> cls2, Class<T3> cls3, Class<T4> cls4, Class<T5> cls5,
                 Class<T6> cls6, Class<T7> cls7) {
-            return get(Tuples.tuple(cls1, cls2, cls3, cls4, cls5, cls6, cls7));
+            return get(Tuples.tuple(cls1, cls2, cls3, cls4, cls5, cls6, cls7),
+                    mapperKey("tuple", cls1, cls2, cls3, cls4, cls5, cls6, cls7));
         }
 
+        /**
+         * Returns the number of rows of the query (summed over all sets of
+         * parameters). Where possible the rows are counted by the database
+         * using <code>select count(*) from (&lt;sql&gt;)</code> rather than
+         * being transferred to the client and counted there.
+         * 
+         * @return count
+         */
         public Observable<Integer> count() {
-            return get(Util.toOne()).count();
+            return query().count();
         }
 
         /**
@@ -0,0 +1,299 @@
+package com.github.davidmoten.rx.jdbc;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.github.davidmoten.rx.jdbc.exceptions.SQLRuntimeException;
+
+import rx.Observable;
+import rx.functions.Func1;
+
+/**
+ * Runs several parameter sets of a select query in one database round trip.
+ * The sql is rewritten as a <code>UNION ALL</code> of one branch per parameter
+ * set, each branch selecting its index in the batch as an extra first column,
+ * and the database orders the rows by that index then by the keys of the
+ * <code>order by</code> of the query (if any). Rows are mapped and emitted as
+ * they are read (honouring backpressure) so that the results are the same as
+ * running the query once per parameter set.
+ * 
+ * <p>
+ * Because the union is sorted again, a query can only be batched if its
+ * <code>order by</code> names selected columns (not positions or
+ * expressions). Lazily read LOB columns (a {@link java.sql.Blob} or
+ * {@link java.sql.Clob} read after the row is mapped) are not supported with
+ * batching.
+ */
+final class QuerySelectBatch {
+
+    static final String BATCH_INDEX_COLUMN = "rxjdbc_batch_index";
+
+    private static final Pattern SELECT = Pattern.compile("^\\s*select\\s+((distinct|all)\\s+)?",
+            Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern ORDER_BY = Pattern.compile("\\border\\s+by\\s+",
+            Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern ORDER_BY_END = Pattern.compile("\\s+(limit|offset|fetch)\\b",
+            Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern ORDER_KEY = Pattern.compile(
+            "^([a-z_][\\w$]*|\"[^\"]+\")(\\s+(asc|desc))?(\\s+nulls\\s+(first|last))?$",
+            Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private QuerySelectBatch() {
+        // prevent instantiation
+    }
+
+    /**
+     * Returns true if and only if the sql can be rewritten for batching.
+     *
+     * @param sql
+     * @return
+     */
+    static boolean isBatchable(String sql) {
+        return SELECT.matcher(sql).find() && orderKeys(trim(sql)) != null;
+    }
+
+    /**
+     * Returns the sql without surrounding whitespace and a trailing semicolon.
+     * 
+     * @param sql
+     * @return
+     */
+    private static String trim(String sql) {
+        String s = sql.trim();
+        if (s.endsWith(";"))
+            return s.substring(0, s.length() - 1);
+        else
+            return s;
+    }
+
+    /**
+     * Returns the keys of the outermost <code>order by</code> of the select
+     * statement (with their direction), an empty list if it has none or null
+     * if a key is not a column name. The union of the batch can only be
+     * sorted by the columns it selects.
+     *
+     * @param sql
+     *            select statement
+     * @return order keys or null
+     */
+    static List<String> orderKeys(String sql) {
+        int start = -1;
+        Matcher m = ORDER_BY.matcher(sql);
+        while (m.find()) {
+            if (depth(sql, m.start()) == 0)
+                start = m.end();
+        }
+        List<String> keys = new ArrayList<String>();
+        if (start == -1)
+            return keys;
+        String clause = sql.substring(start);
+        Matcher end = ORDER_BY_END.matcher(clause);
+        if (end.find())
+            clause = clause.substring(0, end.start());
+        for (String key : clause.split(",")) {
+            String k = key.trim();
+            if (!ORDER_KEY.matcher(k).matches())
+                return null;
+            keys.add(k);
+        }
+        return keys;
+    }
+
+    /**
+     * Returns the depth of parentheses at a position in the sql.
+     */
+    private static int depth(String sql, int position) {
+        int depth = 0;
+        for (int i = 0; i < position; i++) {
+            char ch = sql.charAt(i);
+            if (ch == '(')
+                depth++;
+            else if (ch == ')')
+                depth--;
+        }
+        return depth;
+    }
+
+    /**
+     * Returns the <code>UNION ALL</code> of <code>n</code> copies of the select
+     * statement with the batch index selected as the first column of each,
+     * ordered by the batch index then by the order keys of the statement.
+     *
+     * @param sql
+     *            jdbc select statement
+     * @param n
+     *            number of parameter sets in the batch
+     * @return rewritten sql
+     */
+    static String batchSql(String sql, int n) {
+        String s = trim(sql);
+        Matcher m = SELECT.matcher(s);
+        if (!m.find())
+            throw new IllegalArgumentException("batched sql must start with select: " + sql);
+        List<String> keys = orderKeys(s);
+        if (keys == null)
+            throw new IllegalArgumentException(
+                    "batched sql must only order by selected column names: " + sql);
+        String select = s.substring(0, m.end());
+        String rest = s.substring(m.end());
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < n; i++) {
+            if (i > 0)
+                b.append(" union all ");
+            b.append('(');
+            b.append(select);
+            b.append(i);
+            b.append(" as ");
+            b.append(BATCH_INDEX_COLUMN);
+            b.append(", ");
+            b.append(rest);
+            b.append(')');
+        }
+        b.append(" order by ");
+        b.append(BATCH_INDEX_COLUMN);
+        for (String key : keys) {
+            b.append(", ");
+            b.append(key);
+        }
+        return b.toString();
+    }
+
+    /**
+     * Returns the results of running the query once with all the parameter
+     * sets in <code>batch</code>.
+     *
+     * @param query
+     *            the select query
+     * @param batch
+     *            parameter sets
+     * @param function
+     *            maps each row
+     * @return results in parameter set order
+     */
+    static <T> Observable<T> execute(QuerySelect query, List<List<Parameter>> batch,
+            ResultSetMapper<? extends T> function) {
+        List<Parameter> parameters = new ArrayList<Parameter>();
+        for (List<Parameter> p : batch) {
+            parameters.addAll(positional(p, query.names()));
+        }
+        BatchTransform transform = new BatchTransform(query.context().resultSetTransform(),
+                query.resultSetTransform());
+        QuerySelect q = new QuerySelect(batchSql(query.sql(), batch.size()),
+                Observable.<Parameter> empty(), Observable.empty(), query.context(), transform);
+        return QuerySelectOnSubscribe
+                .execute(q, parameters, new BatchMapper<T>(function, transform))
+                .subscribeOn(query.context().scheduler());
+    }
+
+    /**
+     * Returns the parameters in the order they appear in the sql with names
+     * removed.
+     *
+     * @param parameters
+     * @param names
+     * @return
+     */
+    static List<Parameter> positional(List<Parameter> parameters, List<String> names) {
+        List<Parameter> ordered;
+        if (names.isEmpty())
+            ordered = parameters;
+        else {
+            try {
+                ordered = Util.namedParametersInOrder(parameters, names);
+            } catch (SQLException e) {
+                throw new SQLRuntimeException(e);
+            }
+        }
+        List<Parameter> list = new ArrayList<Parameter>(ordered.size());
+        for (Parameter p : ordered) {
+            if (p.hasName())
+                list.add(new Parameter(p.value()));
+            else
+                list.add(p);
+        }
+        return list;
+    }
+
+    /**
+     * Hides the batch index column from the database and query
+     * {@link ResultSet} transforms and from the mapping function. Applied by
+     * {@link QuerySelectOnSubscribe} instead of the database transform.
+     */
+    static final class BatchTransform implements Func1<ResultSet, ResultSet> {
+
+        private final Func1<ResultSet, ? extends ResultSet> databaseTransform;
+        private final Func1<ResultSet, ? extends ResultSet> transform;
+
+        /**
+         * The ResultSet of the current execution.
+         */
+        private volatile ResultSetBatch rs;
+
+        /**
+         * Batch index of the last row read in the current execution.
+         */
+        private volatile int index;
+
+        BatchTransform(Func1<ResultSet, ? extends ResultSet> databaseTransform,
+                Func1<ResultSet, ? extends ResultSet> transform) {
+            this.databaseTransform = databaseTransform;
+            this.transform = transform;
+        }
+
+        @Override
+        public ResultSet call(ResultSet rs) {
+            ResultSetBatch r = new ResultSetBatch(rs);
+            this.rs = r;
+            this.index = 0;
+            return transform.call(databaseTransform.call(r));
+        }
+
+        /**
+         * Checks that the current row is not from an earlier parameter set
+         * than the row before it.
+         * 
+         * @throws SQLException
+         */
+        void checkOrder() throws SQLException {
+            int i = rs.batchIndex();
+            if (i < index)
+                throw new SQLException("batched select rows not ordered by " + BATCH_INDEX_COLUMN);
+            index = i;
+        }
+    }
+
+    /**
+     * Maps a row with the user supplied function and checks that the rows
+     * arrive in batch index order.
+     */
+    private static final class BatchMapper<T> extends PlannedResultSetMapper<T> {
+
+        private final ResultSetMapper<? extends T> function;
+        private final BatchTransform transform;
+
+        BatchMapper(ResultSetMapper<? extends T> function, BatchTransform transform) {
+            this.function = function;
+            this.transform = transform;
+        }
+
+        @Override
+        public T call(ResultSet rs, ColumnReadPlan plan) throws SQLException {
+            transform.checkOrder();
+            if (function instanceof PlannedResultSetMapper)
+                return ((PlannedResultSetMapper<? extends T>) function).call(rs, plan);
+            else
+                return function.call(rs);
+        }
+    }
+
+}
@@ -0,0 +1,82 @@
+package com.github.davidmoten.rx.jdbc;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import rx.Observable;
+import rx.functions.Action0;
+import rx.functions.Func0;
+
+/**
+ * Shares one execution of a select query between all subscribers that run the
+ * same sql with the same parameter values and row mapping while it is in
+ * flight. A subscriber that arrives while the query runs receives all rows
+ * emitted so far followed by the remaining rows. The query is cancelled when
+ * every subscriber has unsubscribed and is forgotten when it terminates, so
+ * no rows are kept once it completes.
+ */
+final class QuerySelectCoalescer {
+
+    private static final Logger log = LoggerFactory.getLogger(QuerySelectCoalescer.class);
+
+    private final ConcurrentMap<ResultCache.Key, Observable<?>> inFlight = new ConcurrentHashMap<ResultCache.Key, Observable<?>>();
+
+    /**
+     * Returns the rows of the in-flight execution for the key if any else the
+     * rows of <code>source</code> shared with later subscribers till it
+     * terminates.
+     *
+     * @param key
+     *            the query execution
+     * @param source
+     *            runs the query
+     * @return rows
+     */
+    <T> Observable<T> get(final ResultCache.Key key, final Observable<T> source) {
+        return Observable.defer(new Func0<Observable<T>>() {
+            @SuppressWarnings("unchecked")
+            @Override
+            public Observable<T> call() {
+                Observable<T> existing = (Observable<T>) inFlight.get(key);
+                if (existing != null) {
+                    log.debug("joining in-flight query {}", key.sql);
+                    return existing;
+                }
+                final AtomicReference<Observable<T>> shared = new AtomicReference<Observable<T>>();
+                Action0 remove = new Action0() {
+                    @Override
+                    public void call() {
+                        inFlight.remove(key, shared.get());
+                    }
+                };
+                shared.set(source
+                        // forget the execution before the last rows are
+                        // emitted so later subscribers run the query again
+                        .doOnTerminate(remove)
+                        // all subscribers have unsubscribed
+                        .doOnUnsubscribe(remove)
+                        // replay rows to subscribers that join late
+                        .replay().refCount());
+                existing = (Observable<T>) inFlight.putIfAbsent(key, shared.get());
+                if (existing != null)
+                    return existing;
+                else
+                    return shared.get();
+            }
+        });
+    }
+
+    /**
+     * Returns the number of executions in flight.
+     *
+     * @return number of shared executions
+     */
+    int size() {
+        return inFlight.size();
+    }
+
+}
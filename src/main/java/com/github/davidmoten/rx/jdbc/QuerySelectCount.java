@@ -0,0 +1,122 @@
+package com.github.davidmoten.rx.jdbc;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.davidmoten.rx.jdbc.exceptions.SQLRuntimeException;
+
+import rx.Observable;
+import rx.functions.Func1;
+import rx.functions.Func2;
+
+/**
+ * Counts the rows of a select query in the database by running it as
+ * <code>select count(*) from (&lt;sql&gt;)</code> so that only the count is
+ * transferred to the client. If the database rejects the rewritten sql (for
+ * example because the select list has duplicate or unnamed columns that a
+ * derived table does not allow) the rows are counted as they are read instead.
+ */
+final class QuerySelectCount {
+
+    private static final Logger log = LoggerFactory.getLogger(QuerySelectCount.class);
+
+    static final String ALIAS = "rxjdbc_count";
+
+    /**
+     * Clauses that change the meaning of the sql or are not accepted by some
+     * databases in a derived table.
+     */
+    private static final Pattern NOT_COUNTABLE = Pattern
+            .compile("\\b(order\\s+by|for\\s+update|into)\\b|;", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Identifies the count mapping in {@link ResultCache} keys.
+     */
+    private static final Object MAPPER_KEY = "count";
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private QuerySelectCount() {
+        // prevent instantiation
+    }
+
+    /**
+     * Returns true if and only if the count of the rows of the sql can be
+     * obtained by running it as a derived table.
+     *
+     * @param sql
+     * @return
+     */
+    static boolean isCountable(String sql) {
+        return QuerySelectBatch.isBatchable(sql) && !NOT_COUNTABLE.matcher(trim(sql)).find();
+    }
+
+    /**
+     * Returns the sql that counts the rows of the jdbc select statement.
+     *
+     * @param sql
+     *            jdbc select statement
+     * @return count sql
+     */
+    static String countSql(String sql) {
+        return "select count(*) from (" + trim(sql) + ") " + ALIAS;
+    }
+
+    private static String trim(String sql) {
+        String s = sql.trim();
+        if (s.endsWith(";"))
+            s = s.substring(0, s.length() - 1);
+        return s;
+    }
+
+    /**
+     * Returns the number of rows of running the query with one set of
+     * parameters. The query must be countable.
+     *
+     * @param query
+     *            the select query
+     * @param params
+     *            one set of parameters
+     * @param fallback
+     *            counts the rows on the client if the database rejects the
+     *            count sql
+     * @return count
+     */
+    static Observable<Integer> execute(QuerySelect query, List<Parameter> params,
+            final Observable<Integer> fallback) {
+        QuerySelect q = new QuerySelect(countSql(query.sql()), Observable.<Parameter> empty(),
+                Observable.empty(), query.context(), query.resultSetTransform());
+        return q.executeOnce(QuerySelectBatch.positional(params, query.names()), TO_COUNT,
+                MAPPER_KEY).onErrorResumeNext(new Func1<Throwable, Observable<Integer>>() {
+                    @Override
+                    public Observable<Integer> call(Throwable e) {
+                        if (e instanceof SQLException || e instanceof SQLRuntimeException) {
+                            log.debug("count sql rejected, counting rows on the client", e);
+                            return fallback;
+                        } else
+                            return Observable.error(e);
+                    }
+                });
+    }
+
+    private static final ResultSetMapper<Integer> TO_COUNT = new ResultSetMapper<Integer>() {
+        @Override
+        public Integer call(ResultSet rs) throws SQLException {
+            return (int) rs.getLong(1);
+        }
+    };
+
+    static final Func2<Integer, Integer, Integer> SUM = new Func2<Integer, Integer, Integer>() {
+        @Override
+        public Integer call(Integer a, Integer b) {
+            return a + b;
+        }
+    };
+
+}
@@ -9,9 +9,11 @@ import org.slf4j.LoggerFactory;
 
 import rx.Observable;
 import rx.Observable.OnSubscribe;
+import rx.Producer;
 import rx.Subscriber;
 import rx.exceptions.Exceptions;
 import rx.functions.Action0;
+import rx.schedulers.Schedulers;
 import rx.subscriptions.Subscriptions;
 
 /**
@@ -21,6 +23,12 @@ final class QuerySelectOnSubscribe<T> implements OnSubscribe<T> {
 
     private static final Logger log = LoggerFactory.getLogger(QuerySelectOnSubscribe.class);
 
+    /**
+     * Largest row limit that is also used as the fetch size when no fetch
+     * size is set.
+     */
+    static final int MAX_LIMIT_FETCH_SIZE = 1000;
+
     /**
      * Returns an Observable of the results of pushing one set of parameters
      * through a select query.
@@ -60,14 +68,15 @@ final class QuerySelectOnSubscribe<T> implements OnSubscribe<T> {
             if (stateProvided) {
                 state = (State) parameters.get(0).value();
                 setupUnsubscription(subscriber, state);
+                state.plan = createPlan(state);
             } else {
                 state = new State();
+                state.probe = QueryProbe.create(query);
                 connectAndPrepareStatement(subscriber, state);
                 setupUnsubscription(subscriber, state);
                 executeQuery(subscriber, state);
             }
-            subscriber.setProducer(new QuerySelectProducer<T>(function, subscriber, state.con,
-                    state.ps, state.rs));
+            subscriber.setProducer(createProducer(subscriber, state));
         } catch (Throwable e) {
             query.context().endTransactionObserve();
             query.context().endTransactionSubscribe();
@@ -80,6 +89,25 @@ final class QuerySelectOnSubscribe<T> implements OnSubscribe<T> {
         }
     }
 
+    /**
+     * Returns the producer that emits the rows. Rows are read ahead on an io
+     * thread if the query context asks for prefetching and the query is not
+     * part of a transaction (so the transaction connection is only used by the
+     * transaction thread).
+     * 
+     * @param subscriber
+     * @param state
+     * @return
+     */
+    private Producer createProducer(Subscriber<? super T> subscriber, State state) {
+        if (!stateProvided && query.context().prefetch() && !query.context().isTransactionOpen())
+            return new QuerySelectPrefetchProducer<T>(function, subscriber, state.con, state.ps,
+                    state.rs, state.plan, state.probe, Schedulers.io().createWorker());
+        else
+            return new QuerySelectProducer<T>(function, subscriber, state.con, state.ps,
+                    state.rs, state.plan, state.probe);
+    }
+
     private static <T> void setupUnsubscription(Subscriber<T> subscriber, final State state) {
         subscriber.add(Subscriptions.create(new Action0() {
             @Override
@@ -103,12 +131,26 @@ final class QuerySelectOnSubscribe<T> implements OnSubscribe<T> {
         log.debug("connectionProvider={}", query.context().connectionProvider());
         if (!subscriber.isUnsubscribed()) {
             log.debug("getting connection");
+            state.probe.start();
             state.con = query.context().connectionProvider().get();
+            state.probe.event(QueryEvent.CONNECTION_ACQUIRE);
             log.debug("preparing statement,sql={}", query.sql());
-            state.ps = state.con.prepareStatement(query.sql(), ResultSet.TYPE_FORWARD_ONLY,
-                    ResultSet.CONCUR_READ_ONLY);
+            state.ps = query.context().statementCache().prepareStatement(state.con,
+                    query.sql(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            int fetchSize = query.context().fetchSize();
+            int maxRows = query.context().maxRows();
+            if (maxRows > 0) {
+                state.ps.setMaxRows(maxRows);
+                // fetch the limited rows in one round trip unless that would
+                // make the driver allocate large fetch buffers
+                if (fetchSize > 0 ? maxRows < fetchSize : maxRows <= MAX_LIMIT_FETCH_SIZE)
+                    fetchSize = maxRows;
+            }
+            if (fetchSize > 0)
+                state.ps.setFetchSize(fetchSize);
             log.debug("setting parameters");
-            Util.setParameters(state.ps, parameters, query.names());
+            query.binder().bind(state.ps, parameters, query.names());
+            state.probe.event(QueryEvent.PREPARE);
         }
     }
 
@@ -124,15 +166,47 @@ final class QuerySelectOnSubscribe<T> implements OnSubscribe<T> {
         if (!subscriber.isUnsubscribed()) {
             try {
                 log.debug("executing sql={}, parameters {}", query.sql(), parameters);
-                state.rs = query.resultSetTransform()
-                        .call(query.context().resultSetTransform().call(state.ps.executeQuery()));
+                state.rs = transform(state.ps.executeQuery());
+                state.probe.event(QueryEvent.EXECUTE);
                 log.debug("executed ps={}", state.ps);
             } catch (SQLException e) {
                 throw new SQLException("failed to run sql=" + query.sql(), e);
             }
+            state.plan = createPlan(state);
         }
     }
 
+    /**
+     * Applies the database and query transforms to the ResultSet. A batched
+     * select applies the database transform itself once the batch index
+     * column is hidden.
+     * 
+     * @param rs
+     * @return
+     */
+    private ResultSet transform(ResultSet rs) {
+        if (query.resultSetTransform() instanceof QuerySelectBatch.BatchTransform)
+            return query.resultSetTransform().call(rs);
+        else
+            return query.resultSetTransform()
+                    .call(query.context().resultSetTransform().call(rs));
+    }
+
+    /**
+     * Returns the column read plan for the result set if the mapping function
+     * uses one, otherwise returns null.
+     * 
+     * @param state
+     * @return
+     * @throws SQLException
+     */
+    private ColumnReadPlan createPlan(State state) throws SQLException {
+        if (state.rs != null && function instanceof PlannedResultSetMapper)
+            return ColumnReadPlan.create(state.rs);
+        else
+            return null;
+    }
+
     /**
      * Tells observer about exception.
      * 
@@ -155,12 +229,14 @@ final class QuerySelectOnSubscribe<T> implements OnSubscribe<T> {
         if (state.closed.compareAndSet(false, true)) {
             // set the state fields to null after closing for garbage
             // collection purposes
+            long t = state.probe.closing();
             log.debug("closing rs");
             Util.closeQuietly(state.rs);
             log.debug("closing ps");
             Util.closeQuietly(state.ps);
             log.debug("closing con");
             Util.closeQuietlyIfAutoCommit(state.con);
+            state.probe.closed(t);
             log.debug("closed");
         }
     }
@@ -0,0 +1,184 @@
+package com.github.davidmoten.rx.jdbc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import rx.Observable;
+
+/**
+ * Splits a select query into partitions on the values of one column and runs
+ * the partitions concurrently, each with its own connection. The query is
+ * wrapped as a subquery and each partition selects the rows whose partition
+ * column value falls in a range or has a given remainder modulo the number of
+ * partitions. Rows with a null partition column value belong to the first
+ * partition.
+ *
+ * <p>
+ * Results are merged as they arrive or, if in order, emitted partition by
+ * partition with every partition ordered by the partition column so that
+ * range partitions give rows in order of the partition column.
+ */
+final class QuerySelectPartitions {
+
+    static final String ALIAS = "rxjdbc_partition";
+
+    private final String column;
+    // nullable!
+    private final Object[] bounds;
+    private final int modulus;
+    private final boolean inOrder;
+
+    private QuerySelectPartitions(String column, Object[] bounds, int modulus,
+            boolean inOrder) {
+        Conditions.checkNotNull(column);
+        this.column = column;
+        this.bounds = bounds;
+        this.modulus = modulus;
+        this.inOrder = inOrder;
+    }
+
+    /**
+     * Returns partitions split at the given increasing bounds. There is one
+     * more partition than there are bounds.
+     *
+     * @param column
+     *            partition column
+     * @param bounds
+     *            increasing values of the partition column
+     * @return partitions
+     */
+    static QuerySelectPartitions byRange(String column, Object... bounds) {
+        Conditions.checkNotNull(bounds);
+        Conditions.checkArgument(bounds.length > 0, "at least one bound must be given");
+        return new QuerySelectPartitions(column, Arrays.copyOf(bounds, bounds.length), 0, false);
+    }
+
+    /**
+     * Returns <code>partitions</code> partitions on the remainder of the
+     * (integral) partition column modulo the number of partitions.
+     *
+     * @param column
+     *            partition column
+     * @param partitions
+     *            number of partitions
+     * @return partitions
+     */
+    static QuerySelectPartitions byModulus(String column, int partitions) {
+        Conditions.checkArgument(partitions > 0, "partitions must be positive");
+        return new QuerySelectPartitions(column, null, partitions, false);
+    }
+
+    /**
+     * Returns a copy of these partitions that emits rows partition by
+     * partition ordered by the partition column.
+     *
+     * @return partitions in order
+     */
+    QuerySelectPartitions inOrder() {
+        return new QuerySelectPartitions(column, bounds, modulus, true);
+    }
+
+    int count() {
+        if (bounds != null)
+            return bounds.length + 1;
+        else
+            return modulus;
+    }
+
+    /**
+     * Returns the sql for the given partition of the jdbc select statement
+     * <code>sql</code>. Parameters for the partition bounds follow the
+     * parameters of <code>sql</code>.
+     *
+     * @param sql
+     *            jdbc select statement
+     * @param partition
+     *            0-based partition index
+     * @return partition sql
+     */
+    String sql(String sql, int partition) {
+        String s = sql.trim();
+        if (s.endsWith(";"))
+            s = s.substring(0, s.length() - 1);
+        StringBuilder b = new StringBuilder();
+        b.append("select * from (");
+        b.append(s);
+        b.append(") ");
+        b.append(ALIAS);
+        b.append(" where ");
+        if (bounds != null) {
+            if (partition == 0) {
+                b.append("(" + column + " is null or " + column + " < ?)");
+            } else if (partition < bounds.length) {
+                b.append(column + " >= ? and " + column + " < ?");
+            } else {
+                b.append(column + " >= ?");
+            }
+        } else {
+            b.append("abs(mod(" + column + ", " + modulus + ")) = " + partition);
+            if (partition == 0)
+                b.append(" or " + column + " is null");
+        }
+        if (inOrder) {
+            b.append(" order by ");
+            b.append(column);
+        }
+        return b.toString();
+    }
+
+    /**
+     * Returns the bound parameters of the given partition.
+     *
+     * @param partition
+     *            0-based partition index
+     * @return parameters
+     */
+    List<Parameter> parameters(int partition) {
+        List<Parameter> list = new ArrayList<Parameter>(2);
+        if (bounds != null) {
+            if (partition > 0)
+                list.add(new Parameter(bounds[partition - 1]));
+            if (partition < bounds.length)
+                list.add(new Parameter(bounds[partition]));
+        }
+        return list;
+    }
+
+    /**
+     * Returns the rows of all partitions of the query run with one set of
+     * parameters.
+     *
+     * @param query
+     *            the select query
+     * @param parameters
+     *            one set of parameters of the query
+     * @param function
+     *            maps each row
+     * @return rows of all partitions
+     */
+    <T> Observable<T> execute(QuerySelect query, List<Parameter> parameters,
+            ResultSetMapper<? extends T> function) {
+        List<Parameter> positional = QuerySelectBatch.positional(parameters, query.names());
+        List<Observable<T>> partitions = new ArrayList<Observable<T>>(count());
+        for (int i = 0; i < count(); i++) {
+            List<Parameter> params = new ArrayList<Parameter>(positional);
+            params.addAll(parameters(i));
+            QuerySelect q = new QuerySelect(sql(query.sql(), i), Observable.<Parameter> empty(),
+                    Observable.empty(), query.context(), query.resultSetTransform());
+            partitions.add(QuerySelectOnSubscribe.<T> execute(q, params, function)
+                    .subscribeOn(query.context().scheduler()));
+        }
+        if (inOrder)
+            return Observable.concatEager(partitions);
+        else
+            return Observable.merge(partitions);
+    }
+
+    @Override
+    public String toString() {
+        return "QuerySelectPartitions [column=" + column + ", partitions=" + count()
+                + ", inOrder=" + inOrder + "]";
+    }
+
+}
@@ -0,0 +1,234 @@
+package com.github.davidmoten.rx.jdbc;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.davidmoten.rx.RxUtil;
+
+import rx.Producer;
+import rx.Scheduler.Worker;
+import rx.Subscriber;
+import rx.exceptions.Exceptions;
+import rx.functions.Action0;
+
+/**
+ * Emits the rows of a {@link ResultSet} that are read ahead of demand on a
+ * background thread. Rows are read (and mapped) while the subscriber consumes
+ * earlier rows, keeping up to the size of the latest request ahead of the
+ * outstanding requests, so the database cursor is not stalled by the
+ * subscriber and the subscriber is not stalled by the database.
+ */
+final class QuerySelectPrefetchProducer<T> implements Producer {
+
+    private static final Logger log = LoggerFactory.getLogger(QuerySelectPrefetchProducer.class);
+
+    /**
+     * Stands in for a null row value in the queue.
+     */
+    private static final Object NULL = new Object();
+
+    private final ResultSetMapper<? extends T> function;
+    private final Subscriber<? super T> subscriber;
+    private final Connection con;
+    private final PreparedStatement ps;
+    private final ResultSet rs;
+    /**
+     * Non-null if and only if {@code function} reads columns using the plan.
+     */
+    private final PlannedResultSetMapper<? extends T> planned;
+    private final ColumnReadPlan plan;
+    private final QueryProbe probe;
+    private final Worker worker;
+
+    private final Queue<Object> queue = new ConcurrentLinkedQueue<Object>();
+    /**
+     * Number of rows in the queue.
+     */
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong requested = new AtomicLong();
+    /**
+     * Size of the latest request, the number of rows to read ahead of the
+     * outstanding requests.
+     */
+    private volatile long readAhead;
+    private final AtomicInteger wip = new AtomicInteger();
+    /**
+     * True while a read is scheduled or running, stays true once all rows are
+     * read.
+     */
+    private final AtomicBoolean reading = new AtomicBoolean();
+    private volatile boolean done;
+    // set before done
+    private volatile Throwable error;
+
+    @SuppressWarnings("unchecked")
+    QuerySelectPrefetchProducer(ResultSetMapper<? extends T> function,
+            Subscriber<? super T> subscriber, Connection con, PreparedStatement ps,
+            ResultSet rs, ColumnReadPlan plan, QueryProbe probe, Worker worker) {
+        this.function = function;
+        this.subscriber = subscriber;
+        this.con = con;
+        this.ps = ps;
+        this.rs = rs;
+        this.plan = plan;
+        this.probe = probe;
+        if (plan != null)
+            this.planned = (PlannedResultSetMapper<? extends T>) function;
+        else
+            this.planned = null;
+        this.worker = worker;
+        subscriber.add(worker);
+    }
+
+    @Override
+    public void request(long n) {
+        if (n <= 0)
+            return;
+        RxUtil.getAndAddRequest(requested, n);
+        readAhead = n;
+        scheduleRead();
+        drain();
+    }
+
+    /**
+     * Returns the number of rows that may be in the queue.
+     */
+    private long target() {
+        long t = requested.get() + readAhead;
+        if (t < 0)
+            return Long.MAX_VALUE;
+        else
+            return t;
+    }
+
+    private void scheduleRead() {
+        if (reading.compareAndSet(false, true))
+            worker.schedule(read);
+    }
+
+    private final Action0 read = new Action0() {
+        @Override
+        public void call() {
+            probe.resumed();
+            try {
+                while (true) {
+                    if (subscriber.isUnsubscribed()) {
+                        closeQuietly();
+                        return;
+                    }
+                    if (queued.get() >= target()) {
+                        probe.waiting();
+                        reading.set(false);
+                        // check again in case of a request since the last check
+                        if (queued.get() < target() && reading.compareAndSet(false, true)) {
+                            probe.resumed();
+                            continue;
+                        } else
+                            return;
+                    }
+                    if (rs.next()) {
+                        long t = probe.rowRead();
+                        T value;
+                        if (planned != null)
+                            value = planned.call(rs, plan);
+                        else
+                            value = function.call(rs);
+                        probe.rowMapped(t);
+                        queue.offer(value == null ? NULL : value);
+                        queued.incrementAndGet();
+                        drain();
+                    } else {
+                        log.debug("read all rows");
+                        closeQuietly();
+                        done = true;
+                        drain();
+                        return;
+                    }
+                }
+            } catch (Throwable e) {
+                Exceptions.throwIfFatal(e);
+                closeQuietly();
+                error = e;
+                done = true;
+                drain();
+            }
+        }
+    };
+
+    @SuppressWarnings("unchecked")
+    private void drain() {
+        if (wip.getAndIncrement() != 0)
+            return;
+        int missed = 1;
+        while (true) {
+            long r = requested.get();
+            long e = 0;
+            while (e != r) {
+                if (subscriber.isUnsubscribed())
+                    return;
+                boolean d = done;
+                Object o = queue.poll();
+                if (o == null) {
+                    if (d) {
+                        terminate();
+                        return;
+                    }
+                    break;
+                }
+                queued.decrementAndGet();
+                subscriber.onNext(o == NULL ? null : (T) o);
+                e++;
+            }
+            if (e == r) {
+                if (subscriber.isUnsubscribed())
+                    return;
+                if (done && queue.isEmpty()) {
+                    terminate();
+                    return;
+                }
+            }
+            if (e != 0) {
+                if (r != Long.MAX_VALUE)
+                    requested.addAndGet(-e);
+                scheduleRead();
+            }
+            missed = wip.addAndGet(-missed);
+            if (missed == 0)
+                return;
+        }
+    }
+
+    private void terminate() {
+        worker.unsubscribe();
+        Throwable e = error;
+        if (e != null) {
+            log.debug("onError: {}", e.getMessage());
+            subscriber.onError(e);
+        } else {
+            log.debug("onCompleted");
+            subscriber.onCompleted();
+        }
+    }
+
+    /**
+     * Closes connection resources (connection, prepared statement and result
+     * set).
+     */
+    private void closeQuietly() {
+        long t = probe.closing();
+        Util.closeQuietly(rs);
+        Util.closeQuietly(ps);
+        Util.closeQuietlyIfAutoCommit(con);
+        probe.closed(t);
+    }
+
+}
@@ -3,7 +3,6 @@ package com.github.davidmoten.rx.jdbc;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
-import java.sql.SQLException;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
@@ -24,70 +23,95 @@ class QuerySelectProducer<T> implements Producer {
     private final Connection con;
     private final PreparedStatement ps;
     private final ResultSet rs;
-    private volatile boolean keepGoing = true;
+    /**
+     * Non-null if and only if {@code function} reads columns using the plan.
+     */
+    private final PlannedResultSetMapper<? extends T> planned;
+    private final ColumnReadPlan plan;
+    private final QueryProbe probe;
 
     private final AtomicLong requested = new AtomicLong(0);
 
+    @SuppressWarnings("unchecked")
     QuerySelectProducer(ResultSetMapper<? extends T> function, Subscriber<? super T> subscriber,
-            Connection con, PreparedStatement ps, ResultSet rs) {
+            Connection con, PreparedStatement ps, ResultSet rs, ColumnReadPlan plan,
+            QueryProbe probe) {
         this.function = function;
         this.subscriber = subscriber;
         this.con = con;
         this.ps = ps;
         this.rs = rs;
+        this.plan = plan;
+        this.probe = probe;
+        if (plan != null)
+            this.planned = (PlannedResultSetMapper<? extends T>) function;
+        else
+            this.planned = null;
     }
 
     @Override
     public void request(long n) {
-        if (requested.get() == Long.MAX_VALUE)
-            // already started with fast path
+        if (n <= 0)
             return;
-        else if (n == Long.MAX_VALUE && requested.compareAndSet(0, Long.MAX_VALUE)) {
-            requestAll();
-        } else if (n > 0) {
-            requestSome(n);
+        // the requested count doubles as the work-in-progress indicator: only
+        // the caller that moves it away from zero drains, later requests
+        // (from any thread, reentrant or not) are picked up by that drain
+        if (RxUtil.getAndAddRequest(requested, n) == 0) {
+            probe.resumed();
+            drain(n);
         }
     }
 
-    private void requestAll() {
-        // fast path
+    /**
+     * Emits rows while there is outstanding demand. A row is emitted for each
+     * requested item (in bulk for each batch of requests) and the emitted count
+     * is subtracted from the requested count once per batch. On termination
+     * the requested count is left positive so later requests do nothing.
+     * 
+     * @param r
+     *            requested count at the start of the drain
+     */
+    private void drain(long r) {
+        long e = 0;
         try {
-            while (keepGoing) {
-                processRow(subscriber);
-            }
-            closeQuietly();
-            complete(subscriber);
-        } catch (Throwable e) {
-            closeAndHandleException(e);
-        }
-    }
-
-    private void requestSome(long n) {
-        // back pressure path
-        // this algorithm copied generally from OnSubscribeFromIterable.java
-        long previousCount = RxUtil.getAndAddRequest(requested, n);
-        if (previousCount == 0) {
-            try {
-                while (true) {
-                    long r = requested.get();
-                    long numToEmit = r;
-
-                    while (keepGoing && --numToEmit >= 0) {
-                        processRow(subscriber);
+            while (true) {
+                while (e != r) {
+                    if (subscriber.isUnsubscribed()) {
+                        log.debug("unsubscribing");
+                        closeQuietly();
+                        return;
                     }
-                    if (keepGoing) {
-                        if (requested.addAndGet(-r) == 0) {
-                            return;
-                        }
-                    } else {
+                    if (!rs.next()) {
                         closeQuietly();
                         complete(subscriber);
                         return;
                     }
+                    log.trace("onNext");
+                    long t = probe.rowRead();
+                    T value;
+                    if (planned != null)
+                        value = planned.call(rs, plan);
+                    else
+                        value = function.call(rs);
+                    t = probe.rowMapped(t);
+                    subscriber.onNext(value);
+                    probe.rowEmitted(t);
+                    e++;
+                }
+                r = requested.get();
+                if (e == r) {
+                    // mark the wait before publishing it, the next request
+                    // may arrive on another thread as soon as it is published
+                    probe.waiting();
+                    r = requested.addAndGet(-e);
+                    if (r == 0)
+                        return;
+                    probe.resumed();
+                    e = 0;
                 }
-            } catch (Exception e) {
-                closeAndHandleException(e);
             }
+        } catch (Throwable ex) {
+            closeAndHandleException(ex);
         }
     }
 
@@ -99,24 +123,6 @@ class QuerySelectProducer<T> implements Producer {
         }
     }
 
-    /**
-     * Processes each row of the {@link ResultSet}.
-     * 
-     * @param subscriber
-     * 
-     * @throws SQLException
-     */
-    private void processRow(Subscriber<? super T> subscriber) throws SQLException {
-        checkSubscription(subscriber);
-        if (!keepGoing)
-            return;
-        if (rs.next()) {
-            log.trace("onNext");
-            subscriber.onNext(function.call(rs));
-        } else
-            keepGoing = false;
-    }
-
     /**
      * Tells observer that stream is complete and closes resources.
      * 
@@ -147,25 +153,15 @@ class QuerySelectProducer<T> implements Producer {
      * set).
      */
     private void closeQuietly() {
+        long t = probe.closing();
         log.debug("closing rs");
         Util.closeQuietly(rs);
         log.debug("closing ps");
         Util.closeQuietly(ps);
         log.debug("closing con");
         Util.closeQuietlyIfAutoCommit(con);
+        probe.closed(t);
         log.debug("closed");
     }
 
-    /**
-     * If subscribe unsubscribed sets keepGoing to false.
-     * 
-     * @param subscriber
-     */
-    private void checkSubscription(Subscriber<? super T> subscriber) {
-        if (subscriber.isUnsubscribed()) {
-            keepGoing = false;
-            log.debug("unsubscribing");
-        }
-    }
-
 }
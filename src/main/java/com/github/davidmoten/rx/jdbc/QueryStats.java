@@ -0,0 +1,127 @@
+package com.github.davidmoten.rx.jdbc;
+
+/**
+ * Immutable summary of the executions of one query (sql fingerprint) sampled
+ * by a {@link QuerySampler}. Times are in milliseconds.
+ */
+public final class QueryStats {
+
+    private final String fingerprint;
+    private final long executions;
+    private final long rows;
+    private final double rowsPerSecond;
+    private final double meanConnectionHoldMs;
+    private final double maxConnectionHoldMs;
+    private final double meanBackpressureWaitMs;
+    private final double maxBackpressureWaitMs;
+    private final long slowBackpressureCount;
+
+    QueryStats(String fingerprint, long executions, long rows, long holdNanos,
+            long maxHoldNanos, long waitNanos, long maxWaitNanos, long slowBackpressureCount) {
+        this.fingerprint = fingerprint;
+        this.executions = executions;
+        this.rows = rows;
+        this.rowsPerSecond = holdNanos == 0 ? 0 : rows * 1e9 / holdNanos;
+        this.meanConnectionHoldMs = executions == 0 ? 0 : holdNanos / 1e6 / executions;
+        this.maxConnectionHoldMs = maxHoldNanos / 1e6;
+        this.meanBackpressureWaitMs = executions == 0 ? 0 : waitNanos / 1e6 / executions;
+        this.maxBackpressureWaitMs = maxWaitNanos / 1e6;
+        this.slowBackpressureCount = slowBackpressureCount;
+    }
+
+    /**
+     * Returns the sql fingerprint of the query.
+     * 
+     * @return fingerprint
+     */
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Returns the number of executions sampled.
+     * 
+     * @return executions
+     */
+    public long getExecutions() {
+        return executions;
+    }
+
+    /**
+     * Returns the total rows emitted (select) or affected (update).
+     * 
+     * @return rows
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * Returns the rows per second of connection hold time.
+     * 
+     * @return rows per second
+     */
+    public double getRowsPerSecond() {
+        return rowsPerSecond;
+    }
+
+    /**
+     * Returns the mean time an execution held its connection.
+     * 
+     * @return mean connection hold time in ms
+     */
+    public double getMeanConnectionHoldMs() {
+        return meanConnectionHoldMs;
+    }
+
+    /**
+     * Returns the longest time an execution held its connection.
+     * 
+     * @return max connection hold time in ms
+     */
+    public double getMaxConnectionHoldMs() {
+        return maxConnectionHoldMs;
+    }
+
+    /**
+     * Returns the mean time an execution held its connection while its
+     * subscriber was not ready for more rows (see
+     * {@link QueryEvent#BACKPRESSURE_WAIT}).
+     * 
+     * @return mean backpressure wait in ms
+     */
+    public double getMeanBackpressureWaitMs() {
+        return meanBackpressureWaitMs;
+    }
+
+    /**
+     * Returns the longest time an execution held its connection while its
+     * subscriber was not ready for more rows.
+     * 
+     * @return max backpressure wait in ms
+     */
+    public double getMaxBackpressureWaitMs() {
+        return maxBackpressureWaitMs;
+    }
+
+    /**
+     * Returns the number of executions that waited for their subscriber for at
+     * least the slow backpressure threshold of the sampler.
+     * 
+     * @return slow backpressure count
+     */
+    public long getSlowBackpressureCount() {
+        return slowBackpressureCount;
+    }
+
+    @Override
+    public String toString() {
+        return "QueryStats [fingerprint=" + fingerprint + ", executions=" + executions
+                + ", rows=" + rows + ", rowsPerSecond=" + rowsPerSecond
+                + ", meanConnectionHoldMs=" + meanConnectionHoldMs + ", maxConnectionHoldMs="
+                + maxConnectionHoldMs + ", meanBackpressureWaitMs=" + meanBackpressureWaitMs
+                + ", maxBackpressureWaitMs=" + maxBackpressureWaitMs
+                + ", slowBackpressureCount=" + slowBackpressureCount + "]";
+    }
+
+}
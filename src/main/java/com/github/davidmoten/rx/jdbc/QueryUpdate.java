@@ -4,8 +4,15 @@ import static com.github.davidmoten.rx.jdbc.Conditions.checkArgument;
 import static com.github.davidmoten.rx.jdbc.Conditions.checkNotNull;
 import static com.github.davidmoten.rx.jdbc.Queries.bufferedParameters;
 
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import com.github.davidmoten.rx.Transformers;
 import com.github.davidmoten.rx.jdbc.NamedParameters.JdbcQuery;
@@ -39,6 +46,8 @@ final public class QueryUpdate<T> implements Query {
     private final Observable<?> depends;
     // nullable!
     private final ResultSetMapper<? extends T> returnGeneratedKeysFunction;
+    private final ParameterBinder binder = new ParameterBinder();
+    private volatile String fingerprint;
     private static final Func1<List<Parameter>, List<Parameter>> toFinalArrayList = new Func1<List<Parameter>, List<Parameter>>() {
         @Override
         public List<Parameter> call(List<Parameter> list) {
@@ -76,6 +85,21 @@ final public class QueryUpdate<T> implements Query {
         return jdbcQuery.sql();
     }
 
+    /**
+     * Returns the fingerprint of the sql reported to the query listener
+     * (calculated on first use).
+     * 
+     * @return sql fingerprint
+     */
+    String fingerprint() {
+        String f = fingerprint;
+        if (f == null) {
+            f = QueryProbe.fingerprint(sql());
+            fingerprint = f;
+        }
+        return f;
+    }
+
     @Override
     public Observable<Parameter> parameters() {
         return parameters;
@@ -101,6 +125,15 @@ final public class QueryUpdate<T> implements Query {
         return jdbcQuery.names();
     }
 
+    /**
+     * Returns the binder that sets the parameters of this query.
+     * 
+     * @return parameter binder
+     */
+    ParameterBinder binder() {
+        return binder;
+    }
+
     /**
      * Returns the results of an update query. Should be an {@link Observable}
      * of size 1 containing the number of records affected by the update (or
@@ -182,6 +215,9 @@ final public class QueryUpdate<T> implements Query {
          */
         private final QueryBuilder builder;
         private int batchSize = DEFAULT_BATCH_SIZE;
+        private long batchMaxLatencyMs;
+        private long batchMaxBytes;
+        private int batchPipelineDepth = 1;
 
         /**
          * Constructor.
@@ -276,6 +312,73 @@ final public class QueryUpdate<T> implements Query {
             return this;
         }
 
+        /**
+         * Appends a parameter to the parameter list for the query for a BLOB
+         * parameter read from a file and handles null appropriately. The file
+         * is streamed to the driver with its size as the length so the
+         * content is not loaded onto the heap. The file is opened when the
+         * query executes and closed once read.
+         *
+         * @param file
+         *            the file whose bytes are inserted in the BLOB column
+         * @return this
+         */
+        public Builder parameterBlob(Path file) {
+            builder.parameter(file == null ? Database.NULL_BLOB : file);
+            return this;
+        }
+
+        /**
+         * Appends a parameter to the parameter list for the query for a BLOB
+         * parameter read from a channel and handles null appropriately. The
+         * bytes from the channel's position at execution to the end of the
+         * channel are streamed to the driver. The channel is not closed.
+         *
+         * @param channel
+         *            the channel whose bytes are inserted in the BLOB column
+         * @return this
+         */
+        public Builder parameterBlob(FileChannel channel) {
+            builder.parameter(channel == null ? Database.NULL_BLOB : channel);
+            return this;
+        }
+
+        /**
+         * Appends a parameter to the parameter list for the query for a BLOB
+         * parameter and handles null appropriately. The remaining bytes of the
+         * buffer (which may be direct or memory-mapped) are streamed to the
+         * driver without changing the buffer's position.
+         *
+         * @param buffer
+         *            the bytes to insert in the BLOB column
+         * @return this
+         */
+        public Builder parameterBlob(ByteBuffer buffer) {
+            builder.parameter(buffer == null ? Database.NULL_BLOB : buffer);
+            return this;
+        }
+
+        /**
+         * Appends a parameter to the parameter list for the query for a CLOB
+         * parameter read from a text file and handles null appropriately. The
+         * file is streamed to the driver rather than loaded onto the heap
+         * (with the file size as the length if the charset encodes every
+         * character in one byte). The file is opened when the query executes
+         * and closed once read.
+         *
+         * @param file
+         *            the text file to insert in the CLOB column
+         * @param charset
+         *            the encoding of the file
+         * @return this
+         */
+        public Builder parameterClob(Path file, Charset charset) {
+            checkNotNull(charset);
+            builder.parameter(
+                    file == null ? Database.NULL_CLOB : new LobParameters.TextFile(file, charset));
+            return this;
+        }
+
         /**
          * Appends a dependency to the dependencies that have to complete their
          * emitting before the query is executed.
@@ -312,8 +415,9 @@ final public class QueryUpdate<T> implements Query {
          *         ResultSet
          */
         public ReturnGeneratedKeysBuilder returnGeneratedKeys() {
-            Conditions.checkArgument(batchSize == 1,
-                    "Cannot return generated keys if batchSize > 1");
+            Conditions.checkArgument(
+                    batchSize == 1 && !isBatchBounded() && batchPipelineDepth == 1,
+                    "Cannot return generated keys if batching");
             return new ReturnGeneratedKeysBuilder(builder);
         }
 
@@ -324,6 +428,23 @@ final public class QueryUpdate<T> implements Query {
          * @return Observable of counts of rows affected.
          */
         public Observable<Integer> count() {
+            if (batchPipelineDepth > 1) {
+                checkArgument(!isBatchBounded(),
+                        "cannot bound batch latency or size of a pipelined update");
+                QueryUpdate<Integer> query = new QueryUpdate<Integer>(builder.sql(),
+                        builder.parameters(), builder.depends(), builder.context(), null);
+                // the transaction connection cannot be shared by concurrent
+                // batches so the batches of a transaction run one at a time
+                if (builder.context().isTransactionOpen())
+                    return QueryUpdateBatch.execute(query, batchSize, 0, 0);
+                else
+                    return QueryUpdatePipeline.execute(query, batchSize, batchPipelineDepth);
+            }
+            if (isBatchBounded())
+                return QueryUpdateBatch.execute(
+                        new QueryUpdate<Integer>(builder.sql(), builder.parameters(),
+                                builder.depends(), builder.context(), null),
+                        batchSize, batchMaxLatencyMs, batchMaxBytes);
             QueryContext ctxt;
             if (batchSize > 1) {
                 ctxt = builder.context().batched(batchSize);
@@ -334,6 +455,57 @@ final public class QueryUpdate<T> implements Query {
                     ctxt, null).count();
         }
 
+        /**
+         * Returns an {@link Observable} with the count of rows affected by
+         * each chunk of a bulk update that takes its parameter values from
+         * <code>columns</code>, one column per parameter in the order the
+         * parameters appear in the sql. Primitive columns are set without
+         * boxing. Rows are sent to the database using
+         * {@link PreparedStatement#executeBatch()} in chunks of
+         * {@link #batchSize(int)} rows. Parameters set on this builder are
+         * ignored.
+         *
+         * @param columns
+         *            parameter values by column
+         * @return Observable of counts of rows affected by each chunk
+         */
+        public Observable<Integer> bulk(final Columns columns) {
+            checkNotNull(columns);
+            JdbcQuery jdbcQuery = NamedParameters.parse(builder.sql());
+            int count = jdbcQuery.names().isEmpty()
+                    ? Util.countQuestionMarkParameters(jdbcQuery.sql())
+                    : jdbcQuery.names().size();
+            checkArgument(columns.size() == count, "sql has " + count
+                    + " parameters but number of columns is " + columns.size());
+            final ParameterBinder binder = new ParameterBinder();
+            return bulk(columns.rows(), new RowWriter() {
+                @Override
+                public void write(PreparedStatement ps, int row) throws SQLException {
+                    binder.bind(ps, columns, row);
+                }
+            });
+        }
+
+        /**
+         * Returns an {@link Observable} with the count of rows affected by
+         * each chunk of a bulk update of <code>rows</code> rows whose
+         * parameters are set by <code>writer</code>. Rows are sent to the
+         * database using {@link PreparedStatement#executeBatch()} in
+         * chunks of {@link #batchSize(int)} rows. Parameters set on this
+         * builder are ignored.
+         *
+         * @param rows
+         *            number of rows
+         * @param writer
+         *            sets the parameters of each row
+         * @return Observable of counts of rows affected by each chunk
+         */
+        public Observable<Integer> bulk(int rows, RowWriter writer) {
+            checkNotNull(writer);
+            return QueryUpdateBulk.execute(NamedParameters.parse(builder.sql()).sql(),
+                    builder.depends(), builder.context(), rows, writer, batchSize);
+        }
+
         /**
          * Executes the update query immediately, blocking till completion and
          * returns total of counts of records affected.
@@ -394,10 +566,82 @@ final public class QueryUpdate<T> implements Query {
             return this;
         }
 
+        /**
+         * Sets the number of parameter sets sent to the database in each
+         * batch. Also sets the number of rows in each chunk of a bulk update.
+         * See also {@link #batchMaxLatency(long, TimeUnit)} and
+         * {@link #batchMaxBytes(long)}.
+         * 
+         * @param batchSize
+         * @return this
+         */
         public Builder batchSize(int batchSize) {
             this.batchSize = batchSize;
             return this;
         }
+
+        /**
+         * Sets the maximum time a row waits in a partially filled batch. When
+         * the first row of a batch has waited this long the batch is executed
+         * even if the parameters have not completed. The count of rows
+         * affected is emitted each time a batch is executed. The wait is
+         * timed on the query scheduler (on the computation scheduler for a
+         * synchronous {@link Database}). In a transaction the wait is not
+         * timed: the batch is executed when the next row arrives after the
+         * wait (or when the parameters complete), so a partially filled batch
+         * of an idle source waits till it produces another row.
+         * 
+         * @param maxLatency
+         *            maximum wait, 0 for no limit
+         * @param unit
+         *            time unit of maxLatency
+         * @return this
+         */
+        public Builder batchMaxLatency(long maxLatency, TimeUnit unit) {
+            checkArgument(maxLatency >= 0, "maxLatency must be non-negative");
+            // round up so that a small positive latency is still a bound
+            this.batchMaxLatencyMs = maxLatency == 0 ? 0
+                    : Math.max(1, unit.toMillis(maxLatency));
+            return this;
+        }
+
+        /**
+         * Sets the maximum estimated size in bytes of the parameter values of
+         * a batch. A batch is executed as soon as it reaches this size. The
+         * count of rows affected is emitted each time a batch is executed.
+         * 
+         * @param maxBytes
+         *            maximum size, 0 for no limit
+         * @return this
+         */
+        public Builder batchMaxBytes(long maxBytes) {
+            checkArgument(maxBytes >= 0, "maxBytes must be non-negative");
+            this.batchMaxBytes = maxBytes;
+            return this;
+        }
+
+        /**
+         * Sets the number of batches that may be executing at once. When
+         * greater than one each batch of {@link #batchSize(int)} parameter
+         * lists is bound and executed on the query scheduler (an io thread
+         * for an asynchronous {@link Database}) with its own connection so
+         * that later batches are prepared while earlier ones wait on the
+         * database. Counts are emitted in batch order. In a transaction the
+         * batches are executed one at a time on the transaction connection.
+         * 
+         * @param depth
+         *            maximum number of batches in flight
+         * @return this
+         */
+        public Builder batchPipelineDepth(int depth) {
+            checkArgument(depth > 0, "depth must be positive");
+            this.batchPipelineDepth = depth;
+            return this;
+        }
+
+        private boolean isBatchBounded() {
+            return batchMaxLatencyMs > 0 || batchMaxBytes > 0;
+        }
     }
 
     public static class ReturnGeneratedKeysBuilder {
@@ -0,0 +1,432 @@
+package com.github.davidmoten.rx.jdbc;
+
+import static com.github.davidmoten.rx.jdbc.Queries.bufferedParameters;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import rx.Observable;
+import rx.Observable.Operator;
+import rx.Scheduler;
+import rx.Scheduler.Worker;
+import rx.Subscriber;
+import rx.Subscription;
+import rx.exceptions.Exceptions;
+import rx.functions.Action0;
+import rx.schedulers.Schedulers;
+import rx.subscriptions.Subscriptions;
+
+/**
+ * Executes an update query for a stream of parameter lists using
+ * {@link java.sql.PreparedStatement#addBatch()} and
+ * {@link java.sql.PreparedStatement#executeBatch()} directly. A batch is
+ * executed when it reaches a number of rows, an estimated number of bytes of
+ * parameter values or when its first row has waited a maximum time, whichever
+ * happens first, so rows from a slow source do not wait indefinitely for the
+ * batch to fill. The count of rows affected by each batch is emitted as the
+ * batch completes.
+ *
+ * <p>
+ * The connection is obtained when the first parameter list arrives (after
+ * the query dependencies have completed) and is held till the parameters
+ * complete so a batched update within a transaction uses the transaction
+ * connection. Parameters are bound and batches executed one at a time on a
+ * worker of the query scheduler. The maximum wait is timed on the same worker
+ * or, on the trampoline scheduler (a synchronous {@link Database}), on a
+ * computation worker so that the thread delivering the parameters is not
+ * blocked. Either way a batch is only executed while holding the lock of the
+ * subscriber.
+ *
+ * <p>
+ * In an open transaction the connection is only used by the thread delivering
+ * the parameters (so it is never used concurrently with a commit or rollback)
+ * and a partially filled batch is executed when a row arrives after the first
+ * row has waited the maximum time, or when the parameters complete.
+ *
+ * <p>
+ * Notifications are queued while holding the lock and emitted in order
+ * without holding it. The operator does not apply backpressure to the
+ * parameters: they are requested as fast as they arrive and the counts are
+ * buffered until requested.
+ */
+final class QueryUpdateBatch {
+
+    private static final Logger log = LoggerFactory.getLogger(QueryUpdateBatch.class);
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private QueryUpdateBatch() {
+        // prevent instantiation
+    }
+
+    /**
+     * Returns the counts of rows affected by each batch.
+     *
+     * @param query
+     *            the update query
+     * @param batchSize
+     *            maximum number of rows in a batch
+     * @param maxLatencyMs
+     *            maximum time in ms the first row of a batch waits before the
+     *            batch is executed, 0 for no limit
+     * @param maxBytes
+     *            maximum estimated size in bytes of the parameter values of a
+     *            batch, 0 for no limit
+     * @return counts per batch
+     */
+    static Observable<Integer> execute(final QueryUpdate<?> query, final int batchSize,
+            final long maxLatencyMs, final long maxBytes) {
+        Conditions.checkArgument(batchSize > 0, "batchSize must be positive");
+        Conditions.checkArgument(maxLatencyMs >= 0, "maxLatency must be non-negative");
+        Conditions.checkArgument(maxBytes >= 0, "maxBytes must be non-negative");
+        return bufferedParameters(query).lift(new Operator<Integer, List<Parameter>>() {
+            @Override
+            public Subscriber<? super List<Parameter>> call(Subscriber<? super Integer> child) {
+                Scheduler scheduler = query.context().scheduler();
+                Worker worker = scheduler.createWorker();
+                Worker timerWorker;
+                if (maxLatencyMs == 0)
+                    timerWorker = null;
+                else if (scheduler == Schedulers.trampoline())
+                    // a delayed action on the trampoline would block the thread
+                    // delivering the parameters
+                    timerWorker = Schedulers.computation().createWorker();
+                else
+                    timerWorker = worker;
+                BatchSubscriber parent = new BatchSubscriber(child, query, batchSize,
+                        maxLatencyMs, maxBytes, worker, timerWorker);
+                child.add(parent);
+                return parent;
+            }
+        }).onBackpressureBuffer();
+    }
+
+    /**
+     * Returns a rough estimate of the number of bytes sent to the database for
+     * a parameter value.
+     *
+     * @param value
+     * @return estimated size in bytes
+     */
+    static long estimateSize(Object value) {
+        if (value == null)
+            return 0;
+        else if (value instanceof String)
+            return 2L * ((String) value).length();
+        else if (value instanceof byte[])
+            return ((byte[]) value).length;
+        else if (value instanceof ByteBuffer)
+            return ((ByteBuffer) value).remaining();
+        else if (value instanceof Path)
+            return sizeOf((Path) value);
+        else if (value instanceof Number || value instanceof Boolean
+                || value instanceof java.util.Date)
+            return 8;
+        else
+            return 16;
+    }
+
+    private static long sizeOf(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 16;
+        }
+    }
+
+    private static final class BatchSubscriber extends Subscriber<List<Parameter>> {
+
+        private static final Object COMPLETED = new Object();
+
+        private final Subscriber<? super Integer> child;
+        private final QueryUpdate<?> query;
+        private final int batchSize;
+        private final long maxLatencyMs;
+        private final long maxBytes;
+        /**
+         * Runs the execution of batches one at a time.
+         */
+        private final Worker worker;
+        /**
+         * Times the maximum wait of a partially filled batch, null if there is
+         * no maximum wait.
+         */
+        private final Worker timerWorker;
+
+        // mutable state guarded by this
+
+        private State state;
+        /**
+         * True if and only if a partially filled batch is executed by a timer
+         * on {@link #timerWorker}. Otherwise (in a transaction) it is executed
+         * when a row arrives after the first row has waited the maximum time.
+         * Set when the connection is obtained.
+         */
+        private boolean timed;
+        private int rows;
+        private long bytes;
+        private long firstRowTime;
+        /**
+         * Incremented on each execution so that a scheduled flush for an
+         * earlier batch does nothing.
+         */
+        private long batch;
+        private Subscription timer;
+        private boolean done;
+        /**
+         * Counts, errors and {@link #COMPLETED} waiting to be emitted in order.
+         */
+        private final Queue<Object> queue = new ArrayDeque<Object>();
+        private boolean emitting;
+
+        BatchSubscriber(Subscriber<? super Integer> child, QueryUpdate<?> query, int batchSize,
+                long maxLatencyMs, long maxBytes, Worker worker, Worker timerWorker) {
+            this.child = child;
+            this.query = query;
+            this.batchSize = batchSize;
+            this.maxLatencyMs = maxLatencyMs;
+            this.maxBytes = maxBytes;
+            this.worker = worker;
+            this.timerWorker = timerWorker;
+            add(worker);
+            if (timerWorker != null && timerWorker != worker)
+                add(timerWorker);
+            add(Subscriptions.create(new Action0() {
+                @Override
+                public void call() {
+                    synchronized (BatchSubscriber.this) {
+                        done = true;
+                        close();
+                    }
+                }
+            }));
+        }
+
+        @Override
+        public void onNext(final List<Parameter> parameters) {
+            worker.schedule(new Action0() {
+                @Override
+                public void call() {
+                    synchronized (BatchSubscriber.this) {
+                        if (done)
+                            return;
+                        try {
+                            emitLater(add(parameters));
+                        } catch (Throwable e) {
+                            Exceptions.throwIfFatal(e);
+                            fail(e);
+                        }
+                    }
+                    drain();
+                }
+            });
+        }
+
+        @Override
+        public void onCompleted() {
+            worker.schedule(new Action0() {
+                @Override
+                public void call() {
+                    synchronized (BatchSubscriber.this) {
+                        if (done)
+                            return;
+                        try {
+                            emitLater(flush());
+                            done = true;
+                            close();
+                            queue.offer(COMPLETED);
+                        } catch (Throwable e) {
+                            Exceptions.throwIfFatal(e);
+                            fail(e);
+                        }
+                    }
+                    drain();
+                }
+            });
+        }
+
+        @Override
+        public void onError(final Throwable e) {
+            worker.schedule(new Action0() {
+                @Override
+                public void call() {
+                    synchronized (BatchSubscriber.this) {
+                        if (done)
+                            return;
+                        done = true;
+                        close();
+                        queue.offer(e);
+                    }
+                    drain();
+                }
+            });
+        }
+
+        /**
+         * Adds the parameters to the batch and executes the batch if it is
+         * full. Must hold the lock.
+         * 
+         * @return count of rows affected if the batch was executed, otherwise
+         *         null
+         */
+        private Integer add(List<Parameter> parameters) throws SQLException {
+            if (state == null) {
+                state = QueryUpdateBulk.open(query.context(), query.sql());
+                // a timer must not use the connection of a transaction
+                // concurrently with its commit or rollback
+                timed = timerWorker != null && !query.context().isTransactionOpen();
+            }
+            query.binder().bind(state.ps, parameters, query.names());
+            state.ps.addBatch();
+            rows++;
+            for (Parameter p : parameters)
+                bytes += estimateSize(p.value());
+            if (rows >= batchSize || maxBytes > 0 && bytes >= maxBytes || expired())
+                return flush();
+            else if (rows == 1 && maxLatencyMs > 0) {
+                firstRowTime = System.currentTimeMillis();
+                if (timed)
+                    scheduleFlush();
+            }
+            return null;
+        }
+
+        /**
+         * Returns true if and only if the batch is not executed by a timer and
+         * its first row has waited the maximum time. Must hold the lock.
+         */
+        private boolean expired() {
+            return !timed && maxLatencyMs > 0 && rows > 1
+                    && System.currentTimeMillis() - firstRowTime >= maxLatencyMs;
+        }
+
+        private void scheduleFlush() {
+            final long b = batch;
+            timer = timerWorker.schedule(new Action0() {
+                @Override
+                public void call() {
+                    synchronized (BatchSubscriber.this) {
+                        if (done || batch != b)
+                            return;
+                        try {
+                            log.debug("executing batch after max latency {}ms", maxLatencyMs);
+                            emitLater(flush());
+                        } catch (Throwable e) {
+                            Exceptions.throwIfFatal(e);
+                            fail(e);
+                        }
+                    }
+                    drain();
+                }
+            }, maxLatencyMs, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Executes the current batch (if any rows). Must hold the lock.
+         * 
+         * @return count of rows affected or null if the batch was empty
+         */
+        private Integer flush() throws SQLException {
+            if (rows == 0)
+                return null;
+            batch++;
+            if (timer != null) {
+                timer.unsubscribe();
+                timer = null;
+            }
+            log.debug("executing batch of {} rows, sql={}", rows, query.sql());
+            int count;
+            try {
+                count = QueryUpdateBulk.sum(state.ps.executeBatch());
+            } catch (SQLException e) {
+                QueryUpdateBulk.clearBatchQuietly(state.ps);
+                throw new SQLException("failed to execute sql=" + query.sql(), e);
+            } finally {
+                rows = 0;
+                bytes = 0;
+            }
+            query.context().resultCache().invalidate(query.sql());
+            return count;
+        }
+
+        /**
+         * Stops processing after an error and queues the error. Must hold the
+         * lock.
+         */
+        private void fail(Throwable e) {
+            done = true;
+            close();
+            queue.offer(e);
+            unsubscribe();
+        }
+
+        /**
+         * Queues the count of a batch (if executed). Must hold the lock.
+         */
+        private void emitLater(Integer count) {
+            if (count != null)
+                queue.offer(count);
+        }
+
+        /**
+         * Emits the queued notifications in order without holding the lock.
+         * Only one thread emits at a time; a thread that finds another
+         * emitting leaves its notifications to that thread.
+         */
+        private void drain() {
+            synchronized (this) {
+                if (emitting)
+                    return;
+                emitting = true;
+            }
+            while (true) {
+                Object o;
+                synchronized (this) {
+                    o = queue.poll();
+                    if (o == null) {
+                        emitting = false;
+                        return;
+                    }
+                }
+                if (o == COMPLETED)
+                    child.onCompleted();
+                else if (o instanceof Throwable)
+                    child.onError((Throwable) o);
+                else
+                    child.onNext((Integer) o);
+            }
+        }
+
+        /**
+         * Discards rows of a batch that was not executed (after an error or
+         * unsubscription) then releases the statement and connection. Must
+         * hold the lock.
+         */
+        private void close() {
+            if (timer != null) {
+                timer.unsubscribe();
+                timer = null;
+            }
+            if (state != null) {
+                if (rows > 0) {
+                    QueryUpdateBulk.clearBatchQuietly(state.ps);
+                    rows = 0;
+                    bytes = 0;
+                }
+                QueryUpdateBulk.close(state);
+            }
+        }
+    }
+
+}
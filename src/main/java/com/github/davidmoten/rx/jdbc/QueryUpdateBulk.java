@@ -0,0 +1,195 @@
+package com.github.davidmoten.rx.jdbc;
+
+import static com.github.davidmoten.rx.RxUtil.concatButIgnoreFirstSequence;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.davidmoten.rx.jdbc.exceptions.SQLRuntimeException;
+
+import rx.Observable;
+import rx.functions.Action1;
+import rx.functions.Func0;
+import rx.functions.Func1;
+
+/**
+ * Executes an update statement for many rows using
+ * {@link PreparedStatement#addBatch()} and
+ * {@link PreparedStatement#executeBatch()} directly. Rows are sent in chunks
+ * and the total count of rows affected by each chunk is emitted as the chunk
+ * completes.
+ *
+ * <p>
+ * The connection is obtained from the current connection provider so a bulk
+ * update within a transaction uses the transaction connection. If the
+ * transaction is batching updates (see {@link ConnectionProviderBatch}) then
+ * the updates waiting in the batch are executed first so that statements
+ * reach the database in the order they were issued.
+ */
+final class QueryUpdateBulk {
+
+    private static final Logger log = LoggerFactory.getLogger(QueryUpdateBulk.class);
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private QueryUpdateBulk() {
+        // prevent instantiation
+    }
+
+    /**
+     * Returns the counts of rows affected by each chunk of the bulk update.
+     * Nothing is executed till <code>depends</code> has completed.
+     *
+     * @param sql
+     *            jdbc update sql (no named parameters)
+     * @param depends
+     *            dependencies to complete before execution
+     * @param context
+     *            query context
+     * @param rows
+     *            number of rows
+     * @param writer
+     *            sets the parameters of each row
+     * @param chunkSize
+     *            number of rows to send to the database in each
+     *            <code>executeBatch</code>
+     * @return counts per chunk
+     */
+    static Observable<Integer> execute(final String sql, Observable<?> depends,
+            final QueryContext context, final int rows, final RowWriter writer,
+            final int chunkSize) {
+        Conditions.checkArgument(rows >= 0, "rows must be non-negative");
+        Conditions.checkArgument(chunkSize > 0, "chunkSize must be positive");
+        final int chunks = rows / chunkSize + (rows % chunkSize == 0 ? 0 : 1);
+        final Observable<Integer> counts = Observable.using(new Func0<State>() {
+            @Override
+            public State call() {
+                return open(context, sql);
+            }
+        }, new Func1<State, Observable<Integer>>() {
+            @Override
+            public Observable<Integer> call(final State state) {
+                return Observable.range(0, chunks).map(new Func1<Integer, Integer>() {
+                    @Override
+                    public Integer call(Integer chunk) {
+                        int start = chunk * chunkSize;
+                        int count = executeChunk(state.ps, sql, writer, start,
+                                Math.min(rows, start + chunkSize));
+                        context.resultCache().invalidate(sql);
+                        return count;
+                    }
+                });
+            }
+        }, new Action1<State>() {
+            @Override
+            public void call(State state) {
+                close(state);
+            }
+        }, true);
+        Observable<Integer> deferred = Observable.defer(new Func0<Observable<Integer>>() {
+            @Override
+            public Observable<Integer> call() {
+                return counts.subscribeOn(context.scheduler());
+            }
+        });
+        return concatButIgnoreFirstSequence(depends, deferred);
+    }
+
+    /**
+     * Returns the connection and prepared statement for an update that
+     * manages its own batching. Updates waiting in a {@link ConnectionBatch}
+     * are executed first.
+     *
+     * @param context
+     *            query context
+     * @param sql
+     *            jdbc sql
+     * @return state holding the connection and statement
+     */
+    static State open(QueryContext context, String sql) {
+        State state = new State();
+        try {
+            state.con = context.connectionProvider().get();
+            Connection con;
+            if (state.con instanceof ConnectionBatch) {
+                ConnectionBatch batch = (ConnectionBatch) state.con;
+                batch.executeBatchRemaining();
+                con = batch.connection();
+            } else
+                con = state.con;
+            state.ps = context.statementCache().prepareStatement(con, sql,
+                    Statement.NO_GENERATED_KEYS);
+            return state;
+        } catch (SQLException e) {
+            close(state);
+            throw new SQLRuntimeException(e);
+        } catch (RuntimeException e) {
+            close(state);
+            throw e;
+        }
+    }
+
+    private static int executeChunk(PreparedStatement ps, String sql, RowWriter writer,
+            int start, int finish) {
+        try {
+            for (int row = start; row < finish; row++) {
+                writer.write(ps, row);
+                ps.addBatch();
+            }
+            log.debug("executing batch of {} rows, sql={}", finish - start, sql);
+            int[] counts = ps.executeBatch();
+            return sum(counts);
+        } catch (SQLException e) {
+            clearBatchQuietly(ps);
+            throw new SQLRuntimeException(new SQLException("failed to execute sql=" + sql, e));
+        } catch (RuntimeException e) {
+            // for example thrown by the RowWriter part way through a chunk
+            clearBatchQuietly(ps);
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the total of the counts returned by
+     * {@link PreparedStatement#executeBatch()}.
+     *
+     * @param counts
+     * @return total rows affected
+     */
+    static int sum(int[] counts) {
+        int sum = 0;
+        for (int count : counts) {
+            // drivers may report Statement.SUCCESS_NO_INFO
+            if (count > 0)
+                sum += count;
+        }
+        return sum;
+    }
+
+    static void clearBatchQuietly(PreparedStatement ps) {
+        try {
+            ps.clearBatch();
+        } catch (SQLException e) {
+            log.debug(e.getMessage());
+        }
+    }
+
+    /**
+     * Releases the statement and, if in auto commit mode, the connection.
+     *
+     * @param state
+     */
+    static void close(State state) {
+        if (state.closed.compareAndSet(false, true)) {
+            Util.closeQuietly(state.ps);
+            Util.closeQuietlyIfAutoCommit(state.con);
+        }
+    }
+
+}
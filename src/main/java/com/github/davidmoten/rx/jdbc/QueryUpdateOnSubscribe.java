@@ -78,7 +78,11 @@ final class QueryUpdateOnSubscribe<T> implements OnSubscribe<T> {
                 performBeginTransaction(subscriber);
             else {
                 query.context().setupBatching();
+                if (!isCommit() && !isRollback())
+                    state.probe = QueryProbe.create(query);
+                state.probe.start();
                 getConnection(state);
+                state.probe.event(QueryEvent.CONNECTION_ACQUIRE);
                 subscriber.add(createUnsubscriptionAction(state));
                 if (isCommit())
                     performCommit(subscriber, state);
@@ -164,6 +168,9 @@ final class QueryUpdateOnSubscribe<T> implements OnSubscribe<T> {
         debug("committing");
         Conditions.checkTrue(!Util.isAutoCommit(state.con));
         Util.commit(state.con);
+        query.context().transactionEnded();
+        // rows cached outside the transaction may predate its updates
+        query.context().resultCache().invalidateAll();
         // must close before onNext so that connection is released and is
         // available to a query that might process the onNext
         close(state);
@@ -189,6 +196,7 @@ final class QueryUpdateOnSubscribe<T> implements OnSubscribe<T> {
         query.context().endTransactionObserve();
         Conditions.checkTrue(!Util.isAutoCommit(state.con));
         Util.rollback(state.con);
+        query.context().transactionEnded();
         // must close before onNext so that connection is released and is
         // available to a query that might process the onNext
         close(state);
@@ -216,8 +224,10 @@ final class QueryUpdateOnSubscribe<T> implements OnSubscribe<T> {
         } else {
             keysOption = Statement.NO_GENERATED_KEYS;
         }
-        state.ps = state.con.prepareStatement(query.sql(), keysOption);
-        Util.setParameters(state.ps, parameters, query.names());
+        state.ps = query.context().statementCache().prepareStatement(state.con, query.sql(),
+                keysOption);
+        query.binder().bind(state.ps, parameters, query.names());
+        state.probe.event(QueryEvent.PREPARE);
 
         if (subscriber.isUnsubscribed())
             return;
@@ -232,7 +242,9 @@ final class QueryUpdateOnSubscribe<T> implements OnSubscribe<T> {
             } else {
                 count = state.ps.executeUpdate();
             }
+            state.probe.executed(count);
             debug("executed ps={}", state.ps);
+            query.context().resultCache().invalidate(query.sql());
             if (query.returnGeneratedKeys()) {
                 debug("getting generated keys");
                 ResultSet rs = state.ps.getGeneratedKeys();
@@ -313,11 +325,13 @@ final class QueryUpdateOnSubscribe<T> implements OnSubscribe<T> {
     private void close(State state) {
         // ensure close happens once only to avoid race conditions
         if (state.closed.compareAndSet(false, true)) {
+            long t = state.probe.closing();
             Util.closeQuietly(state.ps);
             if (isCommit() || isRollback())
                 Util.closeQuietly(state.con);
             else
                 Util.closeQuietlyIfAutoCommit(state.con);
+            state.probe.closed(t);
         }
     }
 
@@ -0,0 +1,100 @@
+package com.github.davidmoten.rx.jdbc;
+
+import static com.github.davidmoten.rx.jdbc.Queries.bufferedParameters;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.davidmoten.rx.jdbc.exceptions.SQLRuntimeException;
+
+import rx.Observable;
+import rx.functions.Func1;
+
+/**
+ * Executes an update query for a stream of parameter lists in batches with up
+ * to <code>depth</code> batches in flight at once. Each batch is bound and
+ * executed on the query scheduler using its own connection from the connection
+ * provider, so the next batch is bound while earlier batches wait on the
+ * database. Counts are emitted in batch order.
+ *
+ * <p>
+ * Batches that use different connections are committed by their connection
+ * (in auto commit mode). If a transaction is open when a batch is formed (for
+ * example one begun by a dependency of the query) the batch is executed on the
+ * thread that formed it using the transaction connection, so the batches of
+ * the transaction run one at a time.
+ */
+final class QueryUpdatePipeline {
+
+    private static final Logger log = LoggerFactory.getLogger(QueryUpdatePipeline.class);
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private QueryUpdatePipeline() {
+        // prevent instantiation
+    }
+
+    /**
+     * Returns the counts of rows affected by each batch in the order the
+     * batches were formed.
+     *
+     * @param query
+     *            the update query
+     * @param batchSize
+     *            number of parameter lists in a batch
+     * @param depth
+     *            maximum number of batches executing at once
+     * @return counts per batch
+     */
+    static Observable<Integer> execute(final QueryUpdate<?> query, int batchSize, int depth) {
+        Conditions.checkArgument(batchSize > 0, "batchSize must be positive");
+        Conditions.checkArgument(depth > 0, "depth must be positive");
+        return bufferedParameters(query) //
+                .buffer(batchSize) //
+                .concatMapEager(new Func1<List<List<Parameter>>, Observable<Integer>>() {
+                    @Override
+                    public Observable<Integer> call(final List<List<Parameter>> batch) {
+                        Observable<Integer> count = Observable
+                                .fromCallable(new Callable<Integer>() {
+                                    @Override
+                                    public Integer call() {
+                                        return executeBatch(query, batch);
+                                    }
+                                });
+                        if (query.context().isTransactionOpen())
+                            return count;
+                        else
+                            return count.subscribeOn(query.context().scheduler());
+                    }
+                }, depth, depth);
+    }
+
+    private static int executeBatch(QueryUpdate<?> query, List<List<Parameter>> batch) {
+        State state = QueryUpdateBulk.open(query.context(), query.sql());
+        try {
+            for (List<Parameter> parameters : batch) {
+                query.binder().bind(state.ps, parameters, query.names());
+                state.ps.addBatch();
+            }
+            log.debug("executing batch of {} rows, sql={}", batch.size(), query.sql());
+            int count = QueryUpdateBulk.sum(state.ps.executeBatch());
+            query.context().resultCache().invalidate(query.sql());
+            return count;
+        } catch (SQLException e) {
+            QueryUpdateBulk.clearBatchQuietly(state.ps);
+            throw new SQLRuntimeException(
+                    new SQLException("failed to execute sql=" + query.sql(), e));
+        } catch (RuntimeException e) {
+            QueryUpdateBulk.clearBatchQuietly(state.ps);
+            throw e;
+        } finally {
+            QueryUpdateBulk.close(state);
+        }
+    }
+
+}
@@ -0,0 +1,578 @@
+package com.github.davidmoten.rx.jdbc;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.davidmoten.rx.jdbc.tuple.TupleN;
+
+import rx.Observable;
+import rx.functions.Action0;
+import rx.functions.Action1;
+import rx.functions.Func0;
+
+/**
+ * Bounded cache of the rows emitted by select queries keyed on sql, parameter
+ * values and row mapper. Configure using
+ * {@link Database.Builder#resultCache(long, long, TimeUnit)} and enable per
+ * query using {@link QuerySelect.Builder#cache()}.
+ *
+ * <p>
+ * Entries expire a fixed time after they are stored and the least recently
+ * used entries are evicted when the estimated size of the cached rows exceeds
+ * the maximum. An update, insert, delete or merge run by the {@link Database}
+ * removes the entries of the queries that read from the table it changes (any
+ * other statement and every commit remove all entries). Tables are found by a
+ * simple scan of the sql for the names following <code>from</code> and
+ * <code>join</code>. Queries are not cached inside a transaction and rows are
+ * not stored if an invalidation happens while the query runs.
+ *
+ * <p>
+ * Cached rows are shared between subscribers so the mapped objects should be
+ * immutable.
+ */
+public final class ResultCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ResultCache.class);
+
+    /**
+     * Bytes added to the estimated size of each row and each entry.
+     */
+    private static final int OVERHEAD = 16;
+
+    /**
+     * Tables of a statement that may change any table.
+     */
+    private static final Set<String> ALL_TABLES = Collections.emptySet();
+
+    /**
+     * Matches names (possibly quoted and qualified), string literals and
+     * single characters.
+     */
+    private static final Pattern TOKEN = Pattern.compile("[A-Za-z_][\\w$#.]*"
+            + "|\"[^\"]*\"(\\.\"[^\"]*\")?|`[^`]*`|\\[[^\\]]*\\]|'[^']*'|\\S");
+
+    /**
+     * Maximum estimated size in bytes of all cached rows.
+     */
+    private final long maxBytes;
+
+    private final long ttlMs;
+
+    /**
+     * Entries in least recently used order. Guarded by {@code this}.
+     */
+    private final LinkedHashMap<Key, CachedRows> entries = new LinkedHashMap<Key, CachedRows>(16,
+            0.75f, true);
+
+    /**
+     * Estimated size of the cached rows. Guarded by {@code this}.
+     */
+    private long bytes;
+
+    /**
+     * Incremented by every invalidation so that rows read while an
+     * invalidation happens are not stored. Guarded by {@code this}.
+     */
+    private long generation;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    private final AtomicLong invalidations = new AtomicLong();
+
+    ResultCache(long maxBytes, long ttlMs) {
+        Conditions.checkArgument(maxBytes >= 0, "result cache size must be >= 0");
+        Conditions.checkArgument(ttlMs >= 0, "result cache ttl must be >= 0");
+        this.maxBytes = maxBytes;
+        this.ttlMs = ttlMs;
+    }
+
+    /**
+     * Returns the maximum estimated size in bytes of the cached rows. If zero
+     * then caching is disabled.
+     *
+     * @return maximum size in bytes
+     */
+    public long maxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Returns the time in milliseconds that an entry stays in the cache (0
+     * for no expiry).
+     *
+     * @return time to live in ms
+     */
+    public long ttlMs() {
+        return ttlMs;
+    }
+
+    /**
+     * Returns the number of query executions answered from the cache.
+     *
+     * @return number of cache hits
+     */
+    public long hits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of cacheable query executions that ran against the
+     * database.
+     *
+     * @return number of cache misses
+     */
+    public long misses() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the proportion of cacheable query executions answered from the
+     * cache (0 if none).
+     *
+     * @return hit ratio between 0 and 1
+     */
+    public double hitRatio() {
+        long h = hits.get();
+        long total = h + misses.get();
+        if (total == 0)
+            return 0;
+        else
+            return (double) h / total;
+    }
+
+    /**
+     * Returns the number of entries removed to keep within the maximum size.
+     *
+     * @return number of evictions
+     */
+    public long evictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Returns the number of entries removed because an update changed a table
+     * they read from.
+     *
+     * @return number of invalidated entries
+     */
+    public long invalidations() {
+        return invalidations.get();
+    }
+
+    /**
+     * Returns the estimated size in bytes of the cached rows.
+     *
+     * @return estimated size in bytes
+     */
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    /**
+     * Returns the number of cached entries (including expired entries not yet
+     * removed).
+     *
+     * @return number of entries
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    boolean isEnabled() {
+        return maxBytes > 0;
+    }
+
+    /**
+     * Returns the key for an execution of a query or null if the parameters
+     * cannot be compared (streams and LOBs).
+     *
+     * @param sql
+     *            jdbc select statement
+     * @param parameters
+     *            parameters in the order they appear in the sql
+     * @param mapper
+     *            compared using equals
+     * @param resultSetTransform
+     *            compared using equals
+     * @return key or null if not cacheable
+     */
+    static Key key(String sql, List<Parameter> parameters, Object mapper,
+            Object resultSetTransform) {
+        Object[] values = new Object[parameters.size()];
+        for (int i = 0; i < values.length; i++) {
+            Object value = parameters.get(i).value();
+            if (value instanceof InputStream || value instanceof Reader || value instanceof Blob
+                    || value instanceof Clob || value instanceof Observable
+                    || value instanceof LobParameters.TextFile
+                    || value != null && LobParameters.isBinaryStream(value.getClass()))
+                return null;
+            values[i] = value;
+        }
+        return new Key(sql, values, mapper, resultSetTransform);
+    }
+
+    /**
+     * Returns the cached rows for the key if present else the rows of
+     * <code>source</code> which are stored when it completes.
+     *
+     * @param key
+     *            the query execution
+     * @param source
+     *            runs the query
+     * @return rows
+     */
+    <T> Observable<T> get(final Key key, final Observable<T> source) {
+        return Observable.defer(new Func0<Observable<T>>() {
+            @SuppressWarnings("unchecked")
+            @Override
+            public Observable<T> call() {
+                final long gen;
+                synchronized (ResultCache.this) {
+                    CachedRows cached = entries.get(key);
+                    if (cached != null && !cached.isExpired()) {
+                        hits.incrementAndGet();
+                        return Observable.from((List<T>) cached.rows);
+                    }
+                    gen = generation;
+                }
+                misses.incrementAndGet();
+                final Recorder recorder = new Recorder();
+                return source.doOnNext(recorder).doOnCompleted(new Action0() {
+                    @Override
+                    public void call() {
+                        put(key, recorder, gen);
+                    }
+                });
+            }
+        });
+    }
+
+    private void put(Key key, Recorder recorder, long gen) {
+        if (recorder.rows == null)
+            return;
+        CachedRows cached = new CachedRows(recorder.rows, recorder.bytes + OVERHEAD,
+                tables(key.sql), ttlMs == 0 ? Long.MAX_VALUE
+                        : System.currentTimeMillis() + ttlMs);
+        synchronized (this) {
+            if (gen != generation)
+                // an update happened while the query ran
+                return;
+            CachedRows previous = entries.put(key, cached);
+            if (previous != null)
+                bytes -= previous.bytes;
+            bytes += cached.bytes;
+            evict();
+        }
+    }
+
+    /**
+     * Removes expired entries then least recently used entries till within
+     * the maximum size. Must hold the lock.
+     */
+    private void evict() {
+        if (bytes <= maxBytes)
+            return;
+        Iterator<CachedRows> it = entries.values().iterator();
+        while (it.hasNext()) {
+            CachedRows c = it.next();
+            if (c.isExpired()) {
+                it.remove();
+                bytes -= c.bytes;
+            }
+        }
+        it = entries.values().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            CachedRows c = it.next();
+            it.remove();
+            bytes -= c.bytes;
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Removes the entries of queries that read from the tables changed by
+     * the given statement.
+     *
+     * @param sql
+     *            update, insert, delete, merge or DDL statement
+     */
+    void invalidate(String sql) {
+        if (!isEnabled())
+            return;
+        Set<String> changed = changedTables(sql);
+        synchronized (this) {
+            generation++;
+            if (entries.isEmpty())
+                return;
+            if (changed == ALL_TABLES) {
+                invalidateAll();
+                return;
+            }
+            Iterator<CachedRows> it = entries.values().iterator();
+            while (it.hasNext()) {
+                CachedRows c = it.next();
+                if (c.tables == ALL_TABLES || !Collections.disjoint(c.tables, changed)) {
+                    it.remove();
+                    bytes -= c.bytes;
+                    invalidations.incrementAndGet();
+                }
+            }
+        }
+        log.debug("invalidated result cache entries for tables {}", changed);
+    }
+
+    /**
+     * Removes all entries.
+     */
+    synchronized void invalidateAll() {
+        if (!isEnabled())
+            return;
+        generation++;
+        invalidations.addAndGet(entries.size());
+        entries.clear();
+        bytes = 0;
+    }
+
+    /**
+     * Returns the (lower case, unqualified) names of the tables that follow
+     * <code>from</code> or <code>join</code> in a select statement. Returns
+     * an empty set (meaning any table) if none are found.
+     *
+     * @param sql
+     *            select statement
+     * @return table names
+     */
+    static Set<String> tables(String sql) {
+        List<String> tokens = tokens(sql);
+        Set<String> tables = new HashSet<String>();
+        for (int i = 0; i < tokens.size(); i++) {
+            String t = tokens.get(i);
+            if (t.equals("from") || t.equals("join")) {
+                i++;
+                while (i < tokens.size() && isName(tokens.get(i))) {
+                    tables.add(name(tokens.get(i)));
+                    // skip an alias
+                    i++;
+                    if (i < tokens.size() && tokens.get(i).equals("as"))
+                        i++;
+                    if (i < tokens.size() && isName(tokens.get(i)) && !isKeyword(tokens.get(i)))
+                        i++;
+                    if (i < tokens.size() && tokens.get(i).equals(","))
+                        i++;
+                    else
+                        break;
+                }
+                i--;
+            }
+        }
+        if (tables.isEmpty())
+            return ALL_TABLES;
+        else
+            return tables;
+    }
+
+    /**
+     * Returns the (lower case, unqualified) name of the table changed by an
+     * insert, update, delete, merge, replace or truncate statement or an empty
+     * set (meaning any table) for any other statement.
+     *
+     * @param sql
+     *            update statement
+     * @return table names
+     */
+    static Set<String> changedTables(String sql) {
+        List<String> tokens = tokens(sql);
+        if (tokens.isEmpty())
+            return ALL_TABLES;
+        String first = tokens.get(0);
+        int i;
+        if (first.equals("update"))
+            i = 1;
+        else if (first.equals("insert") || first.equals("merge") || first.equals("replace"))
+            i = tokens.indexOf("into") + 1;
+        else if (first.equals("delete"))
+            i = tokens.size() > 1 && tokens.get(1).equals("from") ? 2 : 1;
+        else if (first.equals("truncate"))
+            i = tokens.size() > 1 && tokens.get(1).equals("table") ? 2 : 1;
+        else
+            return ALL_TABLES;
+        if (i <= 0 || i >= tokens.size() || !isName(tokens.get(i)))
+            return ALL_TABLES;
+        return Collections.singleton(name(tokens.get(i)));
+    }
+
+    private static List<String> tokens(String sql) {
+        List<String> tokens = new ArrayList<String>();
+        Matcher m = TOKEN.matcher(sql);
+        while (m.find()) {
+            String t = m.group();
+            if (t.startsWith("'"))
+                // ignore literals
+                continue;
+            char c = t.charAt(0);
+            if (c != '"' && c != '`' && c != '[')
+                t = t.toLowerCase(Locale.ENGLISH);
+            tokens.add(t);
+        }
+        return tokens;
+    }
+
+    private static boolean isName(String token) {
+        char c = token.charAt(0);
+        return Character.isLetter(c) || c == '_' || c == '"' || c == '`' || c == '[';
+    }
+
+    private static final Set<String> KEYWORDS = new HashSet<String>(Arrays.asList("where",
+            "join", "inner", "left", "right", "full", "outer", "cross", "natural", "on", "using",
+            "group", "order", "having", "union", "intersect", "except", "minus", "limit",
+            "offset", "fetch", "for", "window", "set", "values", "select"));
+
+    private static boolean isKeyword(String token) {
+        return KEYWORDS.contains(token);
+    }
+
+    /**
+     * Returns the table name without quotes or schema.
+     */
+    private static String name(String token) {
+        String s = token.replace("\"", "").replace("`", "").replace("[", "").replace("]", "");
+        int i = s.lastIndexOf('.');
+        if (i >= 0)
+            s = s.substring(i + 1);
+        return s.toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * Returns a rough estimate of the number of bytes of memory held by a
+     * row.
+     *
+     * @param value
+     *            row or column value
+     * @return estimated size in bytes
+     */
+    static long estimateSize(Object value) {
+        if (value == null)
+            return 0;
+        else if (value instanceof String)
+            return OVERHEAD + 2L * ((String) value).length();
+        else if (value instanceof byte[])
+            return OVERHEAD + ((byte[]) value).length;
+        else if (value instanceof Number || value instanceof Boolean
+                || value instanceof Character || value instanceof java.util.Date)
+            return OVERHEAD;
+        else if (value instanceof TupleN)
+            return OVERHEAD + estimateSize(((TupleN<?>) value).values());
+        else if (value instanceof Collection) {
+            long size = OVERHEAD;
+            for (Object o : (Collection<?>) value)
+                size += OVERHEAD + estimateSize(o);
+            return size;
+        } else
+            // an object with a few fields
+            return 4 * OVERHEAD;
+    }
+
+    @Override
+    public String toString() {
+        return "ResultCache [maxBytes=" + maxBytes + ", ttlMs=" + ttlMs + ", hits=" + hits
+                + ", misses=" + misses + ", evictions=" + evictions + ", invalidations="
+                + invalidations + "]";
+    }
+
+    /**
+     * Collects the rows of one execution while they are within the maximum
+     * size.
+     */
+    private final class Recorder implements Action1<Object> {
+
+        // set to null when too big to cache
+        List<Object> rows = new ArrayList<Object>();
+        long bytes;
+
+        @Override
+        public void call(Object row) {
+            if (rows == null)
+                return;
+            bytes += OVERHEAD + estimateSize(row);
+            if (bytes > maxBytes)
+                rows = null;
+            else
+                rows.add(row);
+        }
+    }
+
+    private static final class CachedRows {
+        final List<Object> rows;
+        final long bytes;
+        final Set<String> tables;
+        final long expiryTime;
+
+        CachedRows(List<Object> rows, long bytes, Set<String> tables, long expiryTime) {
+            this.rows = rows;
+            this.bytes = bytes;
+            this.tables = tables;
+            this.expiryTime = expiryTime;
+        }
+
+        boolean isExpired() {
+            return expiryTime != Long.MAX_VALUE && System.currentTimeMillis() >= expiryTime;
+        }
+    }
+
+    static final class Key {
+        final String sql;
+        final Object[] values;
+        final Object mapper;
+        final Object resultSetTransform;
+
+        Key(String sql, Object[] values, Object mapper, Object resultSetTransform) {
+            this.sql = sql;
+            this.values = values;
+            this.mapper = mapper;
+            this.resultSetTransform = resultSetTransform;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = sql.hashCode();
+            result = 31 * result + Arrays.deepHashCode(values);
+            result = 31 * result + mapper.hashCode();
+            result = 31 * result + resultSetTransform.hashCode();
+            return result;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key))
+                return false;
+            Key other = (Key) obj;
+            return sql.equals(other.sql) && Arrays.deepEquals(values, other.values)
+                    && mapper.equals(other.mapper)
+                    && resultSetTransform.equals(other.resultSetTransform);
+        }
+    }
+
+}
@@ -0,0 +1,133 @@
+package com.github.davidmoten.rx.jdbc;
+
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+/**
+ * Hides the first (batch index) column of the metadata of a batched select.
+ * See {@link ResultSetBatch}.
+ */
+final class ResultSetMetaDataBatch implements ResultSetMetaData {
+
+    private final ResultSetMetaData md;
+
+    ResultSetMetaDataBatch(ResultSetMetaData md) {
+        this.md = md;
+    }
+
+    @Override
+    public boolean isReadOnly(int column) throws SQLException {
+        return md.isReadOnly(column + 1);
+    }
+
+    @Override
+    public boolean isSigned(int column) throws SQLException {
+        return md.isSigned(column + 1);
+    }
+
+    @Override
+    public int getPrecision(int column) throws SQLException {
+        return md.getPrecision(column + 1);
+    }
+
+    @Override
+    public boolean isWritable(int column) throws SQLException {
+        return md.isWritable(column + 1);
+    }
+
+    @Override
+    public boolean isCaseSensitive(int column) throws SQLException {
+        return md.isCaseSensitive(column + 1);
+    }
+
+    @Override
+    public int getColumnCount() throws SQLException {
+        return md.getColumnCount() - 1;
+    }
+
+    @Override
+    public boolean isAutoIncrement(int column) throws SQLException {
+        return md.isAutoIncrement(column + 1);
+    }
+
+    @Override
+    public boolean isSearchable(int column) throws SQLException {
+        return md.isSearchable(column + 1);
+    }
+
+    @Override
+    public boolean isCurrency(int column) throws SQLException {
+        return md.isCurrency(column + 1);
+    }
+
+    @Override
+    public int isNullable(int column) throws SQLException {
+        return md.isNullable(column + 1);
+    }
+
+    @Override
+    public int getColumnDisplaySize(int column) throws SQLException {
+        return md.getColumnDisplaySize(column + 1);
+    }
+
+    @Override
+    public String getColumnLabel(int column) throws SQLException {
+        return md.getColumnLabel(column + 1);
+    }
+
+    @Override
+    public String getColumnName(int column) throws SQLException {
+        return md.getColumnName(column + 1);
+    }
+
+    @Override
+    public String getSchemaName(int column) throws SQLException {
+        return md.getSchemaName(column + 1);
+    }
+
+    @Override
+    public int getScale(int column) throws SQLException {
+        return md.getScale(column + 1);
+    }
+
+    @Override
+    public String getTableName(int column) throws SQLException {
+        return md.getTableName(column + 1);
+    }
+
+    @Override
+    public String getCatalogName(int column) throws SQLException {
+        return md.getCatalogName(column + 1);
+    }
+
+    @Override
+    public int getColumnType(int column) throws SQLException {
+        return md.getColumnType(column + 1);
+    }
+
+    @Override
+    public String getColumnTypeName(int column) throws SQLException {
+        return md.getColumnTypeName(column + 1);
+    }
+
+    @Override
+    public boolean isDefinitelyWritable(int column) throws SQLException {
+        return md.isDefinitelyWritable(column + 1);
+    }
+
+    @Override
+    public String getColumnClassName(int column) throws SQLException {
+        return md.getColumnClassName(column + 1);
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        return md.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return md.isWrapperFor(iface);
+    }
+
+}
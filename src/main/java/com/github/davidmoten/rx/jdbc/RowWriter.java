@@ -0,0 +1,24 @@
+package com.github.davidmoten.rx.jdbc;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Sets the parameters of one row of a bulk update. Primitive values can be
+ * set with the primitive setters of {@link PreparedStatement} (for example
+ * {@link PreparedStatement#setLong(int, long)}) so no boxing occurs.
+ */
+public interface RowWriter {
+
+    /**
+     * Sets the parameters of <code>ps</code> for row <code>row</code>. Must
+     * not call <code>addBatch</code> or execute the statement.
+     *
+     * @param ps
+     *            the prepared statement
+     * @param row
+     *            0-based row index
+     * @throws SQLException
+     */
+    void write(PreparedStatement ps, int row) throws SQLException;
+}
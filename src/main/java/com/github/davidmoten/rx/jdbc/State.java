@@ -9,5 +9,7 @@ class State {
     volatile Connection con;
     volatile PreparedStatement ps;
     volatile ResultSet rs;
+    volatile ColumnReadPlan plan;
+    volatile QueryProbe probe = QueryProbe.NONE;
     final AtomicBoolean closed = new AtomicBoolean(false);
 }
\ No newline at end of file
@@ -0,0 +1,285 @@
+package com.github.davidmoten.rx.jdbc;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded LRU cache of {@link PreparedStatement}s keyed per connection on sql,
+ * result set type and concurrency and generated keys mode. Configure using
+ * {@link Database.Builder#statementCacheSize(int)}.
+ *
+ * <p>
+ * A cached statement is checked out while a query uses it and is returned to
+ * the cache (with its parameters cleared) when it is closed. Statements are
+ * cached against the connection obtained by
+ * {@link Connection#unwrap(Class)} so that statements survive the logical
+ * connections handed out by {@link ConnectionProvider}s and pools.
+ */
+public final class StatementCache {
+
+    private static final Logger log = LoggerFactory.getLogger(StatementCache.class);
+
+    private static final int NO_KEYS_MODE = -1;
+
+    /**
+     * Maximum number of idle statements per connection.
+     */
+    private final int maxSize;
+
+    /**
+     * Idle statements per connection in least recently used order. Guarded by
+     * {@code this}.
+     */
+    private final Map<Connection, LinkedHashMap<Key, PreparedStatement>> idle = new IdentityHashMap<Connection, LinkedHashMap<Key, PreparedStatement>>();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    StatementCache(int maxSize) {
+        Conditions.checkArgument(maxSize >= 0, "statement cache size must be >= 0");
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the maximum number of cached statements per connection. If zero
+     * then caching is disabled.
+     *
+     * @return maximum number of cached statements per connection
+     */
+    public int maxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Returns the number of times a statement was found in the cache.
+     *
+     * @return number of cache hits
+     */
+    public long hits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of times a statement was prepared because it was not
+     * in the cache.
+     *
+     * @return number of cache misses
+     */
+    public long misses() {
+        return misses.get();
+    }
+
+    PreparedStatement prepareStatement(Connection con, String sql, int resultSetType,
+            int resultSetConcurrency) throws SQLException {
+        if (!isCacheable(con))
+            return con.prepareStatement(sql, resultSetType, resultSetConcurrency);
+        else
+            return prepare(con, new Key(sql, resultSetType, resultSetConcurrency, NO_KEYS_MODE));
+    }
+
+    PreparedStatement prepareStatement(Connection con, String sql, int autoGeneratedKeys)
+            throws SQLException {
+        if (!isCacheable(con))
+            return con.prepareStatement(sql, autoGeneratedKeys);
+        else
+            return prepare(con, new Key(sql, 0, 0, autoGeneratedKeys));
+    }
+
+    private boolean isCacheable(Connection con) {
+        // batched connections already hold on to their statement
+        return maxSize > 0 && !(con instanceof ConnectionBatch);
+    }
+
+    private PreparedStatement prepare(Connection con, Key key) throws SQLException {
+        Connection physical = physical(con);
+        PreparedStatement ps;
+        synchronized (this) {
+            LinkedHashMap<Key, PreparedStatement> statements = idle.get(physical);
+            ps = statements == null ? null : statements.remove(key);
+        }
+        if (ps != null && !ps.isClosed()) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+            removeClosedConnections();
+            if (key.autoGeneratedKeys == NO_KEYS_MODE)
+                ps = physical.prepareStatement(key.sql, key.resultSetType,
+                        key.resultSetConcurrency);
+            else
+                ps = physical.prepareStatement(key.sql, key.autoGeneratedKeys);
+        }
+        return new PreparedStatementCached(this, physical, key, ps);
+    }
+
+    /**
+     * Returns the statement to the cache with its parameters, batch and
+     * warnings cleared, restoring the max rows and fetch size if they were
+     * changed. If the connection is closed, the statement cannot be cleared
+     * or an equivalent statement is already cached then the statement is
+     * closed.
+     * Idle statements of other connections that have since been closed are
+     * discarded.
+     *
+     * @param p
+     *            checked out statement
+     * @param cancel
+     *            whether to cancel the statement first
+     */
+    void release(PreparedStatementCached p, boolean cancel) {
+        if (!p.released.compareAndSet(false, true))
+            return;
+        removeClosedConnections();
+        try {
+            if (p.con.isClosed()) {
+                Util.closeQuietly(p.ps);
+                return;
+            }
+            if (cancel) {
+                try {
+                    p.ps.cancel();
+                } catch (SQLException e) {
+                    log.debug(e.getMessage());
+                }
+            }
+            p.ps.clearParameters();
+            // rows queued by a failed or abandoned batch must not be run by
+            // the next borrower
+            p.ps.clearBatch();
+            p.ps.clearWarnings();
+            if (p.initialMaxRows != -1)
+                p.ps.setMaxRows(p.initialMaxRows);
+            if (p.initialFetchSize != -1)
+                p.ps.setFetchSize(p.initialFetchSize);
+        } catch (SQLException e) {
+            log.debug(e.getMessage());
+            Util.closeQuietly(p.ps);
+            return;
+        }
+        PreparedStatement existing;
+        synchronized (this) {
+            LinkedHashMap<Key, PreparedStatement> statements = idle.get(p.con);
+            if (statements == null) {
+                statements = new Lru(maxSize);
+                idle.put(p.con, statements);
+            }
+            existing = statements.put(p.key, p.ps);
+        }
+        if (existing != null && existing != p.ps)
+            Util.closeQuietly(existing);
+    }
+
+    /**
+     * Closes all idle statements.
+     */
+    void close() {
+        synchronized (this) {
+            for (LinkedHashMap<Key, PreparedStatement> statements : idle.values()) {
+                for (PreparedStatement ps : statements.values())
+                    Util.closeQuietly(ps);
+            }
+            idle.clear();
+        }
+    }
+
+    private synchronized void removeClosedConnections() {
+        Iterator<Entry<Connection, LinkedHashMap<Key, PreparedStatement>>> it = idle.entrySet()
+                .iterator();
+        while (it.hasNext()) {
+            try {
+                if (it.next().getKey().isClosed())
+                    it.remove();
+            } catch (SQLException e) {
+                log.debug(e.getMessage());
+                it.remove();
+            }
+        }
+    }
+
+    private static Connection physical(Connection con) {
+        try {
+            if (con.isWrapperFor(Connection.class)) {
+                Connection c = con.unwrap(Connection.class);
+                if (c != null)
+                    return c;
+            }
+        } catch (SQLException e) {
+            log.debug(e.getMessage());
+        }
+        return con;
+    }
+
+    @Override
+    public String toString() {
+        return "StatementCache [maxSize=" + maxSize + ", hits=" + hits + ", misses=" + misses
+                + "]";
+    }
+
+    static final class Key {
+        final String sql;
+        final int resultSetType;
+        final int resultSetConcurrency;
+        final int autoGeneratedKeys;
+
+        Key(String sql, int resultSetType, int resultSetConcurrency, int autoGeneratedKeys) {
+            this.sql = sql;
+            this.resultSetType = resultSetType;
+            this.resultSetConcurrency = resultSetConcurrency;
+            this.autoGeneratedKeys = autoGeneratedKeys;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = sql.hashCode();
+            result = 31 * result + resultSetType;
+            result = 31 * result + resultSetConcurrency;
+            result = 31 * result + autoGeneratedKeys;
+            return result;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key))
+                return false;
+            Key other = (Key) obj;
+            return sql.equals(other.sql) && resultSetType == other.resultSetType
+                    && resultSetConcurrency == other.resultSetConcurrency
+                    && autoGeneratedKeys == other.autoGeneratedKeys;
+        }
+    }
+
+    /**
+     * Closes the least recently used statement when full.
+     */
+    private static final class Lru extends LinkedHashMap<Key, PreparedStatement> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int maxSize;
+
+        Lru(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Entry<Key, PreparedStatement> eldest) {
+            if (size() > maxSize) {
+                Util.closeQuietly(eldest.getValue());
+                return true;
+            } else
+                return false;
+        }
+    }
+
+}
@@ -0,0 +1,134 @@
+package com.github.davidmoten.rx.jdbc;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.davidmoten.rx.jdbc.exceptions.SQLRuntimeException;
+
+/**
+ * The state of one transaction started by {@link Database#transaction}. It is
+ * held by the transaction's {@link Database} rather than by thread locals so
+ * the queries of the transaction can run on any thread and many transactions
+ * can share a few threads. Provides the single manual commit connection of the
+ * transaction, obtained on first use.
+ */
+final class TransactionContext implements ConnectionProvider {
+
+    private static final Logger log = LoggerFactory.getLogger(TransactionContext.class);
+
+    /**
+     * Provides the connection of the transaction.
+     */
+    private final ConnectionProvider cp;
+
+    // all fields guarded by this
+
+    private Connection con;
+
+    private int batchSize = 1;
+
+    private boolean finished;
+
+    /**
+     * Constructor.
+     *
+     * @param cp
+     *            provides the connection of the transaction
+     */
+    TransactionContext(ConnectionProvider cp) {
+        this.cp = cp;
+    }
+
+    @Override
+    public synchronized Connection get() {
+        if (finished)
+            throw new SQLRuntimeException("transaction has finished");
+        if (con == null) {
+            Connection c = ConnectionAutoCommitTracking.wrap(cp.get());
+            try {
+                c.setAutoCommit(false);
+            } catch (SQLException e) {
+                Util.closeQuietly(c);
+                throw new SQLRuntimeException(e);
+            }
+            con = c;
+        }
+        if (batchSize > 1 && !(con instanceof ConnectionBatch))
+            con = new ConnectionBatch(con, batchSize);
+        return con;
+    }
+
+    /**
+     * Batches the updates of the transaction from now on if batchSize is more
+     * than 1. The first batch size requested is kept.
+     *
+     * @param batchSize
+     */
+    synchronized void batching(int batchSize) {
+        if (batchSize > 1 && this.batchSize == 1)
+            this.batchSize = batchSize;
+    }
+
+    /**
+     * Records that the transaction was committed or rolled back (and its
+     * connection closed) by a commit or rollback query.
+     */
+    synchronized void ended() {
+        log.debug("transaction ended by query");
+        finished = true;
+        con = null;
+    }
+
+    /**
+     * Commits or rolls back the transaction and closes its connection unless
+     * already finished. If the commit fails the transaction is rolled back.
+     *
+     * @param commit
+     *            commit if true, roll back if false
+     * @return true if and only if this call finished the transaction
+     */
+    synchronized boolean finish(boolean commit) {
+        if (finished)
+            return false;
+        finished = true;
+        Connection c = con;
+        con = null;
+        if (c != null) {
+            try {
+                if (commit)
+                    Util.commit(c);
+                else
+                    Util.rollback(c);
+            } catch (RuntimeException e) {
+                if (commit)
+                    rollbackQuietly(c);
+                throw e;
+            } finally {
+                Util.closeQuietly(c);
+            }
+        }
+        return true;
+    }
+
+    private static void rollbackQuietly(Connection c) {
+        try {
+            c.rollback();
+        } catch (SQLException e) {
+            log.debug("rollback after failed commit failed", e);
+        } catch (RuntimeException e) {
+            log.debug("rollback after failed commit failed", e);
+        }
+    }
+
+    /**
+     * Does nothing, the connection is closed when the transaction finishes.
+     */
+    @Override
+    public void close() {
+        // do nothing
+    }
+
+}
@@ -9,7 +9,6 @@ import java.io.StringReader;
 import java.io.Writer;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.sql.Blob;
@@ -102,11 +101,18 @@ public final class Util {
 
     /**
      * Cancels then closes a {@link PreparedStatement} and logs exceptions
-     * without throwing. Does nothing if ps is null.
+     * without throwing. Does nothing if ps is null. A statement from a
+     * {@link StatementCache} is cancelled then returned to the cache instead of
+     * being closed.
      * 
      * @param ps
      */
     static void closeQuietly(PreparedStatement ps) {
+        if (ps instanceof PreparedStatementCached) {
+            ((PreparedStatementCached) ps).cancelAndRelease();
+            log.debug("released {}", ps);
+            return;
+        }
         try {
             boolean isClosed;
             try {
@@ -248,18 +254,20 @@ public final class Util {
      * Returns a function that converts the ResultSet column values into
      * parameters to the constructor (with number of parameters equals the
      * number of columns) of type <code>cls</code> then returns an instance of
-     * type <code>cls</code>. See {@link Builder#autoMap(Class)}.
-     * 
+     * type <code>cls</code>. See {@link Builder#autoMap(Class)}. For a
+     * concrete class the constructor is resolved once per (class, column
+     * count) rather than once per row (see {@link ConstructorAutoMapper}). For
+     * an interface the implementation class and annotation metadata are
+     * resolved once (see {@link InterfaceAutoMapper}).
+     *
      * @param cls
      * @return
      */
     static <T> ResultSetMapper<T> autoMap(final Class<T> cls) {
-        return new ResultSetMapper<T>() {
-            @Override
-            public T call(ResultSet rs) {
-                return autoMap(rs, cls);
-            }
-        };
+        if (cls.isInterface())
+            return new InterfaceAutoMapper<T>(cls);
+        else
+            return new ConstructorAutoMapper<T>(cls);
     }
 
     /**
@@ -292,8 +300,8 @@ public final class Util {
         }
     }
 
-    private static <T> T autoMapInterface(ResultSet rs, Class<T> cls) {
-        return ProxyService.newInstance(rs, cls);
+    private static <T> T autoMapInterface(ResultSet rs, Class<T> cls) throws SQLException {
+        return new InterfaceAutoMapper<T>(cls).call(rs);
     }
 
     static interface Col {
@@ -342,57 +350,6 @@ public final class Util {
 
     }
 
-    private static class ProxyService<T> implements java.lang.reflect.InvocationHandler {
-
-        private final Map<String, Object> values = new HashMap<String, Object>();
-
-        ProxyService(ResultSet rs, Class<T> cls) {
-            // load information from cache about the result set
-            if (Database.rsCache.get() == null || Database.rsCache.get().rs != rs)
-                Database.rsCache.set(new ResultSetCache(rs));
-            Map<String, Integer> colIndexes = Database.rsCache.get().colIndexes;
-
-            // load information from cache about the class
-            if (Database.autoMapCache.get() == null || Database.autoMapCache.get().cls != cls)
-                Database.autoMapCache.set(new AutoMapCache(cls));
-            Map<String, Col> methodCols = Database.autoMapCache.get().methodCols;
-
-            // calculate values for all the interface methods and put them in a
-            // map
-            for (Method m : cls.getMethods()) {
-                String methodName = m.getName();
-                Col column = methodCols.get(methodName);
-                Integer index;
-                if (column instanceof NamedCol) {
-                    String name = ((NamedCol) column).name;
-                    index = colIndexes.get(name.toUpperCase());
-                    if (index == null) {
-                        throw new SQLRuntimeException(
-                                "query column names do not include '" + name + "'");
-                    }
-                } else {
-                    IndexedCol col = ((IndexedCol) column);
-                    index = col.index;
-                }
-                Object value = autoMap(getObject(rs, column.returnType(), index),
-                        column.returnType());
-                values.put(methodName, value);
-            }
-        }
-
-        @SuppressWarnings("unchecked")
-        public static <T> T newInstance(ResultSet rs, Class<T> cls) {
-
-            return (T) java.lang.reflect.Proxy.newProxyInstance(cls.getClassLoader(),
-                    new Class[] { cls }, new ProxyService<T>(rs, cls));
-        }
-
-        @Override
-        public Object invoke(Object proxy, Method m, Object[] args) throws Throwable {
-            return values.get(m.getName());
-        }
-    }
-
     static String camelCaseToUnderscore(String camelCased) {
         // guava has best solution for this with CaseFormat class
         // but don't want to add dependency just for this method
@@ -455,7 +412,7 @@ public final class Util {
      * @param list
      * @return
      */
-    private static String getTypeInfo(List<Object> list) {
+    static String getTypeInfo(List<Object> list) {
 
         StringBuilder s = new StringBuilder();
         for (Object o : list) {
@@ -472,7 +429,7 @@ public final class Util {
         return s.toString();
     }
 
-    private static String getRowInfo(ResultSet rs) {
+    static String getRowInfo(ResultSet rs) {
         StringBuilder s = new StringBuilder();
         try {
             ResultSetMetaData md = rs.getMetaData();
@@ -606,7 +563,7 @@ public final class Util {
         return autoMap(getObject(rs, cls, i), cls);
     }
 
-    private static <T> Object getObject(final ResultSet rs, Class<T> cls, int i) {
+    static <T> Object getObject(final ResultSet rs, Class<T> cls, int i) {
         try {
             if (rs.getObject(i) == null) {
                 return null;
@@ -646,7 +603,7 @@ public final class Util {
      *            blob
      * @return
      */
-    private static byte[] toBytes(Blob b) {
+    static byte[] toBytes(Blob b) {
         try {
             InputStream is = b.getBinaryStream();
             byte[] result = IOUtils.toByteArray(is);
@@ -667,7 +624,7 @@ public final class Util {
      * @param c
      * @return
      */
-    private static String toString(Clob c) {
+    static String toString(Clob c) {
         try {
             Reader reader = c.getCharacterStream();
             String result = IOUtils.toString(reader);
@@ -689,7 +646,7 @@ public final class Util {
      * @param is
      * @return
      */
-    private static InputStream createFreeOnCloseInputStream(final Blob blob, final InputStream is) {
+    static InputStream createFreeOnCloseInputStream(final Blob blob, final InputStream is) {
         return new InputStream() {
 
             @Override
@@ -697,6 +654,11 @@ public final class Util {
                 return is.read();
             }
 
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return is.read(b, off, len);
+            }
+
             @Override
             public void close() throws IOException {
                 try {
@@ -720,7 +682,7 @@ public final class Util {
      * @param reader
      * @return
      */
-    private static Reader createFreeOnCloseReader(final Clob clob, final Reader reader) {
+    static Reader createFreeOnCloseReader(final Clob clob, final Reader reader) {
         return new Reader() {
 
             @Override
@@ -752,48 +714,7 @@ public final class Util {
      */
     static void setParameters(PreparedStatement ps, List<Parameter> params, boolean namesAllowed)
             throws SQLException {
-        for (int i = 1; i <= params.size(); i++) {
-            if (params.get(i - 1).hasName() && !namesAllowed)
-                throw new SQLException("named parameter found but sql does not contain names");
-            Object o = params.get(i - 1).value();
-            try {
-                if (o == null)
-                    ps.setObject(i, null);
-                else if (o == Database.NULL_CLOB)
-                    ps.setNull(i, Types.CLOB);
-                else if (o == Database.NULL_BLOB)
-                    ps.setNull(i, Types.BLOB);
-                else {
-                    Class<?> cls = o.getClass();
-                    if (Clob.class.isAssignableFrom(cls)) {
-                        setClob(ps, i, o, cls);
-                    } else if (Blob.class.isAssignableFrom(cls)) {
-                        setBlob(ps, i, o, cls);
-                    } else if (Calendar.class.isAssignableFrom(cls)) {
-                        Calendar cal = (Calendar) o;
-                        Timestamp t = new java.sql.Timestamp(cal.getTimeInMillis());
-                        ps.setTimestamp(i, t, cal);
-                    } else if (Time.class.isAssignableFrom(cls)) {
-                        Calendar cal = Calendar.getInstance();
-                        ps.setTime(i, (Time) o, cal);
-                    } else if (Timestamp.class.isAssignableFrom(cls)) {
-                        Calendar cal = Calendar.getInstance();
-                        ps.setTimestamp(i, (Timestamp) o, cal);
-                    } else if (java.sql.Date.class.isAssignableFrom(cls)) {
-                        Calendar cal = Calendar.getInstance();
-                        ps.setDate(i, (java.sql.Date) o, cal);
-                    } else if (java.util.Date.class.isAssignableFrom(cls)) {
-                        Calendar cal = Calendar.getInstance();
-                        java.util.Date date = (java.util.Date) o;
-                        ps.setTimestamp(i, new java.sql.Timestamp(date.getTime()), cal);
-                    } else
-                        ps.setObject(i, o);
-                }
-            } catch (SQLException e) {
-                log.debug("{} when setting ps.setObject({},{})", e.getMessage(), i, o);
-                throw e;
-            }
-        }
+        new ParameterBinder().bind(ps, params, namesAllowed);
     }
 
     /**
@@ -805,7 +726,7 @@ public final class Util {
      * @param cls
      * @throws SQLException
      */
-    private static void setBlob(PreparedStatement ps, int i, Object o, Class<?> cls)
+    static void setBlob(PreparedStatement ps, int i, Object o, Class<?> cls)
             throws SQLException {
         final InputStream is;
         if (o instanceof byte[]) {
@@ -830,7 +751,7 @@ public final class Util {
      * @param cls
      * @throws SQLException
      */
-    private static void setClob(PreparedStatement ps, int i, Object o, Class<?> cls)
+    static void setClob(PreparedStatement ps, int i, Object o, Class<?> cls)
             throws SQLException {
         final Reader r;
         if (o instanceof String)
@@ -906,6 +827,22 @@ public final class Util {
 
     public static void setNamedParameters(PreparedStatement ps, List<Parameter> parameters,
             List<String> names) throws SQLException {
+        Util.setParameters(ps, namedParametersInOrder(parameters, names), true);
+    }
+
+    /**
+     * Returns the named parameters in the order given by <code>names</code>.
+     * 
+     * @param parameters
+     *            named parameters
+     * @param names
+     *            parameter names in the order they appear in the sql
+     * @return parameters in sql order
+     * @throws SQLException
+     *             if a parameter has no name or a name has no parameter
+     */
+    static List<Parameter> namedParametersInOrder(List<Parameter> parameters, List<String> names)
+            throws SQLException {
         Map<String, Parameter> map = new HashMap<String, Parameter>();
         for (Parameter p : parameters) {
             if (p.hasName()) {
@@ -923,15 +860,11 @@ public final class Util {
             Parameter p = map.get(name);
             list.add(p);
         }
-        Util.setParameters(ps, list, true);
+        return list;
     }
 
     static void setParameters(PreparedStatement ps, List<Parameter> parameters, List<String> names)
             throws SQLException {
-        if (names.isEmpty()) {
-            Util.setParameters(ps, parameters, false);
-        } else {
-            Util.setNamedParameters(ps, parameters, names);
-        }
+        new ParameterBinder().bind(ps, parameters, names);
     }
 }
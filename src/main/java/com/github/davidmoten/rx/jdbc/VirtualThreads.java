@@ -0,0 +1,175 @@
+package com.github.davidmoten.rx.jdbc;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import rx.Scheduler;
+import rx.schedulers.Schedulers;
+
+/**
+ * Creates schedulers that run blocking queries on virtual threads (Java 21+)
+ * with a limit on the number of queries running at once. On older JVMs the
+ * schedulers fall back to a pool of at most that many daemon platform threads.
+ * Virtual threads are created by reflection so this library still runs on Java
+ * 7.
+ */
+final class VirtualThreads {
+
+    private static final Logger log = LoggerFactory.getLogger(VirtualThreads.class);
+
+    private static final String THREAD_NAME_PREFIX = "rxjava-jdbc-";
+
+    /**
+     * Creates virtual threads or is null if the JVM does not support them.
+     */
+    private static final ThreadFactory VIRTUAL_THREAD_FACTORY = createVirtualThreadFactory();
+
+    private VirtualThreads() {
+        // prevent instantiation
+    }
+
+    /**
+     * Returns true if and only if the JVM supports virtual threads.
+     *
+     * @return true if virtual threads are available
+     */
+    static boolean available() {
+        return VIRTUAL_THREAD_FACTORY != null;
+    }
+
+    /**
+     * Returns a scheduler that runs at most <code>maxConcurrency</code> tasks
+     * at once, each on its own virtual thread, queueing the rest. Falls back to
+     * a pool of at most <code>maxConcurrency</code> platform threads if virtual
+     * threads are not available.
+     *
+     * @param maxConcurrency
+     *            maximum number of tasks running at once
+     * @return scheduler
+     */
+    static Scheduler scheduler(int maxConcurrency) {
+        Conditions.checkArgument(maxConcurrency > 0, "maxConcurrency must be > 0");
+        if (VIRTUAL_THREAD_FACTORY != null)
+            return Schedulers.from(new BoundedExecutor(VIRTUAL_THREAD_FACTORY, maxConcurrency));
+        else
+            return Schedulers.from(createPlatformThreadPool(maxConcurrency));
+    }
+
+    private static ThreadFactory createVirtualThreadFactory() {
+        try {
+            // Thread.ofVirtual().name(THREAD_NAME_PREFIX, 0).factory()
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder,
+                    THREAD_NAME_PREFIX, 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            // before Java 19 or a preview feature that is not enabled
+            log.debug("virtual threads not available, using platform threads: " + e);
+            return null;
+        }
+    }
+
+    private static Executor createPlatformThreadPool(int maxConcurrency) {
+        final AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(maxConcurrency, maxConcurrency, 60,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, THREAD_NAME_PREFIX + count.getAndIncrement());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Runs each task on a new thread from the factory with at most
+     * <code>maxConcurrency</code> threads running at once. A thread that
+     * finishes its task runs queued tasks before it ends. Submitting a task
+     * does not block or lock.
+     */
+    static final class BoundedExecutor implements Executor {
+
+        private final ThreadFactory factory;
+        private final int maxConcurrency;
+        private final Queue<Runnable> queue = new ConcurrentLinkedQueue<Runnable>();
+        private final AtomicInteger running = new AtomicInteger();
+
+        BoundedExecutor(ThreadFactory factory, int maxConcurrency) {
+            this.factory = factory;
+            this.maxConcurrency = maxConcurrency;
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            queue.offer(task);
+            drain();
+        }
+
+        /**
+         * Starts threads for queued tasks while fewer than maxConcurrency are
+         * running. A thread decrements running before calling this so a task
+         * queued while the thread was finishing is not stranded.
+         */
+        private void drain() {
+            while (!queue.isEmpty()) {
+                int n = running.get();
+                if (n >= maxConcurrency)
+                    return;
+                if (running.compareAndSet(n, n + 1)) {
+                    Runnable task = queue.poll();
+                    if (task == null)
+                        running.decrementAndGet();
+                    else
+                        start(task);
+                }
+            }
+        }
+
+        private void start(final Runnable task) {
+            Thread thread = factory.newThread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Runnable t = task;
+                        while (t != null) {
+                            try {
+                                t.run();
+                            } catch (RuntimeException e) {
+                                log.warn("task failed", e);
+                            }
+                            t = queue.poll();
+                        }
+                    } finally {
+                        running.decrementAndGet();
+                        drain();
+                    }
+                }
+            });
+            try {
+                thread.start();
+            } catch (RuntimeException e) {
+                running.decrementAndGet();
+                throw e;
+            }
+        }
+
+        int running() {
+            return running.get();
+        }
+
+    }
+
+}
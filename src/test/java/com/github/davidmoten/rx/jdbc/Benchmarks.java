@@ -6,19 +6,45 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.State;
 
+import com.github.davidmoten.rx.jdbc.annotations.Column;
+
 import rx.Observable;
+import rx.Scheduler;
+import rx.Subscriber;
+import rx.functions.Func0;
 import rx.functions.Func1;
+import rx.functions.Func2;
+import rx.schedulers.Schedulers;
 
 @State(Scope.Benchmark)
 public class Benchmarks {
 
+    private static final int CONCURRENT_QUERIES = 10000;
+
     public Connection con = createConnection();
     public final Database db = Database.from(con);
+    public final Database dbIo = Database.builder()
+            .connectionProvider(new ConnectionProviderNonClosing(con))
+            .nonTransactionalScheduler(new Func0<Scheduler>() {
+                @Override
+                public Scheduler call() {
+                    return Schedulers.io();
+                }
+            }).build();
+    public final Database dbVirtualThreads = Database.builder()
+            .connectionProvider(new ConnectionProviderNonClosing(con))
+            .nonTransactionalSchedulerOnVirtualThreads(10).build();
+
+    private static final String URL = createDatabaseUrl();
+    public final Database dbFromUrl = Database.from(new ConnectionProviderFromUrl(URL));
+    public final Database dbFromUrlPooled = Database.from(URL);
+    public final Database dbHikari = Database.from(new ConnectionProviderPooled(URL, 0, 10));
 
     @Benchmark
     public void selectUsingLibraryUsingExplicitMapping() {
@@ -50,6 +76,195 @@ public class Benchmarks {
         }
     }
 
+    @Benchmark
+    public void selectUsingAutoMap() {
+        db.select("select name, score from person")
+                //
+                .autoMap(NameScore.class)
+                //
+                .toList()
+                // go
+                .toBlocking().single();
+    }
+
+    @Benchmark
+    public void selectUsingAutoMapReflectionPerRow() {
+        db.select("select name, score from person")
+                //
+                .get(new ResultSetMapper<NameScore>() {
+                    @Override
+                    public NameScore call(ResultSet rs) throws SQLException {
+                        return Util.autoMap(rs, NameScore.class);
+                    }
+                })
+                //
+                .toList()
+                // go
+                .toBlocking().single();
+    }
+
+    @Benchmark
+    public long selectUsingAutoMapInterface() {
+        return selectNameScores(db.select("select name, score from person")
+                //
+                .autoMap(NameScoreInterface.class));
+    }
+
+    // the per row cost of interface automapping before the mapper was
+    // resolved once per query
+
+    @Benchmark
+    public long selectUsingAutoMapInterfaceReflectionPerRow() {
+        return selectNameScores(db.select("select name, score from person")
+                //
+                .get(new ResultSetMapper<NameScoreInterface>() {
+                    @Override
+                    public NameScoreInterface call(ResultSet rs) throws SQLException {
+                        return Util.autoMap(rs, NameScoreInterface.class);
+                    }
+                }));
+    }
+
+    private static long selectNameScores(Observable<NameScoreInterface> rows) {
+        return rows
+                // call the getters
+                .reduce(0L, new Func2<Long, NameScoreInterface, Long>() {
+                    @Override
+                    public Long call(Long sum, NameScoreInterface row) {
+                        return sum + row.name().length() + row.score();
+                    }
+                })
+                // go
+                .toBlocking().single();
+    }
+
+    @Benchmark
+    public void selectUnbounded() {
+        db.select("select score from person")
+                //
+                .getAs(Integer.class)
+                //
+                .toList()
+                // go
+                .toBlocking().single();
+    }
+
+    @Benchmark
+    public void selectRequestOneAtATime() {
+        final CountDownLatch latch = new CountDownLatch(1);
+        db.select("select score from person")
+                //
+                .getAs(Integer.class)
+                // request one row at a time
+                .subscribe(new Subscriber<Integer>() {
+
+                    @Override
+                    public void onStart() {
+                        request(1);
+                    }
+
+                    @Override
+                    public void onCompleted() {
+                        latch.countDown();
+                    }
+
+                    @Override
+                    public void onError(Throwable e) {
+                        latch.countDown();
+                    }
+
+                    @Override
+                    public void onNext(Integer score) {
+                        request(1);
+                    }
+                });
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // run with -prof gc to compare allocation, Schedulers.io() also starts a
+    // platform thread for each query blocked on the connection
+
+    @Benchmark
+    public void selectConcurrentlyOnIoScheduler() {
+        selectConcurrently(dbIo);
+    }
+
+    @Benchmark
+    public void selectConcurrentlyOnVirtualThreads() {
+        selectConcurrently(dbVirtualThreads);
+    }
+
+    private static void selectConcurrently(final Database db) {
+        Observable.range(1, CONCURRENT_QUERIES)
+                // all queries in flight at once
+                .flatMap(new Func1<Integer, Observable<Integer>>() {
+                    @Override
+                    public Observable<Integer> call(Integer n) {
+                        return db.select("select score from person where name=?")
+                                .parameter("FRED").getAs(Integer.class);
+                    }
+                }, CONCURRENT_QUERIES)
+                //
+                .count()
+                // go
+                .toBlocking().single();
+    }
+
+    @Benchmark
+    public void selectUsingConnectionProviderFromUrl() {
+        selectOne(dbFromUrl);
+    }
+
+    @Benchmark
+    public void selectUsingConnectionProviderFromUrlPooled() {
+        selectOne(dbFromUrlPooled);
+    }
+
+    @Benchmark
+    public void selectUsingConnectionProviderPooled() {
+        selectOne(dbHikari);
+    }
+
+    private static void selectOne(Database db) {
+        db.select("select score from person where name=?")
+                //
+                .parameter("FRED")
+                //
+                .getAs(Integer.class)
+                // go
+                .toBlocking().single();
+    }
+
+    static final class NameScore {
+        final String name;
+        final Integer score;
+
+        NameScore(String name, Integer score) {
+            this.name = name;
+            this.score = score;
+        }
+    }
+
+    static interface NameScoreInterface {
+        @Column
+        String name();
+
+        @Column
+        int score();
+    }
+
+    private static String createDatabaseUrl() {
+        String url = DatabaseCreator.nextUrl();
+        Connection c = new ConnectionProviderFromUrl(url).get();
+        DatabaseCreator.createDatabase(c);
+        Util.closeQuietly(c);
+        return url;
+    }
+
     private static Connection createConnection() {
         Connection con = new ConnectionNonClosing(DatabaseCreator.nextConnection());
         Database db = Database.from(con);
@@ -19,6 +19,7 @@ public class ConnectionProviderAutoCommittingTest {
         ConnectionProvider cp = createMock(ConnectionProvider.class);
         Connection connection = createMock(Connection.class);
         expect(cp.get()).andReturn(connection).once();
+        expect(connection.getAutoCommit()).andReturn(false).once();
         connection.setAutoCommit(true);
         expectLastCall().andThrow(new SQLException("boo"));
         replay(cp, connection);
@@ -31,4 +32,36 @@ public class ConnectionProviderAutoCommittingTest {
         }
     }
 
+    @Test
+    public void testConnectionAlreadyInAutoCommitModeIsNotSet() throws SQLException {
+        ConnectionProvider cp = createMock(ConnectionProvider.class);
+        Connection connection = createMock(Connection.class);
+        expect(cp.get()).andReturn(connection).once();
+        expect(connection.getAutoCommit()).andReturn(true).once();
+        replay(cp, connection);
+        Connection con = new ConnectionProviderAutoCommitting(cp).get();
+        con.setAutoCommit(true);
+        Assert.assertTrue(con.getAutoCommit());
+        EasyMock.verify(cp, connection);
+    }
+
+    @Test
+    public void testAutoCommitModeReadOnceAndOnlyChangesSet() throws SQLException {
+        ConnectionProvider cp = createMock(ConnectionProvider.class);
+        Connection connection = createMock(Connection.class);
+        expect(cp.get()).andReturn(connection).once();
+        expect(connection.getAutoCommit()).andReturn(false).once();
+        connection.setAutoCommit(true);
+        expectLastCall().once();
+        connection.setAutoCommit(false);
+        expectLastCall().once();
+        replay(cp, connection);
+        Connection con = new ConnectionProviderAutoCommitting(cp).get();
+        con.setAutoCommit(true);
+        con.setAutoCommit(false);
+        con.setAutoCommit(false);
+        Assert.assertFalse(con.getAutoCommit());
+        EasyMock.verify(cp, connection);
+    }
+
 }
@@ -0,0 +1,117 @@
+package com.github.davidmoten.rx.jdbc;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import javax.sql.DataSource;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Test;
+
+import com.github.davidmoten.rx.jdbc.exceptions.SQLRuntimeException;
+
+import rx.functions.Func0;
+
+public class ConnectionProviderFromContextTest {
+
+    @Test
+    public void testDataSourceLookedUpOnce() throws SQLException {
+        Connection con = createMock(Connection.class);
+        DataSource ds = createMock(DataSource.class);
+        expect(ds.getConnection()).andReturn(con).times(3);
+        replay(ds);
+        Lookup lookup = new Lookup(ds);
+        ConnectionProvider cp = new ConnectionProviderFromContext(lookup, 0, TimeUnit.SECONDS);
+        for (int i = 0; i < 3; i++)
+            assertSame(con, cp.get());
+        assertEquals(1, lookup.count.get());
+        verify(ds);
+    }
+
+    @Test
+    public void testDataSourceLookedUpAgainWhenConnectionFails() throws SQLException {
+        Connection con = createMock(Connection.class);
+        DataSource ds1 = createMock(DataSource.class);
+        expect(ds1.getConnection()).andThrow(new SQLException("redeployed"));
+        DataSource ds2 = createMock(DataSource.class);
+        expect(ds2.getConnection()).andReturn(con).times(2);
+        replay(ds1, ds2);
+        Lookup lookup = new Lookup(ds1, ds2);
+        ConnectionProvider cp = new ConnectionProviderFromContext(lookup, 0, TimeUnit.SECONDS);
+        assertSame(con, cp.get());
+        assertSame(con, cp.get());
+        assertEquals(2, lookup.count.get());
+        verify(ds1, ds2);
+    }
+
+    @Test(expected = SQLRuntimeException.class)
+    public void testConnectionFailureThrownWhenLookupReturnsSameDataSource()
+            throws SQLException {
+        DataSource ds = createMock(DataSource.class);
+        expect(ds.getConnection()).andThrow(new SQLException("down"));
+        replay(ds);
+        new ConnectionProviderFromContext(new Lookup(ds), 0, TimeUnit.SECONDS).get();
+    }
+
+    @Test
+    public void testDataSourceRefreshedInBackground() throws SQLException, InterruptedException {
+        Connection con = createMock(Connection.class);
+        DataSource ds1 = createMock(DataSource.class);
+        DataSource ds2 = createMock(DataSource.class);
+        expect(ds2.getConnection()).andReturn(con);
+        replay(ds1, ds2);
+        Lookup lookup = new Lookup(ds1, ds2);
+        ConnectionProvider cp = new ConnectionProviderFromContext(lookup, 10,
+                TimeUnit.MILLISECONDS);
+        long deadline = System.currentTimeMillis() + 10000;
+        while (lookup.count.get() < 3 && System.currentTimeMillis() < deadline)
+            Thread.sleep(5);
+        cp.close();
+        assertSame(con, cp.get());
+        verify(ds1, ds2);
+    }
+
+    @Test
+    public void testGetConnectionFromJndi() throws NamingException, SQLException {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL(DatabaseCreator.nextUrl());
+        new InitialContext().rebind("jdbc/CachedDS", dataSource);
+        ConnectionProvider cp = new ConnectionProviderFromContext("jdbc/CachedDS");
+        cp.get().close();
+        cp.get().close();
+        cp.close();
+    }
+
+    /**
+     * Returns the given DataSources in order then keeps returning the last.
+     */
+    private static final class Lookup implements Func0<DataSource> {
+
+        final AtomicInteger count = new AtomicInteger();
+        private final List<DataSource> dataSources;
+
+        Lookup(DataSource... dataSources) {
+            this.dataSources = Arrays.asList(dataSources);
+        }
+
+        @Override
+        public DataSource call() {
+            int i = count.getAndIncrement();
+            return dataSources.get(Math.min(i, dataSources.size() - 1));
+        }
+    }
+
+}
@@ -0,0 +1,184 @@
+package com.github.davidmoten.rx.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import org.junit.Test;
+
+import com.github.davidmoten.rx.jdbc.exceptions.SQLRuntimeException;
+
+public class ConnectionProviderFromUrlPooledTest {
+
+    @Test
+    public void testReturnedConnectionIsReused() throws SQLException {
+        ConnectionProviderFromUrlPooled pool = pool(2, 60000);
+        Connection con = pool.get();
+        Connection physical = con.unwrap(Connection.class);
+        con.close();
+        assertTrue(con.isClosed());
+        assertFalse(physical.isClosed());
+        Connection con2 = pool.get();
+        assertSame(physical, con2.unwrap(Connection.class));
+        assertEquals(1, pool.size());
+        assertEquals(0, pool.validations());
+        con2.close();
+        pool.close();
+        assertTrue(physical.isClosed());
+    }
+
+    @Test
+    public void testClosingTwiceReturnsConnectionOnce() throws SQLException {
+        ConnectionProviderFromUrlPooled pool = pool(1, 60000);
+        Connection con = pool.get();
+        con.close();
+        con.close();
+        Connection con2 = pool.get();
+        con2.close();
+        assertEquals(1, pool.size());
+        pool.close();
+    }
+
+    @Test
+    public void testConnectionReturnedInAutoCommitModeAndRolledBack() throws SQLException {
+        ConnectionProviderFromUrlPooled pool = pool(1, 60000);
+        Connection con = pool.get();
+        DatabaseCreator.createDatabase(con);
+        con.setAutoCommit(false);
+        con.prepareStatement("delete from person").execute();
+        con.close();
+        con = pool.get();
+        assertTrue(con.getAutoCommit());
+        con.close();
+        Database db = Database.from(pool);
+        assertEquals(3, (int) db.select("select count(*) from person").getAs(Integer.class)
+                .toBlocking().single());
+        db.close();
+    }
+
+    @Test
+    public void testCallsThatWouldNotChangeStateAreSkipped() throws SQLException {
+        ConnectionProviderFromUrlPooled pool = pool(1, 60000);
+        Connection con = new ConnectionProviderAutoCommitting(pool).get();
+        assertEquals(1, pool.roundTripsAvoided());
+        con.setAutoCommit(false);
+        con.setAutoCommit(false);
+        assertEquals(2, pool.roundTripsAvoided());
+        assertFalse(con.unwrap(Connection.class).getAutoCommit());
+        con.close();
+        assertEquals(2, pool.roundTripsAvoided());
+        pool.close();
+    }
+
+    @Test
+    public void testIsolationAndReadOnlyRestoredWhenReturned() throws SQLException {
+        ConnectionProviderFromUrlPooled pool = pool(1, 60000);
+        Connection con = pool.get();
+        int isolation = con.getTransactionIsolation();
+        int other = isolation == Connection.TRANSACTION_SERIALIZABLE
+                ? Connection.TRANSACTION_READ_COMMITTED : Connection.TRANSACTION_SERIALIZABLE;
+        con.setTransactionIsolation(isolation);
+        assertEquals(1, pool.roundTripsAvoided());
+        con.setTransactionIsolation(other);
+        con.setReadOnly(true);
+        Connection physical = con.unwrap(Connection.class);
+        assertEquals(other, physical.getTransactionIsolation());
+        con.close();
+        assertEquals(isolation, physical.getTransactionIsolation());
+        assertFalse(physical.isReadOnly());
+        con = pool.get();
+        assertEquals(isolation, con.getTransactionIsolation());
+        assertFalse(con.isReadOnly());
+        con.close();
+        pool.close();
+    }
+
+    @Test(expected = SQLRuntimeException.class)
+    public void testTimesOutWhenAllConnectionsInUse() throws InterruptedException {
+        final ConnectionProviderFromUrlPooled pool = new ConnectionProviderFromUrlPooled(
+                DatabaseCreator.connectionProvider(), 1, 10, 60000);
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                pool.get();
+            }
+        });
+        t.start();
+        t.join();
+        pool.get();
+    }
+
+    @Test(timeout = 5000, expected = SQLRuntimeException.class)
+    public void testFailsFastWhenCurrentThreadHoldsAllConnections() {
+        ConnectionProviderFromUrlPooled pool = new ConnectionProviderFromUrlPooled(
+                DatabaseCreator.connectionProvider(), 2, 60000, 60000);
+        pool.get();
+        pool.get();
+        pool.get();
+    }
+
+    @Test
+    public void testConnectionReturnedByAnotherThreadIsNoLongerHeldByBorrower()
+            throws InterruptedException, SQLException {
+        ConnectionProviderFromUrlPooled pool = new ConnectionProviderFromUrlPooled(
+                DatabaseCreator.connectionProvider(), 1, 60000, 60000);
+        final Connection con = pool.get();
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Util.closeQuietly(con);
+            }
+        });
+        t.start();
+        t.join();
+        pool.get().close();
+        pool.close();
+    }
+
+    @Test
+    public void testIdleConnectionValidatedOnBorrow() throws SQLException {
+        ConnectionProviderFromUrlPooled pool = pool(1, 0);
+        pool.get().close();
+        Connection con = pool.get();
+        assertEquals(1, pool.validations());
+        con.close();
+        pool.close();
+    }
+
+    @Test
+    public void testInvalidConnectionReplaced() throws SQLException {
+        ConnectionProviderFromUrlPooled pool = pool(1, 0);
+        Connection con = pool.get();
+        Connection physical = con.unwrap(Connection.class);
+        physical.close();
+        con.close();
+        Connection con2 = pool.get();
+        assertFalse(con2.isClosed());
+        assertFalse(con2.unwrap(Connection.class).isClosed());
+        assertEquals(1, pool.size());
+        con2.close();
+        pool.close();
+    }
+
+    @Test
+    public void testConnectionInUseClosedWhenReturnedAfterPoolClosed() throws SQLException {
+        ConnectionProviderFromUrlPooled pool = pool(1, 60000);
+        Connection con = pool.get();
+        Connection physical = con.unwrap(Connection.class);
+        pool.close();
+        assertFalse(physical.isClosed());
+        con.close();
+        assertTrue(physical.isClosed());
+        assertEquals(0, pool.size());
+    }
+
+    private static ConnectionProviderFromUrlPooled pool(int maxPoolSize, long validationIdleMs) {
+        return new ConnectionProviderFromUrlPooled(DatabaseCreator.connectionProvider(),
+                maxPoolSize, 1000, validationIdleMs);
+    }
+
+}
@@ -16,6 +16,11 @@ import static rx.Observable.just;
 
 import java.io.IOException;
 import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -64,6 +69,7 @@ import rx.functions.Action1;
 import rx.functions.Func1;
 import rx.observables.MathObservable;
 import rx.observers.TestSubscriber;
+import rx.subjects.PublishSubject;
 
 public abstract class DatabaseTestBase {
 
@@ -288,6 +294,74 @@ public abstract class DatabaseTestBase {
         assertEquals(0, count);
     }
 
+    @Test
+    public void testTransactionContextCommitsOnCompletion() {
+        Database db = db();
+        List<Integer> counts = db.transaction(new Func1<Database, Observable<Integer>>() {
+            @Override
+            public Observable<Integer> call(Database tx) {
+                return tx.update("update person set score=score-5 where name=?")
+                        .parameter("FRED").count()
+                        .concatWith(tx.update("update person set score=score+5 where name=?")
+                                .parameter("JOSEPH").count());
+            }
+        }).toList().toBlocking().single();
+        assertEquals(asList(1, 1), counts);
+        assertEquals(asList(16, 39, 25), db.select("select score from person order by name")
+                .getAs(Integer.class).toList().toBlocking().single());
+    }
+
+    @Test
+    public void testTransactionContextRollsBackOnError() {
+        Database db = db();
+        TestSubscriber<Integer> ts = TestSubscriber.create();
+        db.transaction(new Func1<Database, Observable<Integer>>() {
+            @Override
+            public Observable<Integer> call(Database tx) {
+                return tx.update("update person set score=?").parameter(99).count()
+                        .concatWith(Observable.<Integer> error(new RuntimeException("boo")));
+            }
+        }).subscribe(ts);
+        ts.awaitTerminalEvent(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        ts.assertError(RuntimeException.class);
+        assertEquals(0, (int) db.select("select count(*) from person where score=?").parameter(99)
+                .getAs(Integer.class).toBlocking().single());
+    }
+
+    @Test
+    public void testTransactionContextsAreIndependent() {
+        final Database db = db();
+        Observable<Integer> fred = db.transaction(new Func1<Database, Observable<Integer>>() {
+            @Override
+            public Observable<Integer> call(Database tx) {
+                return tx.update("update person set score=1 where name=?").parameter("FRED")
+                        .count();
+            }
+        });
+        Observable<Integer> joseph = db.transaction(new Func1<Database, Observable<Integer>>() {
+            @Override
+            public Observable<Integer> call(Database tx) {
+                return tx.update("update person set score=2 where name=?").parameter("JOSEPH")
+                        .count()
+                        .concatWith(Observable.<Integer> error(new RuntimeException("boo")));
+            }
+        });
+        assertEquals(asList(1, 1), Observable.mergeDelayError(fred, joseph)
+                .onErrorResumeNext(Observable.<Integer> empty()).toList().toBlocking().single());
+        assertEquals(asList(1, 34, 25), db.select("select score from person order by name")
+                .getAs(Integer.class).toList().toBlocking().single());
+    }
+
+    @Test(expected = TransactionAlreadyOpenException.class)
+    public void testTransactionContextCannotBeginTransaction() {
+        db().transaction(new Func1<Database, Observable<Boolean>>() {
+            @Override
+            public Observable<Boolean> call(Database tx) {
+                return tx.beginTransaction();
+            }
+        }).toBlocking().single();
+    }
+
     @Test
     public void testTransactionOnRollback() {
         Database db = db();
@@ -428,6 +502,394 @@ public abstract class DatabaseTestBase {
         assertIs(3, count);
     }
 
+    @Test
+    public void testStatementCacheReusesStatementsForSameSql() {
+        Database db = Database.builder()
+                .connectionProvider(
+                        new ConnectionProviderNonClosing(DatabaseCreator.nextConnection()))
+                .statementCacheSize(10).build();
+        List<Integer> scores = db.select("select score from person where name=?")
+                .parameters("FRED", "JOSEPH", "MARMADUKE").getAs(Integer.class).toList()
+                .toBlocking().single();
+        assertEquals(asList(21, 34, 25), scores);
+        assertEquals(1, db.statementCache().misses());
+        assertEquals(2, db.statementCache().hits());
+        db.update("update person set score=? where name=?").parameters(1, "FRED", 2, "JOSEPH")
+                .count().toBlocking().single();
+        assertEquals(2, db.statementCache().misses());
+        assertEquals(3, db.statementCache().hits());
+        db.close();
+    }
+
+    @Test
+    public void testLimitReadsAtMostMaxRowsPerExecution() {
+        List<String> names = db().select("select name from person where score > ? order by name")
+                .parameters(0, 30).limit(2).getAs(String.class).toList().toBlocking().single();
+        assertEquals(asList("FRED", "JOSEPH", "JOSEPH"), names);
+    }
+
+    @Test
+    public void testCountOfLimitedQuery() {
+        assertEquals(2, (int) db().select("select name from person").limit(2).count()
+                .toBlocking().single());
+    }
+
+    @Test
+    public void testLimitNotKeptByCachedStatement() {
+        Database db = Database.builder()
+                .connectionProvider(
+                        new ConnectionProviderNonClosing(DatabaseCreator.nextConnection()))
+                .statementCacheSize(10).build();
+        String sql = "select name from person order by name";
+        assertEquals(asList("FRED"), db.select(sql).limit(1).getAs(String.class).toList()
+                .toBlocking().single());
+        assertEquals(asList("FRED", "JOSEPH", "MARMADUKE"), db.select(sql).getAs(String.class)
+                .toList().toBlocking().single());
+        assertEquals(1, db.statementCache().hits());
+        db.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLimitedQueryCannotBeBatched() {
+        db().select("select name from person").limit(1).batchSize(2).count();
+    }
+
+    @Test
+    public void testNonTransactionalSchedulerOnVirtualThreadsRunsQueriesConcurrently() {
+        ConnectionProvider cp = DatabaseCreator.connectionProvider();
+        DatabaseCreator.createDatabase(cp);
+        final Database db = Database.builder().connectionProvider(cp)
+                .nonTransactionalSchedulerOnVirtualThreads(4).build();
+        List<String> threads = Observable.range(1, 100)
+                .flatMap(new Func1<Integer, Observable<String>>() {
+                    @Override
+                    public Observable<String> call(Integer i) {
+                        return db.select("select name from person where name=?")
+                                .parameter("FRED").getAs(String.class)
+                                .map(new Func1<String, String>() {
+                                    @Override
+                                    public String call(String name) {
+                                        return Thread.currentThread().getName();
+                                    }
+                                });
+                    }
+                }).toList().toBlocking().single();
+        assertEquals(100, threads.size());
+        for (String thread : threads)
+            assertTrue(thread.startsWith("rxjava-jdbc-"));
+    }
+
+    @Test
+    public void testBatchedSelectReturnsRowsInParameterOrder() {
+        List<Tuple2<String, Integer>> tuples = db()
+                .select("select name, score from person where score >= ? order by name")
+                .parameters(30, 0, 100, 25).batchSize(3).getAs(String.class, Integer.class)
+                .toList().toBlocking().single();
+        List<Tuple2<String, Integer>> expected = asList(
+                // score >= 30
+                new Tuple2<String, Integer>("JOSEPH", 34),
+                // score >= 0
+                new Tuple2<String, Integer>("FRED", 21), new Tuple2<String, Integer>("JOSEPH", 34),
+                new Tuple2<String, Integer>("MARMADUKE", 25),
+                // score >= 25 (run on its own)
+                new Tuple2<String, Integer>("JOSEPH", 34),
+                new Tuple2<String, Integer>("MARMADUKE", 25));
+        assertEquals(expected, tuples);
+    }
+
+    @Test
+    public void testBatchedSelectWithNamedParametersAndAutoMap() {
+        List<Person> persons = db().select("select name, score, dob, registered from person "
+                + "where name=:name").parameter("name", "MARMADUKE").parameter("name", "FRED")
+                .batchSize(10).autoMap(Person.class).toList().toBlocking().single();
+        assertEquals(2, persons.size());
+        assertEquals("MARMADUKE", persons.get(0).getName());
+        assertEquals("FRED", persons.get(1).getName());
+    }
+
+    @Test
+    public void testBulkInsertFromColumnsEmitsCountPerChunk() {
+        Database db = db();
+        List<Integer> counts = db.update("insert into person(name,score) values(?,?)")
+                .batchSize(2)
+                .bulk(Columns.of(new String[] { "ANNE", "BOB", "CAROL" }, new int[] { 1, 2, 3 }))
+                .toList().toBlocking().single();
+        assertEquals(asList(2, 1), counts);
+        assertEquals(6, (int) db.select("select count(*) from person").getAs(Integer.class)
+                .toBlocking().single());
+        assertEquals(3, (int) db.select("select score from person where name=?")
+                .parameter("CAROL").getAs(Integer.class).toBlocking().single());
+    }
+
+    @Test
+    public void testBulkInsertUsingRowWriterInTransaction() {
+        Database db = db();
+        final long[] scores = { 7, 8, 9 };
+        Observable<Integer> counts = db.update("insert into person(name,score) values(?,?)")
+                .dependsOn(db.beginTransaction()).batchSize(10)
+                .bulk(scores.length, new RowWriter() {
+                    @Override
+                    public void write(PreparedStatement ps, int row) throws SQLException {
+                        ps.setString(1, "NAME" + row);
+                        ps.setLong(2, scores[row]);
+                    }
+                });
+        assertTrue(db.commit(counts).toBlocking().single());
+        assertEquals(3, (int) db.select("select count(*) from person where score > 6")
+                .getAs(Integer.class).toBlocking().single());
+    }
+
+    @Test
+    public void testBatchMaxLatencyExecutesPartialBatchBeforeParametersComplete() {
+        Database db = db();
+        PublishSubject<String> names = PublishSubject.create();
+        TestSubscriber<Integer> ts = TestSubscriber.create();
+        db.update("insert into person(name,score) values(?,0)").parameters(names).batchSize(100)
+                .batchMaxLatency(50, TimeUnit.MILLISECONDS).count().subscribe(ts);
+        names.onNext("ANNE");
+        ts.awaitValueCount(1, 10, TimeUnit.SECONDS);
+        ts.assertValue(1);
+        ts.assertNotCompleted();
+        assertEquals(1, (int) db.select("select count(*) from person where name=?")
+                .parameter("ANNE").getAs(Integer.class).toBlocking().single());
+        names.onNext("BOB");
+        names.onCompleted();
+        ts.awaitTerminalEvent(10, TimeUnit.SECONDS);
+        ts.assertValues(1, 1);
+        ts.assertCompleted();
+    }
+
+    @Test
+    public void testBatchMaxLatencyInTransactionExecutesPartialBatchWhenNextRowArrives()
+            throws InterruptedException {
+        Database db = DatabaseCreator.db();
+        PublishSubject<String> names = PublishSubject.create();
+        TestSubscriber<Integer> ts = TestSubscriber.create();
+        db.update("insert into person(name,score) values(?,0)").dependsOn(db.beginTransaction())
+                .parameters(names).batchSize(100).batchMaxLatency(50, TimeUnit.MILLISECONDS)
+                .count().subscribe(ts);
+        names.onNext("ANNE");
+        Thread.sleep(100);
+        ts.assertNoValues();
+        names.onNext("BOB");
+        ts.assertValue(2);
+        names.onNext("CAROL");
+        names.onCompleted();
+        ts.assertValues(2, 1);
+        ts.assertCompleted();
+        assertTrue(db.commit().toBlocking().single());
+        assertEquals(6, (int) db.select("select count(*) from person").getAs(Integer.class)
+                .toBlocking().single());
+    }
+
+    @Test
+    public void testBatchMaxBytesExecutesBatchWhenSizeReached() {
+        List<Integer> counts = db().update("insert into person(name,score) values(?,0)")
+                .parameters("ANNE", "BOB", "CAROL", "DAVE").batchSize(100).batchMaxBytes(14)
+                .count().toList().toBlocking().single();
+        // each character is estimated at 2 bytes
+        assertEquals(asList(2, 2), counts);
+    }
+
+    @Test
+    public void testPipelinedBatchesEmitCountsInOrder() {
+        Database db = db();
+        List<Integer> counts = db.update("insert into person(name,score) values(?,0)")
+                .parameters("ANNE", "BOB", "CAROL", "DAVE", "ERIC").batchSize(2)
+                .batchPipelineDepth(3).count().toList().toBlocking().single();
+        assertEquals(asList(2, 2, 1), counts);
+        assertEquals(8, (int) db.select("select count(*) from person").getAs(Integer.class)
+                .toBlocking().single());
+    }
+
+    @Test
+    public void testPipelinedUpdateInTransactionContextRollsBackOnError() {
+        Database db = db();
+        TestSubscriber<Integer> ts = TestSubscriber.create();
+        db.transaction(new Func1<Database, Observable<Integer>>() {
+            @Override
+            public Observable<Integer> call(Database tx) {
+                return tx.update("insert into person(name,score) values(?,0)")
+                        .parameters("ANNE", "BOB", "CAROL").batchSize(2).batchPipelineDepth(2)
+                        .count()
+                        .concatWith(Observable.<Integer> error(new RuntimeException("boo")));
+            }
+        }).subscribe(ts);
+        ts.awaitTerminalEvent(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        ts.assertValues(2, 1);
+        ts.assertError(RuntimeException.class);
+        assertEquals(3, (int) db.select("select count(*) from person").getAs(Integer.class)
+                .toBlocking().single());
+    }
+
+    @Test
+    public void testPipelinedUpdateInTransactionRollsBack() {
+        Database db = db();
+        Observable<Boolean> begin = db.beginTransaction();
+        Observable<Integer> counts = db.update("insert into person(name,score) values(?,0)")
+                .dependsOn(begin).parameters("ANNE", "BOB", "CAROL").batchSize(2)
+                .batchPipelineDepth(2).count();
+        db.rollback(counts);
+        long count = db.select("select count(*) from person").dependsOnLastTransaction()
+                .getAs(Long.class).toBlocking().single();
+        assertEquals(3, count);
+    }
+
+    @Test
+    public void testPartitionedSelectByRangeInOrder() {
+        List<String> names = db().select("select name, score from person")
+                .partitionByRange("score", 25, 30).partitionsInOrder().getAs(String.class)
+                .toList().toBlocking().single();
+        assertEquals(asList("FRED", "MARMADUKE", "JOSEPH"), names);
+    }
+
+    @Test
+    public void testPartitionedSelectByModulusMergesAllRows() {
+        List<String> names = db().select("select name, score from person where score > ?")
+                .parameter(0).partitionByModulus("score", 2).getAs(String.class)
+                .toSortedList().toBlocking().single();
+        assertEquals(asList("FRED", "JOSEPH", "MARMADUKE"), names);
+    }
+
+    @Test
+    public void testPrefetchEmitsRowsInOrderWithBackpressure() {
+        TestSubscriber<String> ts = TestSubscriber.create(0);
+        db().select("select name from person order by name").fetchSize(2).prefetch()
+                .getAs(String.class).subscribe(ts);
+        ts.requestMore(1);
+        ts.awaitValueCount(1, 10, TimeUnit.SECONDS);
+        ts.assertValue("FRED");
+        ts.requestMore(2);
+        ts.awaitTerminalEvent(10, TimeUnit.SECONDS);
+        ts.assertValues("FRED", "JOSEPH", "MARMADUKE");
+        ts.assertCompleted();
+    }
+
+    @Test
+    public void testQueryMetricsRecordsStagesOfSelectAndUpdate() {
+        QueryMetrics metrics = new QueryMetrics();
+        Database db = Database.builder()
+                .connectionProvider(
+                        new ConnectionProviderNonClosing(DatabaseCreator.nextConnection()))
+                .queryListener(metrics).build();
+        for (int i = 0; i < 2; i++)
+            assertEquals(3, (int) db.select("select name from person where score > 0")
+                    .getAs(String.class).count().toBlocking().single());
+        assertEquals(1, (int) db.update("update person set score=? where name=?")
+                .parameters(22, "FRED").count().toBlocking().single());
+        String select = QueryMetrics.fingerprint("select name from person where score > 0");
+        assertEquals("select name from person where score > ?", select);
+        for (QueryEvent event : QueryEvent.values()) {
+            long expected = event == QueryEvent.ROW_MAPPING ? 6 : 2;
+            assertEquals(event.toString(), expected,
+                    metrics.histogram(select, event).count());
+        }
+        String update = QueryMetrics.fingerprint("update person set score=? where name=?");
+        assertEquals(1, metrics.histogram(update, QueryEvent.EXECUTE).count());
+        assertEquals(1, metrics.histogram(update, QueryEvent.CLOSE).count());
+        assertEquals(0, metrics.histogram(update, QueryEvent.FIRST_ROW).count());
+        db.close();
+    }
+
+    @Test
+    public void testCountRunsCountSqlInDatabase() {
+        QueryMetrics metrics = new QueryMetrics();
+        Database db = Database.builder()
+                .connectionProvider(
+                        new ConnectionProviderNonClosing(DatabaseCreator.nextConnection()))
+                .queryListener(metrics).build();
+        assertEquals(6, (int) db.select("select name from person where score > ?")
+                .parameters(0, 20).count().toBlocking().single());
+        String count = QueryMetrics.fingerprint(QuerySelectCount
+                .countSql("select name from person where score > ?"));
+        assertEquals(2, metrics.histogram(count, QueryEvent.EXECUTE).count());
+        assertEquals(0, metrics
+                .histogram(QueryMetrics.fingerprint("select name from person where score > ?"),
+                        QueryEvent.EXECUTE)
+                .count());
+        db.close();
+    }
+
+    @Test
+    public void testCountWithOrderByCountsRowsOnClient() {
+        assertEquals(3, (int) db().select("select name from person order by name").count()
+                .toBlocking().single());
+    }
+
+    @Test
+    public void testQuerySamplerReportsSubscriberHoldingConnectionWithoutRequesting()
+            throws InterruptedException {
+        QuerySampler sampler = new QuerySampler(10, 50, TimeUnit.MILLISECONDS);
+        Database db = Database.builder()
+                .connectionProvider(
+                        new ConnectionProviderNonClosing(DatabaseCreator.nextConnection()))
+                .queryListener(sampler).build();
+        db.select("select name from person").getAs(String.class).toList().toBlocking().single();
+        TestSubscriber<String> ts = TestSubscriber.create(1);
+        db.select("select name from person where score > ?").parameter(0).getAs(String.class)
+                .subscribe(ts);
+        Thread.sleep(100);
+        ts.unsubscribe();
+        assertEquals(2, sampler.snapshot().size());
+        List<QueryStats> slow = sampler.slowBackpressure();
+        assertEquals(1, slow.size());
+        QueryStats stats = slow.get(0);
+        assertEquals("select name from person where score > ?", stats.getFingerprint());
+        assertEquals(1, stats.getRows());
+        assertTrue(stats.getMaxBackpressureWaitMs() >= 50);
+        assertTrue(stats.getMaxConnectionHoldMs() >= stats.getMaxBackpressureWaitMs());
+        db.close();
+    }
+
+    @Test
+    public void testResultCacheAnswersRepeatedSelect() {
+        Database db = Database.builder()
+                .connectionProvider(
+                        new ConnectionProviderNonClosing(DatabaseCreator.nextConnection()))
+                .resultCache(1000000, 1, TimeUnit.MINUTES).build();
+        for (int i = 0; i < 3; i++) {
+            List<Integer> scores = db.select("select score from person where name=?")
+                    .parameter("FRED").cache().getAs(Integer.class).toList().toBlocking()
+                    .single();
+            assertEquals(asList(21), scores);
+        }
+        assertEquals(1, db.resultCache().misses());
+        assertEquals(2, db.resultCache().hits());
+        assertEquals(1, db.resultCache().size());
+        assertTrue(db.resultCache().bytes() > 0);
+        db.close();
+    }
+
+    @Test
+    public void testResultCacheInvalidatedByUpdateOfTable() {
+        Database db = Database.builder()
+                .connectionProvider(
+                        new ConnectionProviderNonClosing(DatabaseCreator.nextConnection()))
+                .resultCache(1000000, 1, TimeUnit.MINUTES).build();
+        QuerySelect.Builder query = db.select("select score from person where name=?")
+                .parameter("FRED").cache();
+        assertEquals(21, (int) query.getAs(Integer.class).toBlocking().single());
+        db.update("update address set address_id=address_id").count().toBlocking().single();
+        assertEquals(21, (int) query.getAs(Integer.class).toBlocking().single());
+        assertEquals(1, db.resultCache().hits());
+        db.update("update person set score=? where name=?").parameters(22, "FRED").count()
+                .toBlocking().single();
+        assertEquals(22, (int) query.getAs(Integer.class).toBlocking().single());
+        assertEquals(1, db.resultCache().invalidations());
+        db.close();
+    }
+
+    @Test
+    public void testCoalescedSelectRunsAgainAfterCompletion() {
+        Database db = db();
+        for (int i = 0; i < 2; i++) {
+            List<String> names = db.select("select name from person where score > ? order by name")
+                    .parameter(22).coalesce().getAs(String.class).toList().toBlocking().single();
+            assertEquals(asList("JOSEPH", "MARMADUKE"), names);
+        }
+        assertEquals(0, db.coalescer().size());
+    }
+
     @Test
     public void testComposition2() {
         log.debug("running testComposition2");
@@ -536,6 +998,18 @@ public abstract class DatabaseTestBase {
         assertNull(person.getDateOfBirth());
     }
 
+    @Test
+    public void testAutoMapOverMultipleParameterSets() {
+        List<Person> list = db()
+                .select("select name,score,dob,registered from person where name=?")
+                .parameters("FRED", "JOSEPH", "MARMADUKE").autoMap(Person.class).toList()
+                .toBlocking().single();
+        assertEquals(3, list.size());
+        assertEquals("FRED", list.get(0).getName());
+        assertEquals(34, list.get(1).getScore(), 0.001);
+        assertEquals("MARMADUKE", list.get(2).getName());
+    }
+
     @Test(expected = RuntimeException.class)
     public void testAutoMapCannotFindConstructorWithEnoughParameters() {
         db().select("select name,score,dob,registered,name from person order by name")
@@ -619,6 +1093,81 @@ public abstract class DatabaseTestBase {
         assertTrue(new String(bytes).contains("about Fred"));
     }
 
+    @Test
+    public void insertBlobAndStreamInChunks() {
+        Database db = db();
+        byte[] bytes = new byte[10000];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = (byte) i;
+        insertBlob(db, bytes);
+        List<ByteBuffer> chunks = db.select("select document from person_blob")
+                .streamBlobs(4096).toList().toBlocking().single();
+        assertEquals(3, chunks.size());
+        ByteBuffer all = ByteBuffer.allocate(bytes.length);
+        for (ByteBuffer chunk : chunks)
+            all.put(chunk);
+        assertTrue(Arrays.equals(bytes, all.array()));
+    }
+
+    @Test
+    public void insertClobAndStreamInChunks() {
+        Database db = db();
+        insertClob(db);
+        List<CharBuffer> chunks = db.select("select document from person_clob")
+                .streamClobs(10).toList().toBlocking().single();
+        StringBuilder s = new StringBuilder();
+        for (CharBuffer chunk : chunks)
+            s.append(chunk);
+        assertEquals("A description about Fred that is rather long and needs a Clob to store it",
+                s.toString());
+    }
+
+    @Test
+    public void insertBlobFromFileAndDirectBuffer() throws IOException {
+        Database db = db();
+        byte[] bytes = new byte[10000];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = (byte) i;
+        Path file = Files.createTempFile("blob", ".bin");
+        try {
+            Files.write(file, bytes);
+            ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+            buffer.put(bytes).flip();
+            List<Integer> counts = db.update("insert into person_blob(name,document) values(?,?)")
+                    .parameter("FRED").parameterBlob(file).parameter("JOSEPH")
+                    .parameterBlob(buffer).count().toList().toBlocking().single();
+            assertEquals(Arrays.asList(1, 1), counts);
+            // the buffer is not consumed
+            assertEquals(bytes.length, buffer.remaining());
+            List<byte[]> documents = db.select("select document from person_blob order by name")
+                    .getAs(byte[].class).toList().toBlocking().single();
+            assertEquals(2, documents.size());
+            assertTrue(Arrays.equals(bytes, documents.get(0)));
+            assertTrue(Arrays.equals(bytes, documents.get(1)));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void insertClobFromFile() throws IOException {
+        Database db = db();
+        String text = "A description about Fred that is rather long and needs a Clob to store it";
+        Path file = Files.createTempFile("clob", ".txt");
+        try {
+            Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+            Observable<Integer> count = db
+                    .update("insert into person_clob(name,document) values(?,?)")
+                    .parameter("FRED").parameterClob(file, StandardCharsets.UTF_8).count();
+            assertIs(1, count);
+            String document = db.select("select document from person_clob").getAs(String.class)
+                    .toBlocking().single();
+            assertEquals(text, document);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
     @Test
     public void testInsertNull() {
         Observable<Integer> count = db().update("insert into person(name,score,dob) values(?,?,?)")
@@ -626,6 +1175,32 @@ public abstract class DatabaseTestBase {
         assertIs(1, count);
     }
 
+    @Test
+    public void testSelectNullsUsingColumnReadPlan() {
+        Database db = db();
+        db.update("insert into person(name,score,dob) values(?,?,?)").parameters("JACK", 42, null)
+                .count().toBlocking().single();
+        Tuple3<String, Long, Date> tuple = db
+                .select("select name, score, dob from person where name=?").parameter("JACK")
+                .getAs(String.class, Long.class, Date.class).toBlocking().single();
+        assertEquals("JACK", tuple.value1());
+        assertEquals(42L, (long) tuple.value2());
+        assertNull(tuple.value3());
+    }
+
+    @Test
+    public void testDecimalColumnTruncatedToIntegerUsingColumnReadPlan() {
+        Tuple2<Integer, Long> tuple = db()
+                .select("select cast(12.7 as decimal(10,2)), cast(3000000000.9 as decimal(12,1)) "
+                        + "from person where name=?")
+                .parameter("FRED").getAs(Integer.class, Long.class).toBlocking().single();
+        assertEquals(12, (int) tuple.value1());
+        assertEquals(3000000000L, (long) tuple.value2());
+        assertEquals(-1294967296, (int) db().select("select cast(3000000000 as decimal(12,0)) "
+                + "from person where name=?").parameter("FRED").getAs(Integer.class)
+                .toBlocking().single());
+    }
+
     @Test
     public void testRC4() {
         Observable.<Object> empty().concatWith(just(10, 20, 30)).buffer(3)
@@ -1678,6 +2253,15 @@ public abstract class DatabaseTestBase {
         assertEquals(21, list.get(0).score());
     }
 
+    @Test
+    public void testAutoMapInterfaceReturnsZeroForNullPrimitive() {
+        NameScorePrimitive p = db()
+                .select("select name, cast(null as int) as score from person where name='FRED'")
+                .autoMap(NameScorePrimitive.class).toBlocking().single();
+        assertEquals("FRED", p.name());
+        assertEquals(0, p.score());
+    }
+
     static interface NameScorePrimitive {
         @Column
         String name();
@@ -1686,6 +2270,19 @@ public abstract class DatabaseTestBase {
         int score();
     }
 
+    @Test
+    public void testAutoMapInterfaceOverMultipleParameterSets() {
+        List<NameScorePrimitive> list = db()
+                .select("select name, score from person where name=?")
+                .parameters("FRED", "JOSEPH").autoMap(NameScorePrimitive.class).toList()
+                .toBlocking().single();
+        assertEquals(2, list.size());
+        assertEquals("FRED", list.get(0).name());
+        assertEquals(21, list.get(0).score());
+        assertEquals("JOSEPH", list.get(1).name());
+        assertEquals(34, list.get(1).score());
+    }
+
     @Test
     public void testResultSetTransformSetOnDatabase() {
         final AtomicInteger count = new AtomicInteger();
@@ -1749,6 +2346,44 @@ public abstract class DatabaseTestBase {
         assertEquals(Arrays.asList(1, 2), list);
     }
 
+    @Test
+    public void testBatchedSelectHidesBatchIndexFromDatabaseTransform() {
+        final List<String> labels = new CopyOnWriteArrayList<>();
+        Func1<ResultSet, ? extends ResultSet> transform = new Func1<ResultSet, ResultSet>() {
+
+            @Override
+            public ResultSet call(ResultSet rs) {
+                try {
+                    labels.add(rs.getMetaData().getColumnLabel(1));
+                } catch (SQLException e) {
+                    throw new RuntimeException(e);
+                }
+                return rs;
+            }
+        };
+        Database db = Database.builder().connectionProvider(db().connectionProvider())
+                .resultSetTransform(transform).build();
+        List<String> names = db.select("select name from person where name=?")
+                .parameters("MARMADUKE", "FRED").batchSize(2).getAs(String.class).toList()
+                .toBlocking().single();
+        assertEquals(asList("MARMADUKE", "FRED"), names);
+        assertEquals(asList("NAME"), labels);
+    }
+
+    @Test
+    public void testBatchedSelectHonoursBackpressure() {
+        TestSubscriber<String> ts = TestSubscriber.create(1);
+        db().select("select name from person where score >= ? order by name")
+                .parameters(0, 30).batchSize(2).getAs(String.class).subscribe(ts);
+        ts.awaitTerminalEvent(200, TimeUnit.MILLISECONDS);
+        ts.assertValues("FRED");
+        ts.assertNoTerminalEvent();
+        ts.requestMore(10);
+        ts.awaitTerminalEvent(10, TimeUnit.SECONDS);
+        ts.assertValues("FRED", "JOSEPH", "MARMADUKE", "JOSEPH");
+        ts.assertCompleted();
+    }
+
     /********************************************************
      ** Utility classes
      ********************************************************/
@@ -0,0 +1,72 @@
+package com.github.davidmoten.rx.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testEmpty() {
+        LatencyHistogram h = new LatencyHistogram();
+        assertEquals(0, h.count());
+        assertEquals(0, h.percentile(99));
+        assertEquals(0, h.mean(), 0);
+    }
+
+    @Test
+    public void testSmallValuesAreExact() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int i = 1; i <= 20; i++)
+            h.record(i);
+        assertEquals(10, h.percentile(50));
+        assertEquals(20, h.percentile(100));
+        assertEquals(10.5, h.mean(), 0.0001);
+    }
+
+    @Test
+    public void testPercentilesWithinRelativeError() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int i = 1; i <= 1000000; i++)
+            h.record(i * 1000L);
+        assertEquals(1000000, h.count());
+        assertEquals(1000000000L, h.max());
+        assertWithin(500000000L, h.percentile(50));
+        assertWithin(990000000L, h.percentile(99));
+        assertEquals(1000000000L, h.percentile(100));
+    }
+
+    @Test
+    public void testRecordWithCount() {
+        LatencyHistogram h = new LatencyHistogram();
+        h.record(100, 9);
+        h.record(5000, 1);
+        assertEquals(10, h.count());
+        assertWithin(100, h.percentile(90));
+        assertEquals(5000, h.percentile(91));
+    }
+
+    @Test
+    public void testHugeValueCountedInLastBucket() {
+        LatencyHistogram h = new LatencyHistogram();
+        h.record(Long.MAX_VALUE / 2);
+        assertEquals(Long.MAX_VALUE / 2, h.percentile(50));
+    }
+
+    @Test
+    public void testIndexAndHighestEquivalentValueAgree() {
+        for (long v = 0; v < 1L << 40; v = v * 3 / 2 + 1) {
+            int index = LatencyHistogram.index(v);
+            assertTrue(LatencyHistogram.highestEquivalentValue(index) >= v);
+            if (index > 0)
+                assertTrue(LatencyHistogram.highestEquivalentValue(index - 1) < v);
+        }
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue("expected " + expected + " but was " + actual,
+                Math.abs(actual - expected) <= expected * 0.04);
+    }
+
+}
@@ -0,0 +1,87 @@
+package com.github.davidmoten.rx.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.same;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+public class ParameterBinderTest {
+
+    @Test
+    public void testBindsUsingTypedSetters() throws SQLException {
+        PreparedStatement ps = Mockito.mock(PreparedStatement.class);
+        ParameterBinder binder = new ParameterBinder();
+        binder.bind(ps, Arrays.asList(new Parameter("FRED"), new Parameter(21), new Parameter(3L),
+                new Parameter(null)), false);
+        Mockito.verify(ps).setString(1, "FRED");
+        Mockito.verify(ps).setInt(2, 21);
+        Mockito.verify(ps).setLong(3, 3L);
+        Mockito.verify(ps).setObject(4, null);
+    }
+
+    @Test
+    public void testChangeOfClassAtPositionUsesNewSetter() throws SQLException {
+        PreparedStatement ps = Mockito.mock(PreparedStatement.class);
+        ParameterBinder binder = new ParameterBinder();
+        binder.bind(ps, Arrays.asList(new Parameter(21)), false);
+        binder.bind(ps, Arrays.asList(new Parameter("JOSEPH")), false);
+        Mockito.verify(ps).setInt(1, 21);
+        Mockito.verify(ps).setString(1, "JOSEPH");
+    }
+
+    @Test
+    public void testOneCalendarIsUsedPerExecution() throws SQLException {
+        PreparedStatement ps = Mockito.mock(PreparedStatement.class);
+        ParameterBinder binder = new ParameterBinder();
+        binder.bind(ps, Arrays.asList(new Parameter(new Timestamp(1)),
+                new Parameter(new Timestamp(2))), false);
+        ArgumentCaptor<Calendar> cal = ArgumentCaptor.forClass(Calendar.class);
+        Mockito.verify(ps).setTimestamp(eq(1), any(Timestamp.class), cal.capture());
+        Mockito.verify(ps).setTimestamp(eq(2), any(Timestamp.class), same(cal.getValue()));
+    }
+
+    @Test(expected = SQLException.class)
+    public void testNamedParameterNotAllowedThrows() throws SQLException {
+        PreparedStatement ps = Mockito.mock(PreparedStatement.class);
+        new ParameterBinder().bind(ps, Arrays.asList(new Parameter("name", "FRED")),
+                Collections.<String> emptyList());
+    }
+
+    @Test
+    public void testBindsPrimitiveColumns() throws SQLException {
+        PreparedStatement ps = Mockito.mock(PreparedStatement.class);
+        Columns columns = Columns.of(new long[] { 1, 2 }, new int[] { 3, 4 },
+                new double[] { 5, 6 }, new String[] { "a", "b" });
+        assertEquals(2, columns.rows());
+        ParameterBinder binder = new ParameterBinder();
+        binder.bind(ps, columns, 1);
+        Mockito.verify(ps).setLong(1, 2L);
+        Mockito.verify(ps).setInt(2, 4);
+        Mockito.verify(ps).setDouble(3, 6.0);
+        Mockito.verify(ps).setString(4, "b");
+        Mockito.verify(ps, Mockito.never()).setObject(anyInt(), any());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testColumnsOfDifferentLengthsThrows() {
+        Columns.of(new long[] { 1, 2 }, new int[] { 3 });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testColumnOfUnsupportedTypeThrows() {
+        Columns.of(new long[] { 1 }, "not an array");
+    }
+
+}
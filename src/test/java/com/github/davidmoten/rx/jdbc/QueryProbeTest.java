@@ -0,0 +1,22 @@
+package com.github.davidmoten.rx.jdbc;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class QueryProbeTest {
+
+    @Test
+    public void testFingerprintReplacesLiteralsAndCollapsesWhitespace() {
+        assertEquals("select name from person where name = ? and score>? and x1=?",
+                QueryProbe.fingerprint(
+                        "select name\n  from person where name = 'it''s'  and score>21.5 and x1=7 "));
+    }
+
+    @Test
+    public void testFingerprintKeepsQuotedIdentifiersAndParameters() {
+        assertEquals("select \"Col 1\" from t2 where a=? and b=:name",
+                QueryProbe.fingerprint("select \"Col 1\" from t2 where a=? and b=:name"));
+    }
+
+}
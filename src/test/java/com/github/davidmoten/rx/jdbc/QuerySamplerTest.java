@@ -0,0 +1,64 @@
+package com.github.davidmoten.rx.jdbc;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class QuerySamplerTest {
+
+    private static final long MS = 1000000;
+
+    @Test
+    public void testSlowestOrderedByMaxConnectionHold() {
+        QuerySampler sampler = new QuerySampler(2, 1, TimeUnit.SECONDS);
+        execute(sampler, "a", 10 * MS, 0, 100);
+        execute(sampler, "b", 30 * MS, 0, 10);
+        execute(sampler, "c", 20 * MS, 0, 10);
+        execute(sampler, "a", 5 * MS, 0, 100);
+        List<QueryStats> slowest = sampler.slowest();
+        assertEquals(2, slowest.size());
+        assertEquals("b", slowest.get(0).getFingerprint());
+        assertEquals("c", slowest.get(1).getFingerprint());
+        QueryStats a = sampler.snapshot().get(2);
+        assertEquals("a", a.getFingerprint());
+        assertEquals(2, a.getExecutions());
+        assertEquals(200, a.getRows());
+        assertEquals(7.5, a.getMeanConnectionHoldMs(), 0.0001);
+        assertEquals(200 / 0.015, a.getRowsPerSecond(), 0.0001);
+    }
+
+    @Test
+    public void testSlowBackpressureOnlyIncludesWaitsAtOrAboveThreshold() {
+        QuerySampler sampler = new QuerySampler(10, 100, TimeUnit.MILLISECONDS);
+        execute(sampler, "fast", 50 * MS, 40 * MS, 1);
+        execute(sampler, "slow", 500 * MS, 100 * MS, 1);
+        execute(sampler, "slower", 900 * MS, 800 * MS, 1);
+        List<QueryStats> list = sampler.slowBackpressure();
+        assertEquals(2, list.size());
+        assertEquals("slower", list.get(0).getFingerprint());
+        assertEquals("slow", list.get(1).getFingerprint());
+        assertEquals(1, list.get(1).getSlowBackpressureCount());
+    }
+
+    @Test
+    public void testQueriesBeyondMaximumAreCountedNotSampled() {
+        QuerySampler sampler = new QuerySampler(10, 1, TimeUnit.SECONDS, 1);
+        execute(sampler, "a", MS, 0, 1);
+        execute(sampler, "b", MS, 0, 1);
+        assertEquals(1, sampler.snapshot().size());
+        assertEquals(1, sampler.getUnsampledExecutions());
+        sampler.reset();
+        assertEquals(0, sampler.snapshot().size());
+    }
+
+    private static void execute(QuerySampler sampler, String fingerprint, long holdNanos,
+            long waitNanos, long rows) {
+        sampler.onEvent(QueryEvent.BACKPRESSURE_WAIT, fingerprint, waitNanos, rows, 1);
+        sampler.onEvent(QueryEvent.CONNECTION_HOLD, fingerprint, holdNanos, rows, 1);
+        sampler.onEvent(QueryEvent.CLOSE, fingerprint, 0, rows, 1);
+    }
+
+}
@@ -0,0 +1,81 @@
+package com.github.davidmoten.rx.jdbc;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.github.davidmoten.junit.Asserts;
+
+public class QuerySelectBatchTest {
+
+    @Test
+    public void testBatchSql() {
+        assertEquals(
+                "(select 0 as rxjdbc_batch_index, name from person where name=?) union all "
+                        + "(select 1 as rxjdbc_batch_index, name from person where name=?) "
+                        + "order by rxjdbc_batch_index",
+                QuerySelectBatch.batchSql("select name from person where name=?", 2));
+    }
+
+    @Test
+    public void testBatchSqlDistinctAndTrailingSemicolon() {
+        assertEquals(
+                "(SELECT DISTINCT 0 as rxjdbc_batch_index, name from person where score>?) union all "
+                        + "(SELECT DISTINCT 1 as rxjdbc_batch_index, name from person where score>?) "
+                        + "order by rxjdbc_batch_index",
+                QuerySelectBatch.batchSql(" SELECT DISTINCT name from person where score>?;", 2));
+    }
+
+    @Test
+    public void testBatchSqlSortsEachParameterSetByOrderKeys() {
+        assertEquals(
+                "(select 0 as rxjdbc_batch_index, name, score from person where score>? "
+                        + "order by score desc, name limit 2) union all "
+                        + "(select 1 as rxjdbc_batch_index, name, score from person where score>? "
+                        + "order by score desc, name limit 2) "
+                        + "order by rxjdbc_batch_index, score desc, name",
+                QuerySelectBatch.batchSql(
+                        "select name, score from person where score>? order by score desc, name limit 2",
+                        2));
+    }
+
+    @Test
+    public void testOrderKeys() {
+        assertEquals(asList(), QuerySelectBatch.orderKeys("select name from person"));
+        assertEquals(asList(),
+                QuerySelectBatch.orderKeys("select name from (select name from person order by 1) t"));
+        assertEquals(asList("score DESC NULLS LAST", "name"), QuerySelectBatch
+                .orderKeys("select name, score from person ORDER BY score DESC NULLS LAST, name"));
+        assertNull(QuerySelectBatch.orderKeys("select name from person order by 1"));
+        assertNull(QuerySelectBatch.orderKeys("select name from person order by lower(name)"));
+    }
+
+    @Test
+    public void testIsBatchable() {
+        assertTrue(QuerySelectBatch.isBatchable("select name from person"));
+        assertTrue(QuerySelectBatch.isBatchable("select name from person order by name;"));
+        assertFalse(QuerySelectBatch.isBatchable("update person set score=1"));
+        assertFalse(QuerySelectBatch.isBatchable("select name from person order by 1"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBatchSizeWithNonSelectSqlThrows() {
+        DatabaseCreator.db().select("call something(?)").batchSize(2).count();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBatchSizeWithOrderByPositionThrows() {
+        DatabaseCreator.db().select("select name from person where score>? order by 1")
+                .batchSize(2).count();
+    }
+
+    @Test
+    public void obtainCoverageOfPrivateConstructor() {
+        Asserts.assertIsUtilityClass(QuerySelectBatch.class);
+    }
+
+}
@@ -0,0 +1,93 @@
+package com.github.davidmoten.rx.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import rx.Observable;
+import rx.functions.Action0;
+import rx.observers.TestSubscriber;
+import rx.subjects.PublishSubject;
+
+public class QuerySelectCoalescerTest {
+
+    @Test
+    public void testLateSubscriberSharesExecutionAndReplaysRows() {
+        QuerySelectCoalescer coalescer = new QuerySelectCoalescer();
+        PublishSubject<String> rows = PublishSubject.create();
+        AtomicInteger executions = new AtomicInteger();
+        Observable<String> source = counted(rows, executions);
+        TestSubscriber<String> ts1 = TestSubscriber.create();
+        TestSubscriber<String> ts2 = TestSubscriber.create();
+        coalescer.get(key(1), source).subscribe(ts1);
+        rows.onNext("FRED");
+        coalescer.get(key(1), source).subscribe(ts2);
+        rows.onNext("JOSEPH");
+        rows.onCompleted();
+        ts1.assertValues("FRED", "JOSEPH");
+        ts1.assertCompleted();
+        ts2.assertValues("FRED", "JOSEPH");
+        ts2.assertCompleted();
+        assertEquals(1, executions.get());
+        assertEquals(0, coalescer.size());
+    }
+
+    @Test
+    public void testDifferentParametersDoNotShare() {
+        QuerySelectCoalescer coalescer = new QuerySelectCoalescer();
+        PublishSubject<String> rows = PublishSubject.create();
+        AtomicInteger executions = new AtomicInteger();
+        Observable<String> source = counted(rows, executions);
+        coalescer.get(key(1), source).subscribe();
+        coalescer.get(key(2), source).subscribe();
+        assertEquals(2, executions.get());
+        assertEquals(2, coalescer.size());
+    }
+
+    @Test
+    public void testExecutionCancelledWhenAllSubscribersUnsubscribe() {
+        QuerySelectCoalescer coalescer = new QuerySelectCoalescer();
+        PublishSubject<String> rows = PublishSubject.create();
+        AtomicInteger executions = new AtomicInteger();
+        Observable<String> source = counted(rows, executions);
+        TestSubscriber<String> ts1 = TestSubscriber.create();
+        TestSubscriber<String> ts2 = TestSubscriber.create();
+        coalescer.get(key(1), source).subscribe(ts1);
+        coalescer.get(key(1), source).subscribe(ts2);
+        ts1.unsubscribe();
+        assertEquals(1, coalescer.size());
+        ts2.unsubscribe();
+        assertFalse(rows.hasObservers());
+        assertEquals(0, coalescer.size());
+    }
+
+    @Test
+    public void testCompletedExecutionIsNotKept() {
+        QuerySelectCoalescer coalescer = new QuerySelectCoalescer();
+        AtomicInteger executions = new AtomicInteger();
+        Observable<String> source = counted(Observable.just("FRED"), executions);
+        coalescer.get(key(1), source).subscribe();
+        coalescer.get(key(1), source).subscribe();
+        assertEquals(2, executions.get());
+    }
+
+    private static Observable<String> counted(Observable<String> rows,
+            final AtomicInteger executions) {
+        return rows.doOnSubscribe(new Action0() {
+            @Override
+            public void call() {
+                executions.incrementAndGet();
+            }
+        });
+    }
+
+    private static ResultCache.Key key(int i) {
+        return ResultCache.key("select name from person where score=?",
+                Arrays.asList(new Parameter(i)), "mapper", "transform");
+    }
+
+}
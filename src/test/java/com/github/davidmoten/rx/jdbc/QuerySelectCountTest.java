@@ -0,0 +1,36 @@
+package com.github.davidmoten.rx.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.github.davidmoten.junit.Asserts;
+
+public class QuerySelectCountTest {
+
+    @Test
+    public void testCountSql() {
+        assertEquals("select count(*) from (select name from person where score > ?) rxjdbc_count",
+                QuerySelectCount.countSql(" select name from person where score > ?;"));
+    }
+
+    @Test
+    public void testIsCountable() {
+        assertTrue(QuerySelectCount.isCountable("select name from person where score > ?"));
+        assertTrue(QuerySelectCount.isCountable("select distinct name from person;"));
+        assertTrue(QuerySelectCount.isCountable("select name, into_date from person"));
+        assertFalse(QuerySelectCount.isCountable("select name from person order by name"));
+        assertFalse(QuerySelectCount.isCountable("select name from person for update"));
+        assertFalse(QuerySelectCount.isCountable("select name into x from person"));
+        assertFalse(QuerySelectCount.isCountable("select 1; select 2"));
+        assertFalse(QuerySelectCount.isCountable("call something(?)"));
+    }
+
+    @Test
+    public void obtainCoverageOfPrivateConstructor() {
+        Asserts.assertIsUtilityClass(QuerySelectCount.class);
+    }
+
+}
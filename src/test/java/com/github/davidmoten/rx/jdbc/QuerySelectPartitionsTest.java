@@ -0,0 +1,61 @@
+package com.github.davidmoten.rx.jdbc;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class QuerySelectPartitionsTest {
+
+    private static final String SQL = "select name, score from person where score > ?;";
+
+    @Test
+    public void testRangeSql() {
+        QuerySelectPartitions p = QuerySelectPartitions.byRange("score", 10, 20);
+        assertEquals(3, p.count());
+        assertEquals("select * from (select name, score from person where score > ?) "
+                + "rxjdbc_partition where (score is null or score < ?)", p.sql(SQL, 0));
+        assertEquals("select * from (select name, score from person where score > ?) "
+                + "rxjdbc_partition where score >= ? and score < ?", p.sql(SQL, 1));
+        assertEquals("select * from (select name, score from person where score > ?) "
+                + "rxjdbc_partition where score >= ?", p.sql(SQL, 2));
+    }
+
+    @Test
+    public void testRangeParameters() {
+        QuerySelectPartitions p = QuerySelectPartitions.byRange("score", 10, 20);
+        assertEquals(asList(10), values(p, 0));
+        assertEquals(asList(10, 20), values(p, 1));
+        assertEquals(asList(20), values(p, 2));
+    }
+
+    @Test
+    public void testModulusSqlInOrder() {
+        QuerySelectPartitions p = QuerySelectPartitions.byModulus("score", 3).inOrder();
+        assertEquals(3, p.count());
+        assertEquals("select * from (select name, score from person where score > ?) "
+                + "rxjdbc_partition where abs(mod(score, 3)) = 0 or score is null "
+                + "order by score", p.sql(SQL, 0));
+        assertEquals("select * from (select name, score from person where score > ?) "
+                + "rxjdbc_partition where abs(mod(score, 3)) = 2 order by score", p.sql(SQL, 2));
+        assertEquals(Collections.emptyList(), values(p, 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPartitionedQueryCannotBeBatched() {
+        DatabaseCreator.db().select("select name from person").partitionByModulus("score", 2)
+                .batchSize(2).count();
+    }
+
+    private static List<Object> values(QuerySelectPartitions p, int partition) {
+        List<Object> list = new ArrayList<Object>();
+        for (Parameter parameter : p.parameters(partition))
+            list.add(parameter.value());
+        return list;
+    }
+
+}
@@ -0,0 +1,164 @@
+package com.github.davidmoten.rx.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import rx.Subscriber;
+import rx.observers.TestSubscriber;
+
+public class QuerySelectProducerTest {
+
+    @Test
+    public void testUnboundedRequestAfterBoundedRequestEmitsAllRowsOnce() throws SQLException {
+        TestSubscriber<Integer> ts = TestSubscriber.create(0);
+        QuerySelectProducer<Integer> p = producer(ts, 5);
+        p.request(2);
+        ts.assertValues(1, 2);
+        p.request(Long.MAX_VALUE);
+        ts.assertValues(1, 2, 3, 4, 5);
+        ts.assertCompleted();
+        p.request(Long.MAX_VALUE);
+        ts.assertValueCount(5);
+        ts.assertCompleted();
+    }
+
+    @Test
+    public void testReentrantRequestOneEmitsInOrder() throws SQLException {
+        final List<Integer> list = new ArrayList<Integer>();
+        final AtomicInteger completed = new AtomicInteger();
+        final AtomicInteger depth = new AtomicInteger();
+        final AtomicBoolean reentered = new AtomicBoolean();
+        final AtomicReference<QuerySelectProducer<Integer>> p =
+                new AtomicReference<QuerySelectProducer<Integer>>();
+        Subscriber<Integer> subscriber = new Subscriber<Integer>() {
+
+            @Override
+            public void onCompleted() {
+                completed.incrementAndGet();
+            }
+
+            @Override
+            public void onError(Throwable e) {
+                throw new RuntimeException(e);
+            }
+
+            @Override
+            public void onNext(Integer n) {
+                if (depth.incrementAndGet() > 1)
+                    reentered.set(true);
+                list.add(n);
+                p.get().request(1);
+                depth.decrementAndGet();
+            }
+        };
+        p.set(producer(subscriber, 1000));
+        p.get().request(1);
+        assertEquals(1000, list.size());
+        for (int i = 0; i < list.size(); i++)
+            assertEquals(i + 1, (int) list.get(i));
+        assertEquals(1, completed.get());
+        assertFalse(reentered.get());
+    }
+
+    @Test
+    public void testConcurrentRequestsEmitSeriallyInOrder() throws Exception {
+        final int rows = 10000;
+        final int threads = 4;
+        for (int run = 0; run < 20; run++) {
+            final List<Integer> list = new ArrayList<Integer>();
+            final AtomicInteger completed = new AtomicInteger();
+            final AtomicInteger concurrent = new AtomicInteger();
+            final AtomicBoolean overlapped = new AtomicBoolean();
+            Subscriber<Integer> subscriber = new Subscriber<Integer>() {
+
+                @Override
+                public void onCompleted() {
+                    completed.incrementAndGet();
+                }
+
+                @Override
+                public void onError(Throwable e) {
+                    throw new RuntimeException(e);
+                }
+
+                @Override
+                public void onNext(Integer n) {
+                    if (concurrent.incrementAndGet() > 1)
+                        overlapped.set(true);
+                    list.add(n);
+                    concurrent.decrementAndGet();
+                }
+            };
+            final QuerySelectProducer<Integer> p = producer(subscriber, rows);
+            final CountDownLatch start = new CountDownLatch(1);
+            final CountDownLatch finished = new CountDownLatch(threads);
+            for (int i = 0; i < threads; i++) {
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+                            // request more than the number of rows in total
+                            for (int j = 0; j < rows / threads + 1; j++)
+                                p.request(1 + j % 3);
+                        } catch (InterruptedException e) {
+                            throw new RuntimeException(e);
+                        } finally {
+                            finished.countDown();
+                        }
+                    }
+                }).start();
+            }
+            start.countDown();
+            assertEquals(true, finished.await(30, TimeUnit.SECONDS));
+            assertFalse(overlapped.get());
+            assertEquals(1, completed.get());
+            assertEquals(rows, list.size());
+            for (int i = 0; i < rows; i++)
+                assertEquals(i + 1, (int) list.get(i));
+        }
+    }
+
+    /**
+     * Returns a producer of the 1-based row numbers of a result set with the
+     * given number of rows.
+     */
+    private static QuerySelectProducer<Integer> producer(Subscriber<Integer> subscriber,
+            final int rows) throws SQLException {
+        final AtomicInteger row = new AtomicInteger();
+        ResultSet rs = Mockito.mock(ResultSet.class, Mockito.withSettings().stubOnly());
+        Mockito.when(rs.next()).thenAnswer(new Answer<Boolean>() {
+            @Override
+            public Boolean answer(InvocationOnMock invocation) {
+                return row.incrementAndGet() <= rows;
+            }
+        });
+        ResultSetMapper<Integer> function = new ResultSetMapper<Integer>() {
+            @Override
+            public Integer call(ResultSet rs) {
+                return row.get();
+            }
+        };
+        return new QuerySelectProducer<Integer>(function, subscriber,
+                Mockito.mock(Connection.class), Mockito.mock(PreparedStatement.class), rs, null,
+                QueryProbe.NONE);
+    }
+
+}
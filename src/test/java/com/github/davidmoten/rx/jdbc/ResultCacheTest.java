@@ -0,0 +1,64 @@
+package com.github.davidmoten.rx.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+import rx.Observable;
+
+public class ResultCacheTest {
+
+    @Test
+    public void testTablesOfSelect() {
+        assertEquals(new HashSet<String>(Arrays.asList("person", "address", "note", "w")),
+                ResultCache.tables("select a.x, b.y from PERSON a, \"S\".\"ADDRESS\" b "
+                        + "left join note n on n.id=a.id where exists (select 1 from w)"));
+    }
+
+    @Test
+    public void testTablesOfSelectWithoutFromIsAnyTable() {
+        assertTrue(ResultCache.tables("values(1)").isEmpty());
+    }
+
+    @Test
+    public void testChangedTables() {
+        assertEquals(Collections.singleton("person"),
+                ResultCache.changedTables("insert into person(name) values(?)"));
+        assertEquals(Collections.singleton("person"),
+                ResultCache.changedTables("UPDATE Person set score=? where name=?"));
+        assertEquals(Collections.singleton("person"), ResultCache
+                .changedTables("delete from app.person where name in (select name from note)"));
+        assertTrue(ResultCache.changedTables("create table note(id int)").isEmpty());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntryEvictedWhenFull() {
+        ResultCache cache = new ResultCache(200, 0);
+        for (int i = 0; i < 3; i++)
+            cache.get(key(i), Observable.just("abcdefghij")).subscribe();
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.evictions());
+        assertTrue(cache.bytes() <= 200);
+        // most recent entries are still cached
+        cache.get(key(2), Observable.<String> error(new RuntimeException())).subscribe();
+        assertEquals(1, cache.hits());
+    }
+
+    @Test
+    public void testRowsTooBigForCacheAreNotStored() {
+        ResultCache cache = new ResultCache(50, 0);
+        cache.get(key(1), Observable.just("a string longer than the maximum size")).subscribe();
+        assertEquals(0, cache.size());
+    }
+
+    private static ResultCache.Key key(int i) {
+        return ResultCache.key("select name from person where score=?",
+                Arrays.asList(new Parameter(i)), "mapper", "transform");
+    }
+
+}
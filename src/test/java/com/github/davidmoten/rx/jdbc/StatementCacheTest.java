@@ -0,0 +1,72 @@
+package com.github.davidmoten.rx.jdbc;
+
+import static org.junit.Assert.assertEquals;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+
+public class StatementCacheTest {
+
+    @Test
+    public void testStatementCancelledBeforeReturnedToCache() throws SQLException {
+        String sql = "select name from person";
+        Connection con = Mockito.mock(Connection.class);
+        PreparedStatement ps = Mockito.mock(PreparedStatement.class);
+        Mockito.when(con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY,
+                ResultSet.CONCUR_READ_ONLY)).thenReturn(ps);
+        StatementCache cache = new StatementCache(10);
+        PreparedStatement p = cache.prepareStatement(con, sql, ResultSet.TYPE_FORWARD_ONLY,
+                ResultSet.CONCUR_READ_ONLY);
+        Util.closeQuietly(p);
+        Util.closeQuietly(p);
+        InOrder in = Mockito.inOrder(ps);
+        in.verify(ps).cancel();
+        in.verify(ps).clearParameters();
+        Mockito.verify(ps, Mockito.never()).close();
+        cache.prepareStatement(con, sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        assertEquals(1, cache.hits());
+        Mockito.verify(ps, Mockito.times(1)).cancel();
+    }
+
+    @Test
+    public void testBatchClearedBeforeReuse() throws SQLException {
+        String sql = "insert into person(name,score) values(?,0)";
+        Connection con = Mockito.mock(Connection.class);
+        PreparedStatement ps = Mockito.mock(PreparedStatement.class);
+        Mockito.when(con.prepareStatement(sql, Statement.NO_GENERATED_KEYS)).thenReturn(ps);
+        StatementCache cache = new StatementCache(10);
+        PreparedStatement p = cache.prepareStatement(con, sql, Statement.NO_GENERATED_KEYS);
+        p.setString(1, "FRED");
+        p.addBatch();
+        Util.closeQuietly(p);
+        PreparedStatement p2 = cache.prepareStatement(con, sql, Statement.NO_GENERATED_KEYS);
+        assertEquals(1, cache.hits());
+        p2.setString(1, "JOSEPH");
+        InOrder in = Mockito.inOrder(ps);
+        in.verify(ps).addBatch();
+        in.verify(ps).clearBatch();
+        in.verify(ps).setString(1, "JOSEPH");
+    }
+
+    @Test
+    public void testStatementClosedIfBatchCannotBeCleared() throws SQLException {
+        String sql = "insert into person(name,score) values(?,0)";
+        Connection con = Mockito.mock(Connection.class);
+        PreparedStatement ps = Mockito.mock(PreparedStatement.class);
+        Mockito.when(con.prepareStatement(sql, Statement.NO_GENERATED_KEYS)).thenReturn(ps);
+        Mockito.doThrow(new SQLException("boo")).when(ps).clearBatch();
+        StatementCache cache = new StatementCache(10);
+        Util.closeQuietly(cache.prepareStatement(con, sql, Statement.NO_GENERATED_KEYS));
+        Mockito.verify(ps).close();
+        cache.prepareStatement(con, sql, Statement.NO_GENERATED_KEYS);
+        assertEquals(0, cache.hits());
+    }
+
+}
@@ -0,0 +1,68 @@
+package com.github.davidmoten.rx.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import rx.Observable;
+import rx.Scheduler;
+import rx.functions.Func1;
+
+public class VirtualThreadsTest {
+
+    @Test
+    public void testBoundedExecutorRunsAllTasksWithinConcurrencyLimit()
+            throws InterruptedException {
+        VirtualThreads.BoundedExecutor executor = new VirtualThreads.BoundedExecutor(
+                Executors.defaultThreadFactory(), 3);
+        final int tasks = 100;
+        final CountDownLatch latch = new CountDownLatch(tasks);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        for (int i = 0; i < tasks; i++)
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    int n = running.incrementAndGet();
+                    int m;
+                    while (n > (m = maxRunning.get()) && !maxRunning.compareAndSet(m, n)) {
+                        // retry
+                    }
+                    try {
+                        Thread.sleep(1);
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                    running.decrementAndGet();
+                    latch.countDown();
+                }
+            });
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertTrue(maxRunning.get() <= 3);
+        // threads decrement the running count after their last task
+        long deadline = System.currentTimeMillis() + 10000;
+        while (executor.running() > 0 && System.currentTimeMillis() < deadline)
+            Thread.sleep(1);
+        assertEquals(0, executor.running());
+    }
+
+    @Test
+    public void testSchedulerRunsQueriesConcurrently() {
+        final int n = 1000;
+        final Scheduler scheduler = VirtualThreads.scheduler(4);
+        long count = Observable.range(1, n).flatMap(new Func1<Integer, Observable<Integer>>() {
+            @Override
+            public Observable<Integer> call(Integer i) {
+                return Observable.just(i).subscribeOn(scheduler);
+            }
+        }).count().toBlocking().single();
+        assertEquals(n, count);
+    }
+
+}